@@ -0,0 +1,451 @@
+package implementations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Validates many files in one JVM on a pool of worker threads.
+ * <p>
+ * Files are scheduled largest first so that one big file does not end up
+ * running alone at the end of the batch, and the results are reported in path
+ * order so that the report does not depend on scheduling.
+ */
+public class BatchXMLValidator {
+
+	private final int threads;
+	private final boolean virtualThreads;
+	private final long maxErrors;
+	private final boolean aggregate;
+	private long stopAfter = 0;
+	private boolean verdictOnly = false;
+	private ValidationCache cache = null;
+
+	/**
+	 * Creates a batch validator.
+	 *
+	 * @param threads        largest number of files validated at once.
+	 * @param virtualThreads <code>true</code> to run each file on a virtual
+	 *                       thread when the JVM supports them.
+	 */
+	public BatchXMLValidator(int threads, boolean virtualThreads) {
+		this(threads, virtualThreads, BufferedDiagnosticSink.UNLIMITED, false);
+	}
+
+	/**
+	 * Creates a batch validator whose per-file reports are capped and
+	 * aggregated as by {@link BufferedDiagnosticSink}.
+	 *
+	 * @param threads        largest number of files validated at once.
+	 * @param virtualThreads <code>true</code> to run each file on a virtual
+	 *                       thread when the JVM supports them.
+	 * @param maxErrors      largest number of diagnostics reported per file.
+	 * @param aggregate      <code>true</code> to report repeated diagnostics once.
+	 */
+	public BatchXMLValidator(int threads, boolean virtualThreads, long maxErrors, boolean aggregate) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Thread count must be positive.");
+		}
+		this.threads = threads;
+		this.virtualThreads = virtualThreads;
+		this.maxErrors = maxErrors;
+		this.aggregate = aggregate;
+	}
+
+	/**
+	 * Stops validating each file once the given number of errors has been found
+	 * in it.
+	 *
+	 * @param errors number of errors after which to stop, or 0 for no limit.
+	 */
+	public void setStopAfter(long errors) {
+		stopAfter = errors;
+	}
+
+	/**
+	 * Selects verdict-only validation of each file, which stops at the first
+	 * error and builds no messages.
+	 *
+	 * @param verdictOnly <code>true</code> to compute only the verdicts.
+	 */
+	public void setVerdictOnly(boolean verdictOnly) {
+		this.verdictOnly = verdictOnly;
+	}
+
+	/**
+	 * Reuses the results cached for files that have not changed, and caches the
+	 * results of the files that are validated.
+	 *
+	 * @param cache the cache to consult, or <code>null</code> for none.
+	 */
+	public void setCache(ValidationCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Expands files, directories and glob patterns into the files to validate.
+	 * Directories are searched recursively for <code>.xml</code> and
+	 * <code>.xml.gz</code> files; a pattern such as <code>data/**&#47;*.xml</code>
+	 * is matched against every path below its fixed leading directories. A
+	 * file or directory that cannot be read while searching is kept as it is,
+	 * so that it is reported as unreadable rather than silently left out.
+	 *
+	 * @param inputs files, directories or glob patterns.
+	 * @return the matching files, sorted by path without duplicates.
+	 * @throws IOException if a directory cannot be read.
+	 */
+	public static MyArrayList<Path> collect(MyArrayList<String> inputs) throws IOException {
+		MyArrayList<Path> files = new MyArrayList<>();
+
+		for (int i = 0; i < inputs.size(); i++) {
+			String input = inputs.get(i);
+			if (isGlob(input)) {
+				PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input);
+				walk(globBase(input), files, matcher);
+			} else {
+				Path path = Paths.get(input);
+				if (Files.isDirectory(path)) {
+					walk(path, files, null);
+				} else {
+					files.add(path);
+				}
+			}
+		}
+
+		Path[] sorted = files.toArray(new Path[files.size()]);
+		Arrays.sort(sorted);
+		MyArrayList<Path> unique = new MyArrayList<>();
+		for (Path path : sorted) {
+			if (unique.isEmpty() || !unique.get(unique.size() - 1).equals(path)) {
+				unique.add(path);
+			}
+		}
+		return unique;
+	}
+
+	/**
+	 * Validates every file and prints one aggregated report: each file's
+	 * messages under its path, in the order given, followed by totals. A ZIP or
+	 * JAR archive stands for its <code>.xml</code> entries, which are read
+	 * straight from the archive without being extracted and are reported as
+	 * <code>archive!/entry</code> in entry name order.
+	 *
+	 * @param files files to validate, in report order.
+	 * @param out   destination of the report.
+	 * @return the number of files that are not well formed or could not be read.
+	 * @throws IOException if the batch is interrupted.
+	 */
+	public int validate(MyArrayList<Path> files, PrintStream out) throws IOException {
+		MyArrayList<ZipFile> archives = new MyArrayList<>();
+		try {
+			return validate(expand(files, archives), out);
+		} finally {
+			for (int i = 0; i < archives.size(); i++) {
+				archives.get(i).close();
+			}
+		}
+	}
+
+	private int validate(Result[] results, PrintStream out) throws IOException {
+		// Largest files first so the pool drains evenly
+		Result[] schedule = results.clone();
+		Arrays.sort(schedule, (a, b) -> Long.compare(b.size, a.size));
+
+		ExecutorService pool = createPool(threads, virtualThreads);
+		Semaphore permits = new Semaphore(threads);
+		try {
+			MyArrayList<Future<?>> pending = new MyArrayList<>();
+			for (Result result : schedule) {
+				pending.add(pool.submit(() -> {
+					permits.acquireUninterruptibly();
+					try {
+						validate(result);
+					} finally {
+						permits.release();
+					}
+				}));
+			}
+			for (int i = 0; i < pending.size(); i++) {
+				await(pending.get(i));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		int wellFormed = 0;
+		int malformed = 0;
+		int unreadable = 0;
+		for (Result result : results) {
+			out.println("== " + result.name + " ==");
+			out.print(result.output);
+			if (result.readError) {
+				unreadable++;
+			} else if (result.wellFormed) {
+				wellFormed++;
+			} else {
+				malformed++;
+			}
+		}
+		out.println("Validated " + results.length + " files: " + wellFormed + " well-formed, " + malformed
+				+ " malformed, " + unreadable + " unreadable.");
+		return malformed + unreadable;
+	}
+
+	// Replaces each archive by its entries, opening the archives
+	private static Result[] expand(MyArrayList<Path> files, MyArrayList<ZipFile> archives) {
+		MyArrayList<Result> results = new MyArrayList<>();
+		for (int i = 0; i < files.size(); i++) {
+			Path path = files.get(i);
+			if (!XMLParser.isArchive(path.toString())) {
+				results.add(new Result(path));
+				continue;
+			}
+
+			ZipFile archive;
+			try {
+				archive = new ZipFile(path.toFile());
+			} catch (IOException e) {
+				Result result = new Result(path);
+				result.readError = true;
+				result.output = "Error reading file: " + e.getMessage() + System.lineSeparator();
+				results.add(result);
+				continue;
+			}
+			archives.add(archive);
+
+			MyArrayList<ZipEntry> entries = new MyArrayList<>();
+			for (Enumeration<? extends ZipEntry> all = archive.entries(); all.hasMoreElements();) {
+				ZipEntry entry = all.nextElement();
+				if (!entry.isDirectory() && isDocument(entry.getName())) {
+					entries.add(entry);
+				}
+			}
+			ZipEntry[] sorted = entries.toArray(new ZipEntry[entries.size()]);
+			Arrays.sort(sorted, (a, b) -> a.getName().compareTo(b.getName()));
+			for (ZipEntry entry : sorted) {
+				results.add(new Result(path, archive, entry));
+			}
+		}
+		return results.toArray(new Result[results.size()]);
+	}
+
+	private void validate(Result result) {
+		if (result.readError) {
+			return;
+		}
+		if (result.entry != null) {
+			StringWriter buffer = new StringWriter();
+			try (InputStream in = result.archive.getInputStream(result.entry)) {
+				XMLParser parser = newParser(buffer);
+				// Inflated on this pool thread; the pool already overlaps documents
+				parser.parseStream(XMLParser.isCompressed(result.entry.getName()) ? XMLParser.inflate(in) : in);
+				finish(result, parser, buffer);
+			} catch (IOException e) {
+				fail(result, e, buffer);
+			}
+			return;
+		}
+
+		// The report depends on the settings as well as on the file
+		String key = null;
+		ValidationCache.Stamp stamp = null;
+		if (cache != null) {
+			key = result.path.toAbsolutePath().normalize() + "|" + maxErrors + "," + aggregate + "," + stopAfter + ","
+					+ verdictOnly;
+			try {
+				stamp = ValidationCache.stamp(result.path);
+				ValidationCache.Entry cached = cache.lookup(key, stamp);
+				if (cached != null) {
+					result.wellFormed = cached.isWellFormed();
+					result.output = cached.getOutput();
+					return;
+				}
+				// Hashed before parsing, so a change during the parse is a miss next time
+				stamp.getHash();
+			} catch (IOException e) {
+				// Validated without caching; the parse reports the error
+				stamp = null;
+			}
+		}
+
+		StringWriter buffer = new StringWriter();
+		try (FileChannel channel = FileChannel.open(result.path, StandardOpenOption.READ)) {
+			XMLParser parser = newParser(buffer);
+			if (XMLParser.isCompressed(result.path.toString())) {
+				parser.parseStream(XMLParser.inflate(Channels.newInputStream(channel)));
+			} else {
+				parser.parseFile(channel, false);
+			}
+			finish(result, parser, buffer);
+		} catch (IOException e) {
+			fail(result, e, buffer);
+		}
+		if (stamp != null && !result.readError) {
+			cache.store(key, stamp, result.wellFormed, result.output);
+		}
+	}
+
+	private XMLParser newParser(StringWriter buffer) {
+		XMLParser parser = new XMLParser(new BufferedDiagnosticSink(buffer, maxErrors, aggregate));
+		if (stopAfter > 0) {
+			parser.setStopAfter(stopAfter);
+		}
+		parser.setVerdictOnly(verdictOnly);
+		return parser;
+	}
+
+	private void finish(Result result, XMLParser parser, StringWriter buffer) {
+		result.wellFormed = parser.isWellFormed();
+		if (verdictOnly && !result.wellFormed) {
+			buffer.write("XML document is malformed." + System.lineSeparator());
+		}
+		result.output = buffer.toString();
+	}
+
+	private static void fail(Result result, IOException e, StringWriter buffer) {
+		result.readError = true;
+		buffer.write("Error reading file: " + e.getMessage() + System.lineSeparator());
+		result.output = buffer.toString();
+	}
+
+	/**
+	 * Creates a pool running tasks on virtual threads when they are asked for
+	 * and the JVM supports them, and on the given number of platform threads
+	 * otherwise.
+	 *
+	 * @param threads        number of platform threads.
+	 * @param virtualThreads <code>true</code> to prefer virtual threads.
+	 * @return the pool.
+	 */
+	static ExecutorService createPool(int threads, boolean virtualThreads) {
+		if (virtualThreads) {
+			// Looked up reflectively so the code still runs on JVMs without them
+			try {
+				Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService) factory.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				// Fall back to platform threads
+			}
+		}
+		return Executors.newFixedThreadPool(threads);
+	}
+
+	private static void await(Future<?> task) throws IOException {
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while validating", e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static boolean isGlob(String input) {
+		return input.indexOf('*') >= 0 || input.indexOf('?') >= 0 || input.indexOf('[') >= 0
+				|| input.indexOf('{') >= 0;
+	}
+
+	// The directories of a pattern before its first wildcard
+	private static Path globBase(String pattern) {
+		int wildcard = pattern.length();
+		for (char c : new char[] { '*', '?', '[', '{' }) {
+			int index = pattern.indexOf(c);
+			if (index >= 0 && index < wildcard) {
+				wildcard = index;
+			}
+		}
+		int separator = Math.max(pattern.lastIndexOf('/', wildcard), pattern.lastIndexOf('\\', wildcard));
+		return Paths.get(separator < 0 ? "" : pattern.substring(0, separator + 1));
+	}
+
+	private static void walk(Path base, MyArrayList<Path> files, PathMatcher matcher) throws IOException {
+		if (!Files.isDirectory(base) && !base.toString().isEmpty()) {
+			return;
+		}
+		Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				if (!attributes.isRegularFile()) {
+					return FileVisitResult.CONTINUE;
+				}
+				if (matcher != null ? matcher.matches(file)
+						: isDocument(file.getFileName().toString())) {
+					files.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				// Validating it reports the error in its own result
+				files.add(file);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static boolean isDocument(String name) {
+		String lower = name.toLowerCase(Locale.ROOT);
+		return lower.endsWith(".xml") || lower.endsWith(".xml.gz");
+	}
+
+	/**
+	 * The outcome of one file, filled in by the worker that validates it.
+	 */
+	private static class Result {
+		private final Path path;
+		private final ZipFile archive; // null unless an archive entry
+		private final ZipEntry entry;
+		private final String name;
+		private final long size;
+		private String output = "";
+		private boolean wellFormed;
+		private boolean readError;
+
+		Result(Path path, ZipFile archive, ZipEntry entry) {
+			this.path = path;
+			this.archive = archive;
+			this.entry = entry;
+			this.name = path + "!/" + entry.getName();
+			this.size = Math.max(entry.getSize(), 0);
+		}
+
+		Result(Path path) {
+			this.path = path;
+			this.archive = null;
+			this.entry = null;
+			this.name = path.toString();
+			long length;
+			try {
+				length = Files.size(path);
+			} catch (IOException e) {
+				length = 0;
+			}
+			this.size = length;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package implementations;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import utilities.Diagnostic;
+import utilities.DiagnosticSink;
+
+/**
+ * Writes diagnostics as text through a buffer that is flushed only when the
+ * document is finished, instead of one console write per problem.
+ * <p>
+ * At most a given number of diagnostics are written; the rest are counted and
+ * summarised. When aggregation is on, a diagnostic that repeats an earlier one
+ * (same kind and same tag names) is written only the first time and the
+ * repeats are summarised as, for example,
+ * <code>Mismatched tag &lt;/i&gt;, expected &lt;/b&gt; x 41,203</code>.
+ * At most {@link #MAX_REPEATS} kinds are followed at once; the least recently
+ * seen is then dropped, its summary written straight away, and a later repeat
+ * of it is written as a new diagnostic.
+ */
+public class BufferedDiagnosticSink implements DiagnosticSink {
+
+	/** Value of the error cap that means no cap. */
+	public static final long UNLIMITED = Long.MAX_VALUE;
+
+	/** Most distinct diagnostics followed for aggregation at once. */
+	public static final int MAX_REPEATS = 1 << 12;
+
+	private final Writer writer;
+	private final long maxErrors;
+	private final boolean aggregate;
+	private final LinkedHashMap<Key, long[]> repeats = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long written;
+	private long suppressed;
+	private boolean finished;
+
+	/**
+	 * Creates a sink that writes every diagnostic to the given stream.
+	 *
+	 * @param out destination of the messages.
+	 */
+	public BufferedDiagnosticSink(OutputStream out) {
+		this(new OutputStreamWriter(out), UNLIMITED, false);
+	}
+
+	/**
+	 * Creates a sink.
+	 *
+	 * @param writer    destination of the messages.
+	 * @param maxErrors largest number of diagnostics written.
+	 * @param aggregate <code>true</code> to write repeated diagnostics once.
+	 */
+	public BufferedDiagnosticSink(Writer writer, long maxErrors, boolean aggregate) {
+		if (writer == null) {
+			throw new NullPointerException("Writer cannot be null.");
+		}
+		if (maxErrors < 0) {
+			throw new IllegalArgumentException("Error cap cannot be negative.");
+		}
+		this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer, 1 << 16);
+		this.maxErrors = maxErrors;
+		this.aggregate = aggregate;
+	}
+
+	@Override
+	public void report(Diagnostic diagnostic) {
+		if (aggregate) {
+			Key key = new Key(diagnostic);
+			long[] count = repeats.get(key);
+			if (count != null) {
+				count[0]++;
+				return;
+			}
+			repeats.put(key, new long[] { 1 });
+			if (repeats.size() > MAX_REPEATS) {
+				// Iteration order is least recently seen first
+				Iterator<Map.Entry<Key, long[]>> eldest = repeats.entrySet().iterator();
+				summarise(eldest.next());
+				eldest.remove();
+			}
+		}
+
+		if (written == maxErrors) {
+			suppressed++;
+			return;
+		}
+		written++;
+		writeLine(diagnostic.toString());
+	}
+
+	/**
+	 * Writes the summaries and the verdict, and flushes. Once finished, a
+	 * further call only flushes, so a caller that hits an I/O error can finish
+	 * the sink without knowing whether the validator already did.
+	 */
+	@Override
+	public void finish(boolean wellFormed) {
+		if (finished) {
+			flush();
+			return;
+		}
+		finished = true;
+		for (Map.Entry<Key, long[]> repeat : repeats.entrySet()) {
+			summarise(repeat);
+		}
+		if (suppressed > 0) {
+			writeLine(String.format(Locale.ROOT, "%,d", suppressed) + " more errors not shown.");
+		}
+		if (wellFormed) {
+			writeLine("XML document is constructed correctly.");
+		}
+		flush();
+	}
+
+	private void summarise(Map.Entry<Key, long[]> repeat) {
+		long count = repeat.getValue()[0];
+		if (count > 1) {
+			writeLine(repeat.getKey().first.getMessage() + " x " + String.format(Locale.ROOT, "%,d", count));
+		}
+	}
+
+	private void flush() {
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeLine(String line) {
+		try {
+			writer.write(line);
+			writer.write(System.lineSeparator());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Identifies repeats of a diagnostic regardless of where they occur.
+	 */
+	private static class Key {
+		private final Diagnostic.Code code;
+		private final String expected;
+		private final String actual;
+		private final Diagnostic first;
+
+		Key(Diagnostic diagnostic) {
+			code = diagnostic.getCode();
+			expected = diagnostic.getExpected();
+			actual = diagnostic.getActual();
+			first = diagnostic;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key that = (Key) other;
+			return code == that.code && equal(expected, that.expected) && equal(actual, that.actual);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = code.hashCode();
+			hash = 31 * hash + (expected == null ? 0 : expected.hashCode());
+			hash = 31 * hash + (actual == null ? 0 : actual.hashCode());
+			return hash;
+		}
+
+		private static boolean equal(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+}
@@ -0,0 +1,432 @@
+package implementations;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rules saying which child elements each element may contain, compiled once
+ * into one deterministic automaton per element so that checking a document
+ * costs a table lookup per tag.
+ * <p>
+ * A rule file holds one rule per line, and <code>#</code> starts a comment:
+ *
+ * <pre>
+ * XMLDATA  = Submission+
+ * Driver   = Language*
+ * Language = PackageCreationLocation, (Note | Warning)?
+ * PackageCreationLocation = EMPTY
+ * </pre>
+ *
+ * A content model lists child element names joined by <code>,</code> (in this
+ * order) and <code>|</code> (either), grouped with parentheses and repeated
+ * with <code>?</code>, <code>*</code> and <code>+</code>, as in a DTD.
+ * <code>EMPTY</code> allows no children and <code>ANY</code> allows any, as
+ * does having no rule. Text between the elements is not checked.
+ */
+public class ContentRules {
+
+	private static final int MAX_STATES = 4096;
+
+	private final XMLSymbolTable symbols = new XMLSymbolTable();
+	private final Map<Integer, Node> parsed = new HashMap<>();
+	private Model[] models;
+
+	private ContentRules() {
+	}
+
+	/**
+	 * Reads and compiles a rule file.
+	 *
+	 * @param file the rule file, in UTF-8.
+	 * @return the compiled rules.
+	 * @throws IOException if the file cannot be read or has a syntax error.
+	 */
+	public static ContentRules load(Path file) throws IOException {
+		try {
+			return compile(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+		} catch (IllegalArgumentException e) {
+			throw new IOException(file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Compiles rules given as text in the rule file format.
+	 *
+	 * @param text the rules.
+	 * @return the compiled rules.
+	 * @throws IllegalArgumentException if the rules have a syntax error.
+	 */
+	public static ContentRules compile(String text) throws IllegalArgumentException {
+		ContentRules rules = new ContentRules();
+		String[] lines = text.split("\r\n|\r|\n", -1);
+		for (int i = 0; i < lines.length; i++) {
+			try {
+				rules.parseRule(lines[i]);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage());
+			}
+		}
+
+		// Every name is known only once all rules are read
+		rules.models = new Model[rules.symbols.size()];
+		for (Map.Entry<Integer, Node> rule : rules.parsed.entrySet()) {
+			rules.models[rule.getKey()] = rules.build(rule.getKey(), rule.getValue());
+		}
+		rules.parsed.clear();
+		return rules;
+	}
+
+	/**
+	 * Returns the number of elements that have a rule.
+	 *
+	 * @return the rule count, not counting <code>ANY</code> rules.
+	 */
+	public int getRuleCount() {
+		int count = 0;
+		for (Model model : models) {
+			if (model != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the symbol of an element name in these rules; names the rules do
+	 * not mention share one symbol.
+	 */
+	int symbolOf(String name) {
+		int symbol = symbols.lookup(name);
+		return symbol < 0 ? symbols.size() : symbol;
+	}
+
+	/**
+	 * Returns the automaton for the children of the element with the given
+	 * symbol, or <code>null</code> if they are not restricted.
+	 */
+	Model modelOf(int symbol) {
+		return symbol < models.length ? models[symbol] : null;
+	}
+
+	private void parseRule(String line) {
+		int comment = line.indexOf('#');
+		if (comment >= 0) {
+			line = line.substring(0, comment);
+		}
+		if (line.trim().isEmpty()) {
+			return;
+		}
+		int equals = line.indexOf('=');
+		if (equals < 0) {
+			throw new IllegalArgumentException("Expected 'name = content model'.");
+		}
+		String name = line.substring(0, equals).trim();
+		if (name.isEmpty() || !isName(name)) {
+			throw new IllegalArgumentException("Invalid element name '" + name + "'.");
+		}
+		int element = symbols.intern(name);
+		if (parsed.containsKey(element)) {
+			throw new IllegalArgumentException("Second rule for " + name + ".");
+		}
+
+		Parser parser = new Parser(line.substring(equals + 1));
+		String keyword = parser.text.trim();
+		if (keyword.equals("ANY")) {
+			return;
+		}
+		Node model;
+		if (keyword.equals("EMPTY")) {
+			model = new Node(Node.EMPTY, null, null);
+		} else {
+			model = parser.choice();
+			parser.skipSpace();
+			if (parser.index < parser.text.length()) {
+				throw new IllegalArgumentException("Unexpected '" + parser.text.charAt(parser.index) + "'.");
+			}
+		}
+		parsed.put(element, model);
+	}
+
+	private static boolean isName(String name) {
+		for (int i = 0; i < name.length(); i++) {
+			if (isDelimiter(name.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDelimiter(char c) {
+		return Character.isWhitespace(c) || "()|,?*+=#".indexOf(c) >= 0;
+	}
+
+	/**
+	 * Builds the automaton of a content model by the followpos construction:
+	 * each occurrence of a name in the model is a position, and a state is the
+	 * set of positions that may match the next child.
+	 */
+	private Model build(int element, Node root) {
+		MyArrayList<Node> leaves = new MyArrayList<>();
+		Node end = new Node(Node.NAME, null, null); // marks an accepting state
+		Node augmented = new Node(Node.SEQUENCE, root, end);
+		number(augmented, leaves);
+		BitSet[] follow = new BitSet[leaves.size()];
+		for (int i = 0; i < follow.length; i++) {
+			follow[i] = new BitSet();
+		}
+		compute(augmented, follow);
+
+		int width = symbols.size() + 1; // the extra symbol stands for unnamed elements
+		MyArrayList<BitSet> states = new MyArrayList<>();
+		Map<BitSet, Integer> numbers = new HashMap<>();
+		states.add(augmented.first);
+		numbers.put(augmented.first, 0);
+		MyArrayList<int[]> rows = new MyArrayList<>();
+
+		for (int state = 0; state < states.size(); state++) {
+			BitSet positions = states.get(state);
+			int[] row = new int[width];
+			for (int symbol = 0; symbol < width; symbol++) {
+				BitSet next = new BitSet();
+				for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+					if (leaves.get(p) != end && leaves.get(p).symbol == symbol) {
+						next.or(follow[p]);
+					}
+				}
+				if (next.isEmpty()) {
+					row[symbol] = -1;
+					continue;
+				}
+				Integer number = numbers.get(next);
+				if (number == null) {
+					if (states.size() == MAX_STATES) {
+						throw new IllegalArgumentException("Content model of " + symbols.nameOf(element)
+								+ " is too complex.");
+					}
+					number = states.size();
+					states.add(next);
+					numbers.put(next, number);
+				}
+				row[symbol] = number;
+			}
+			rows.add(row);
+		}
+
+		int[] transitions = new int[rows.size() * width];
+		boolean[] accepting = new boolean[rows.size()];
+		for (int state = 0; state < rows.size(); state++) {
+			System.arraycopy(rows.get(state), 0, transitions, state * width, width);
+			accepting[state] = states.get(state).get(end.position);
+		}
+		return new Model(transitions, accepting, width);
+	}
+
+	private static void number(Node node, MyArrayList<Node> leaves) {
+		if (node == null || node.kind == Node.EMPTY) {
+			return;
+		}
+		if (node.kind == Node.NAME) {
+			node.position = leaves.size();
+			leaves.add(node);
+			return;
+		}
+		number(node.left, leaves);
+		number(node.right, leaves);
+	}
+
+	// Fills in nullable, first and last, and adds to the followpos sets
+	private static void compute(Node node, BitSet[] follow) {
+		node.first = new BitSet();
+		node.last = new BitSet();
+		switch (node.kind) {
+		case Node.EMPTY:
+			node.nullable = true;
+			return;
+		case Node.NAME:
+			node.nullable = false;
+			node.first.set(node.position);
+			node.last.set(node.position);
+			return;
+		default:
+			break;
+		}
+
+		compute(node.left, follow);
+		if (node.right != null) {
+			compute(node.right, follow);
+		}
+		Node left = node.left;
+		Node right = node.right;
+		switch (node.kind) {
+		case Node.SEQUENCE:
+			node.nullable = left.nullable && right.nullable;
+			node.first.or(left.first);
+			if (left.nullable) {
+				node.first.or(right.first);
+			}
+			node.last.or(right.last);
+			if (right.nullable) {
+				node.last.or(left.last);
+			}
+			for (int p = left.last.nextSetBit(0); p >= 0; p = left.last.nextSetBit(p + 1)) {
+				follow[p].or(right.first);
+			}
+			break;
+		case Node.CHOICE:
+			node.nullable = left.nullable || right.nullable;
+			node.first.or(left.first);
+			node.first.or(right.first);
+			node.last.or(left.last);
+			node.last.or(right.last);
+			break;
+		default: // repetitions
+			node.nullable = node.kind != Node.ONE_OR_MORE || left.nullable;
+			node.first.or(left.first);
+			node.last.or(left.last);
+			if (node.kind != Node.OPTIONAL) {
+				for (int p = left.last.nextSetBit(0); p >= 0; p = left.last.nextSetBit(p + 1)) {
+					follow[p].or(left.first);
+				}
+			}
+			break;
+		}
+	}
+
+	/**
+	 * A compiled content model. State 0 is the state before the first child;
+	 * -1 means a child that is not allowed was seen.
+	 */
+	static final class Model {
+		private final int[] transitions;
+		private final boolean[] accepting;
+		private final int width;
+
+		Model(int[] transitions, boolean[] accepting, int width) {
+			this.transitions = transitions;
+			this.accepting = accepting;
+			this.width = width;
+		}
+
+		/** Returns the state after a child with the given symbol, or -1. */
+		int next(int state, int symbol) {
+			return transitions[state * width + symbol];
+		}
+
+		/** Returns <code>true</code> if the children seen so far are complete. */
+		boolean accepts(int state) {
+			return accepting[state];
+		}
+	}
+
+	/**
+	 * A node of a parsed content model.
+	 */
+	private static final class Node {
+		static final int NAME = 0;
+		static final int EMPTY = 1;
+		static final int SEQUENCE = 2;
+		static final int CHOICE = 3;
+		static final int OPTIONAL = 4;
+		static final int ZERO_OR_MORE = 5;
+		static final int ONE_OR_MORE = 6;
+
+		final int kind;
+		final Node left;
+		final Node right;
+		int symbol;
+		int position;
+		boolean nullable;
+		BitSet first;
+		BitSet last;
+
+		Node(int kind, Node left, Node right) {
+			this.kind = kind;
+			this.left = left;
+			this.right = right;
+		}
+	}
+
+	/**
+	 * Parses one content model by recursive descent.
+	 */
+	private final class Parser {
+		private final String text;
+		private int index = 0;
+
+		Parser(String text) {
+			this.text = text;
+		}
+
+		Node choice() {
+			Node node = sequence();
+			while (accept('|')) {
+				node = new Node(Node.CHOICE, node, sequence());
+			}
+			return node;
+		}
+
+		private Node sequence() {
+			Node node = repetition();
+			while (accept(',')) {
+				node = new Node(Node.SEQUENCE, node, repetition());
+			}
+			return node;
+		}
+
+		private Node repetition() {
+			Node node = primary();
+			if (accept('?')) {
+				return new Node(Node.OPTIONAL, node, null);
+			}
+			if (accept('*')) {
+				return new Node(Node.ZERO_OR_MORE, node, null);
+			}
+			if (accept('+')) {
+				return new Node(Node.ONE_OR_MORE, node, null);
+			}
+			return node;
+		}
+
+		private Node primary() {
+			if (accept('(')) {
+				Node node = choice();
+				if (!accept(')')) {
+					throw new IllegalArgumentException("Expected ')'.");
+				}
+				return node;
+			}
+			skipSpace();
+			int start = index;
+			while (index < text.length() && !isDelimiter(text.charAt(index))) {
+				index++;
+			}
+			if (start == index) {
+				throw new IllegalArgumentException(index < text.length()
+						? "Unexpected '" + text.charAt(index) + "'." : "Content model is incomplete.");
+			}
+			Node node = new Node(Node.NAME, null, null);
+			node.symbol = symbols.intern(text.substring(start, index));
+			return node;
+		}
+
+		private boolean accept(char c) {
+			skipSpace();
+			if (index < text.length() && text.charAt(index) == c) {
+				index++;
+				return true;
+			}
+			return false;
+		}
+
+		void skipSpace() {
+			while (index < text.length() && Character.isWhitespace(text.charAt(index))) {
+				index++;
+			}
+		}
+	}
+}
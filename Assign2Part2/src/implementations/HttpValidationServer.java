@@ -0,0 +1,226 @@
+package implementations;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import utilities.Diagnostic;
+import utilities.DiagnosticSink;
+
+/**
+ * Validates documents uploaded over HTTP, so that other services can call the
+ * validator without starting a process.
+ * <p>
+ * A <code>POST /validate</code> request carries the document as its body,
+ * gzip-compressed if its <code>Content-Encoding</code> says so. The body is
+ * validated as it arrives, through the same fixed-size buffers as a file, so a
+ * request holds only those buffers and the diagnostics it returns whatever the
+ * size of the upload. The answer is a JSON object such as
+ *
+ * <pre>
+ * {"wellFormed":false,"errors":1,"diagnostics":[{"code":"MISMATCHED_TAG",
+ *  "line":2,"column":1,"offset":4,"expected":"a","actual":"b",
+ *  "message":"Mismatched tag &lt;/b&gt;, expected &lt;/a&gt;"}],"truncated":false}
+ * </pre>
+ *
+ * The query option <code>max-errors=n</code> (100 by default, at most
+ * {@link #MAX_ERRORS}) limits the diagnostics returned. With <code>verdict=true</code> validation stops at the
+ * first error, which is not described, so the answer is only
+ * <code>{"wellFormed":false}</code> or <code>{"wellFormed":true}</code>.
+ * Compressed bodies are inflated on the request's own thread. Each request
+ * runs on its own virtual thread when the JVM has them, so thousands of slow
+ * uploads do not tie up a thread pool.
+ */
+public class HttpValidationServer implements Closeable {
+
+	/** Largest number of diagnostics returned unless the request asks otherwise. */
+	public static final int DEFAULT_MAX_ERRORS = 100;
+
+	/** Most diagnostics a request can ask for, so one answer cannot take unbounded memory. */
+	public static final int MAX_ERRORS = 10000;
+
+	private static final int BACKLOG = 1024;
+
+	private final ExecutorService pool;
+	private HttpServer server;
+
+	/**
+	 * Creates a server.
+	 *
+	 * @param threads number of platform threads to use when the JVM has no
+	 *                virtual threads.
+	 */
+	public HttpValidationServer(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Thread count must be positive.");
+		}
+		pool = BatchXMLValidator.createPool(threads, true);
+	}
+
+	/**
+	 * Binds the given address and starts serving.
+	 *
+	 * @param address address to listen on.
+	 * @return the address bound, which holds the actual port if port 0 was
+	 *         asked for.
+	 * @throws IOException if the address cannot be bound.
+	 */
+	public InetSocketAddress start(InetSocketAddress address) throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("Server already started.");
+		}
+		server = HttpServer.create(address, BACKLOG);
+		server.createContext("/validate", this::handle);
+		server.setExecutor(pool);
+		server.start();
+		return server.getAddress();
+	}
+
+	/**
+	 * Stops the server, letting requests in progress finish for up to a
+	 * second.
+	 */
+	@Override
+	public void close() {
+		if (server != null) {
+			server.stop(1);
+		}
+		pool.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (InputStream body = exchange.getRequestBody()) {
+			if (!exchange.getRequestURI().getPath().equals("/validate")) {
+				respond(exchange, 404, "{\"error\":\"Not found\"}");
+				return;
+			}
+			if (!exchange.getRequestMethod().equals("POST")) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				respond(exchange, 405, "{\"error\":\"Method not allowed\"}");
+				return;
+			}
+
+			long maxErrors = DEFAULT_MAX_ERRORS;
+			boolean verdictOnly = false;
+			String query = exchange.getRequestURI().getRawQuery();
+			for (String option : query == null ? new String[0] : query.split("&")) {
+				if (option.startsWith("max-errors=")) {
+					maxErrors = Math.min(parseCount(option.substring("max-errors=".length())), MAX_ERRORS);
+				} else if (option.equals("verdict=true") || option.equals("verdict")) {
+					verdictOnly = true;
+				} else if (!option.isEmpty() && !option.equals("verdict=false")) {
+					maxErrors = -1;
+				}
+			}
+			if (maxErrors < 0) {
+				respond(exchange, 400, "{\"error\":\"Invalid query: " + escape(query) + "\"}");
+				return;
+			}
+
+			JsonSink sink = new JsonSink(maxErrors);
+			XMLParser parser = new XMLParser(sink);
+			parser.setVerdictOnly(verdictOnly);
+			String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+			try {
+				// Read on this thread only, so the body is never closed under a reader
+				boolean compressed = encoding != null && encoding.trim().toLowerCase(Locale.ROOT).equals("gzip");
+				parser.parseStream(compressed ? XMLParser.inflate(body) : body);
+			} catch (IOException e) {
+				respond(exchange, 400, "{\"error\":\"" + escape("Error reading body: " + e.getMessage()) + "\"}");
+				return;
+			}
+			respond(exchange, 200, verdictOnly ? "{\"wellFormed\":" + parser.isWellFormed() + "}"
+					: sink.toJson(parser.isWellFormed()));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static long parseCount(String value) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	// The text of a JSON string, without its quotes
+	private static String escape(String text) {
+		if (text == null) {
+			return "";
+		}
+		StringBuilder escaped = new StringBuilder(text.length() + 8);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				escaped.append('\\').append(c);
+			} else if (c < 0x20) {
+				escaped.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			} else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	/**
+	 * Collects the first diagnostics as JSON and counts the rest.
+	 */
+	private static class JsonSink implements DiagnosticSink {
+		private final long maxErrors;
+		private final StringBuilder diagnostics = new StringBuilder();
+		private long errors;
+
+		JsonSink(long maxErrors) {
+			this.maxErrors = maxErrors;
+		}
+
+		@Override
+		public void report(Diagnostic diagnostic) {
+			if (errors++ >= maxErrors) {
+				return;
+			}
+			if (diagnostics.length() > 0) {
+				diagnostics.append(',');
+			}
+			diagnostics.append("{\"code\":\"").append(diagnostic.getCode()).append('"');
+			diagnostics.append(",\"line\":").append(diagnostic.getLine());
+			diagnostics.append(",\"column\":").append(diagnostic.getColumn());
+			diagnostics.append(",\"offset\":").append(diagnostic.getOffset());
+			if (diagnostic.getExpected() != null) {
+				diagnostics.append(",\"expected\":\"").append(escape(diagnostic.getExpected())).append('"');
+			}
+			if (diagnostic.getActual() != null) {
+				diagnostics.append(",\"actual\":\"").append(escape(diagnostic.getActual())).append('"');
+			}
+			diagnostics.append(",\"message\":\"").append(escape(diagnostic.getMessage())).append("\"}");
+		}
+
+		@Override
+		public void finish(boolean wellFormed) {
+			// The answer is built once the body has been read
+		}
+
+		String toJson(boolean wellFormed) {
+			return "{\"wellFormed\":" + wellFormed + ",\"errors\":" + errors + ",\"diagnostics\":[" + diagnostics
+					+ "],\"truncated\":" + (errors > maxErrors) + "}";
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package implementations;
+
+import java.util.EmptyStackException;
+
+/**
+ * A stack of primitive ints backed by a growable array, for hot paths where
+ * boxing every element in a {@link MyStack} would be too costly.
+ */
+public class MyIntStack {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] data;
+	private int size;
+
+	public MyIntStack() {
+		data = new int[DEFAULT_CAPACITY];
+		size = 0;
+	}
+
+	public void push(int toAdd) {
+		if (size == data.length) {
+			int[] newData = new int[data.length * 2];
+			System.arraycopy(data, 0, newData, 0, size);
+			data = newData;
+		}
+		data[size++] = toAdd;
+	}
+
+	public int pop() throws EmptyStackException {
+		if (size == 0) {
+			throw new EmptyStackException();
+		}
+		return data[--size];
+	}
+
+	public int peek() throws EmptyStackException {
+		if (size == 0) {
+			throw new EmptyStackException();
+		}
+		return data[size - 1];
+	}
+
+	/**
+	 * Returns the element at the given depth, counted from the bottom of the
+	 * stack.
+	 *
+	 * @param index 0-based position from the bottom.
+	 * @return the element at that position.
+	 * @throws IndexOutOfBoundsException if the index is not within the stack.
+	 */
+	public int get(int index) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Invalid index.");
+		}
+		return data[index];
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+}
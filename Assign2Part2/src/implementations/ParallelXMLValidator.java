@@ -0,0 +1,491 @@
+package implementations;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import utilities.Diagnostic;
+import utilities.DiagnosticSink;
+import utilities.XMLTagHandler;
+
+/**
+ * Validates a single large file on several threads.
+ * <p>
+ * The file is split into byte ranges that each start at a '&lt;'. Every worker
+ * scans its range with its own stack and produces a summary: the end tags it
+ * could not match locally (the unmatched closes prefix), the tags still open at
+ * the end of the range (the unmatched opens suffix), and the mismatches it
+ * resolved on its own. The summaries are then merged left to right against one
+ * stack, which reproduces the diagnostics of the sequential
+ * {@link XMLValidator} exactly.
+ * <p>
+ * A range boundary may fall inside a comment, CDATA section, processing
+ * instruction or quoted attribute value. When the merge finds that the range
+ * before a boundary really ended inside markup, the range after it is scanned
+ * again starting from the true lexer state. If the root element is closed and
+ * further elements follow, the rest of the file is finished sequentially so the
+ * "content after root" messages come out in order.
+ * <p>
+ * A range keeps at most {@link #MAX_ENTRIES} events for the merge. A range with
+ * more (a garbage-heavy stretch of the file) stops early, and the merge
+ * finishes the file sequentially from the start of that range, so memory stays
+ * bounded and the diagnostics are still those of a sequential run. With an
+ * error limit, a range also stops once it has found that many errors of its
+ * own, as the merge can never get past them.
+ * <p>
+ * Whenever the merge stops early or goes sequential, the workers still
+ * scanning are cancelled, and none is left running once a validation returns.
+ * <p>
+ * Ranges are found by scanning for the byte '&lt;', so only UTF-8 and ASCII
+ * files are split; a file in any other encoding detected by
+ * {@link XMLEncodingDetector} is validated sequentially by {@link XMLParser}.
+ */
+public class ParallelXMLValidator {
+
+	/** Smallest byte range handed to a single worker by default. */
+	public static final long DEFAULT_MIN_CHUNK_SIZE = 1L << 20;
+
+	/** Most events a range keeps for the merge before it is left to a sequential scan. */
+	public static final int MAX_ENTRIES = 1 << 16;
+
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final int threads;
+	private final long minChunkSize;
+	private long stopAfter = Long.MAX_VALUE;
+
+	/**
+	 * Creates a validator that uses the given number of worker threads.
+	 *
+	 * @param threads number of workers.
+	 */
+	public ParallelXMLValidator(int threads) {
+		this(threads, DEFAULT_MIN_CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates a validator that uses the given number of worker threads and never
+	 * splits the file into ranges smaller than the given size.
+	 *
+	 * @param threads      number of workers.
+	 * @param minChunkSize smallest byte range given to a worker.
+	 */
+	public ParallelXMLValidator(int threads, long minChunkSize) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Thread count must be positive.");
+		}
+		if (minChunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive.");
+		}
+		this.threads = threads;
+		this.minChunkSize = minChunkSize;
+	}
+
+	/**
+	 * Stops validating once the given number of errors has been found, as
+	 * {@link XMLValidator#setStopAfter(long)} does.
+	 *
+	 * @param errors number of errors after which to stop.
+	 * @throws IllegalArgumentException if the limit is not positive.
+	 */
+	public void setStopAfter(long errors) throws IllegalArgumentException {
+		if (errors <= 0) {
+			throw new IllegalArgumentException("Error limit must be positive.");
+		}
+		stopAfter = errors;
+	}
+
+	/**
+	 * Validates the whole file and prints the same messages, in the same order,
+	 * as a sequential run of {@link XMLParser}.
+	 *
+	 * @param channel channel open for reading; it is not closed.
+	 * @param out     destination of the validation messages.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public void validate(FileChannel channel, PrintStream out) throws IOException {
+		validate(channel, new BufferedDiagnosticSink(out));
+	}
+
+	/**
+	 * Validates the whole file and delivers the same diagnostics, in the same
+	 * order, as a sequential {@link XMLValidator}.
+	 *
+	 * @param channel channel open for reading; it is not closed.
+	 * @param sink    receiver of the diagnostics.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public void validate(FileChannel channel, DiagnosticSink sink) throws IOException {
+		if (!XMLEncodingDetector.isByteScannable(XMLEncodingDetector.detect(channel))) {
+			XMLParser parser = new XMLParser(sink);
+			if (stopAfter != Long.MAX_VALUE) {
+				parser.setStopAfter(stopAfter);
+			}
+			parser.parseFile(channel.position(0), false);
+			return;
+		}
+
+		long size = channel.size();
+		long[] bounds = split(channel, size);
+		int chunkCount = bounds.length - 1;
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, chunkCount), task -> {
+			Thread worker = new Thread(task, "xml-range");
+			worker.setDaemon(true);
+			return worker;
+		});
+		MyArrayList<Chunk> chunks = new MyArrayList<>();
+		try {
+			MyArrayList<Future<Chunk>> results = new MyArrayList<>();
+			for (int k = 0; k < chunkCount; k++) {
+				final Chunk chunk = new Chunk(stopAfter);
+				final long start = bounds[k];
+				final long end = bounds[k + 1];
+				chunks.add(chunk);
+				results.add(pool.submit(() -> scan(chunk, channel, start, end, null)));
+			}
+			merge(channel, bounds, chunks, results, sink);
+		} finally {
+			// Cancelled, not interrupted: an interrupt in map() closes the shared channel
+			cancel(chunks, 0);
+			pool.shutdown();
+			join(pool);
+		}
+	}
+
+	private static void cancel(MyArrayList<Chunk> chunks, int from) {
+		for (int k = from; k < chunks.size(); k++) {
+			chunks.get(k).tokenizer.cancel();
+		}
+	}
+
+	// Waits for the cancelled workers, so none still reads the file afterwards
+	private static void join(ExecutorService pool) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (pool.awaitTermination(1, TimeUnit.SECONDS)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private long[] split(FileChannel channel, long size) throws IOException {
+		long count = Math.min((long) threads * CHUNKS_PER_THREAD, size / minChunkSize);
+		count = Math.max(count, (size + XMLTokenizer.MAP_WINDOW_SIZE - 1) / XMLTokenizer.MAP_WINDOW_SIZE);
+		count = Math.max(count, 1);
+
+		long[] bounds = new long[(int) count + 1];
+		int used = 1;
+		for (long k = 1; k < count; k++) {
+			long boundary = findMarkup(channel, size * k / count, size);
+			if (boundary > bounds[used - 1] && boundary < size) {
+				bounds[used++] = boundary;
+			}
+		}
+		bounds[used++] = size;
+
+		long[] trimmed = new long[used];
+		System.arraycopy(bounds, 0, trimmed, 0, used);
+		return trimmed;
+	}
+
+	// Returns the offset of the first '<' at or after from, or size if none
+	private static long findMarkup(FileChannel channel, long from, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		long position = from;
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '<') {
+					return position + i;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	private static Chunk scan(Chunk chunk, FileChannel channel, long start, long end, XMLTokenizer startState)
+			throws IOException {
+		if (startState != null) {
+			chunk.tokenizer.copyState(startState);
+		}
+		chunk.tokenizer.setLine(1);
+		chunk.tokenizer.setOffset(start);
+		chunk.tokenizer.tokenizeMapped(channel, start, end - start);
+		chunk.newlines = chunk.tokenizer.getLine() - 1;
+		return chunk;
+	}
+
+	private void merge(FileChannel channel, long[] bounds, MyArrayList<Chunk> chunks,
+			MyArrayList<Future<Chunk>> results, DiagnosticSink sink) throws IOException {
+		MyStack<String> stack = new MyStack<>();
+		boolean hasRoot = false;
+		boolean rootClosed = false;
+		long errors = 0;
+		long lineBase = 0;
+		long lineStart = 0;
+		Chunk previous = null;
+
+		for (int k = 0; k < results.size(); k++) {
+			Chunk chunk = await(results.get(k));
+
+			// The speculative scan assumed the range starts in character data
+			if (previous != null && previous.tokenizer.isInMarkup()) {
+				chunk = scan(new Chunk(stopAfter), channel, bounds[k], bounds[k + 1], previous.tokenizer);
+			}
+
+			if (chunk.overflowed || reopensAfterRoot(chunk, stack.size(), rootClosed)) {
+				cancel(chunks, k + 1);
+				XMLValidator validator = new XMLValidator(sink, stack, hasRoot, rootClosed, errors);
+				if (stopAfter != Long.MAX_VALUE) {
+					validator.setStopAfter(stopAfter);
+				}
+				XMLTokenizer tokenizer = validator.getTokenizer();
+				if (previous != null) {
+					tokenizer.copyState(previous.tokenizer);
+				}
+				tokenizer.setLine(lineBase + 1);
+				tokenizer.setLineStart(lineStart);
+				tokenizer.tokenizeMapped(channel, bounds[k], channel.size() - bounds[k]);
+				validator.finish();
+				return;
+			}
+
+			for (int i = 0; i < chunk.entries.size(); i++) {
+				Entry entry = chunk.entries.get(i);
+				// Columns on the first line of a range continue the previous range's line
+				long column = entry.line == 1 ? entry.offset - lineStart + 1 : entry.column;
+				Diagnostic diagnostic = null;
+				if (entry.type == Entry.ATTRIBUTE) {
+					diagnostic = new Diagnostic(entry.code, entry.line + lineBase, column, entry.offset, entry.expected,
+							entry.name);
+				} else if (entry.type == Entry.MISMATCH) {
+					diagnostic = new Diagnostic(Diagnostic.Code.MISMATCHED_TAG, entry.line + lineBase, column,
+							entry.offset, entry.expected, entry.name);
+				} else if (entry.type == Entry.UNMATCHED_CLOSE) {
+					if (stack.isEmpty()) {
+						diagnostic = new Diagnostic(Diagnostic.Code.UNEXPECTED_CLOSING_TAG, entry.line + lineBase,
+								column, entry.offset, null, entry.name);
+					} else {
+						String openTag = stack.pop();
+						if (!openTag.equals(entry.name)) {
+							diagnostic = new Diagnostic(Diagnostic.Code.MISMATCHED_TAG, entry.line + lineBase, column,
+									entry.offset, openTag, entry.name);
+						}
+					}
+				}
+				if (diagnostic != null) {
+					errors++;
+					sink.report(diagnostic);
+					if (errors >= stopAfter) {
+						// As a sequential run stops, without listing the open tags
+						sink.finish(false);
+						return;
+					}
+				}
+				if (entry.type != Entry.ATTRIBUTE && entry.type != Entry.MISMATCH && stack.isEmpty()) {
+					rootClosed = true;
+				}
+			}
+
+			// Tags left open by this range sit above those of earlier ranges
+			for (int i = 0; i < chunk.open.size(); i++) {
+				stack.push(chunk.symbols.nameOf(chunk.open.get(i)));
+			}
+
+			hasRoot |= chunk.opens > 0;
+			lineBase += chunk.newlines;
+			if (chunk.newlines > 0) {
+				lineStart = chunk.tokenizer.getLineStart();
+			}
+			previous = chunk;
+		}
+
+		XMLValidator validator = new XMLValidator(sink, stack, hasRoot, rootClosed, errors);
+		if (stopAfter != Long.MAX_VALUE) {
+			validator.setStopAfter(stopAfter);
+		}
+		if (previous != null) {
+			// So that an attribute value still open at the end is reported
+			validator.getTokenizer().copyState(previous.tokenizer);
+		}
+		validator.finish();
+	}
+
+	/**
+	 * Determines whether the root element is closed inside the given range and
+	 * followed by another start tag, using only the depth of the merged stack.
+	 */
+	private static boolean reopensAfterRoot(Chunk chunk, int depth, boolean rootClosed) {
+		if (chunk.opens == 0) {
+			return false;
+		}
+		if (rootClosed) {
+			return true;
+		}
+
+		int remaining = depth;
+		for (int i = 0; i < chunk.entries.size(); i++) {
+			Entry entry = chunk.entries.get(i);
+			if (entry.type == Entry.MISMATCH || entry.type == Entry.ATTRIBUTE) {
+				continue;
+			}
+			if (entry.type == Entry.UNMATCHED_CLOSE && remaining > 0) {
+				remaining--;
+			}
+			if (remaining == 0 && chunk.lastOpenEvent > entry.event) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Chunk await(Future<Chunk> result) throws IOException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while validating", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Summary of one byte range, built while the range is scanned.
+	 */
+	private static class Chunk implements XMLTagHandler {
+		private final XMLTokenizer tokenizer = new XMLTokenizer(this);
+		private final XMLSymbolTable symbols = new XMLSymbolTable();
+		private final MyIntStack open = new MyIntStack();
+		private final MyArrayList<Entry> entries = new MyArrayList<>();
+		private final long stopAfter;
+		private long errors; // mismatches and attribute errors, which are always reported
+		private boolean overflowed; // stopped at MAX_ENTRIES, to be scanned sequentially
+
+		private long events;
+		private long opens;
+		private long lastOpenEvent = -1;
+		private long newlines;
+		private boolean emptiedRecorded;
+
+		Chunk(long stopAfter) {
+			this.stopAfter = stopAfter;
+		}
+
+		private void record(Entry entry) {
+			entries.add(entry);
+			if (entry.type == Entry.MISMATCH || entry.type == Entry.ATTRIBUTE) {
+				errors++;
+			}
+			if (errors >= stopAfter) {
+				tokenizer.stop();
+			} else if (entries.size() >= MAX_ENTRIES) {
+				overflowed = true;
+				tokenizer.stop();
+			}
+		}
+
+		@Override
+		public void startTag(char[] name, int length, boolean selfClosing) {
+			if (selfClosing) {
+				return;
+			}
+			events++;
+			opens++;
+			lastOpenEvent = events;
+			open.push(symbols.intern(name, 0, length));
+		}
+
+		@Override
+		public void endTag(char[] name, int length) {
+			events++;
+			if (open.isEmpty()) {
+				record(new Entry(Entry.UNMATCHED_CLOSE, events, tokenizer,
+						symbols.nameOf(symbols.intern(name, 0, length)), null));
+				emptiedRecorded = false;
+				return;
+			}
+
+			int openTag = open.pop();
+			int closeTag = symbols.intern(name, 0, length);
+			if (openTag != closeTag) {
+				record(new Entry(Entry.MISMATCH, events, tokenizer, symbols.nameOf(closeTag),
+						symbols.nameOf(openTag)));
+			}
+			// Only the first time the local stack empties between two unmatched
+			// closes can change whether the root has been closed
+			if (open.isEmpty() && !emptiedRecorded) {
+				record(new Entry(Entry.EMPTIED, events, null, null, null));
+				emptiedRecorded = true;
+			}
+		}
+
+		@Override
+		public void attributeError(Diagnostic.Code code, char[] tag, int tagLength, char[] attribute,
+				int attributeLength) {
+			record(new Entry(code, events, tokenizer, code == Diagnostic.Code.MALFORMED_ATTRIBUTE ? null
+					: new String(attribute, 0, attributeLength), new String(tag, 0, tagLength)));
+		}
+	}
+
+	/**
+	 * An event of a range whose effect depends on, or is reported relative to,
+	 * the ranges before it.
+	 */
+	private static class Entry {
+		static final int MISMATCH = 0; // resolved locally
+		static final int UNMATCHED_CLOSE = 1; // pops a tag from an earlier range
+		static final int EMPTIED = 2; // local stack became empty
+		static final int ATTRIBUTE = 3; // attribute error, resolved locally
+
+		final int type;
+		final long event;
+		final long line; // relative to the range
+		final long column; // relative to the range on its first line
+		final long offset;
+		final String name;
+		final String expected;
+		final Diagnostic.Code code; // of an attribute error
+
+		Entry(int type, long event, XMLTokenizer position, String name, String expected) {
+			this(type, event, position, name, expected, null);
+		}
+
+		Entry(Diagnostic.Code code, long event, XMLTokenizer position, String name, String tag) {
+			this(ATTRIBUTE, event, position, name, tag, code);
+		}
+
+		private Entry(int type, long event, XMLTokenizer position, String name, String expected, Diagnostic.Code code) {
+			this.type = type;
+			this.code = code;
+			this.event = event;
+			this.line = position == null ? 0 : position.getTagLine();
+			this.column = position == null ? 0 : position.getTagColumn();
+			this.offset = position == null ? 0 : position.getTagOffset();
+			this.name = name;
+			this.expected = expected;
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package implementations;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a channel ahead of its consumer on a separate I/O thread, so that the
+ * time spent waiting for reads overlaps with the time spent scanning.
+ * <p>
+ * A fixed pool of buffers circulates between the two threads over two
+ * {@link SpscRing}s: the I/O thread takes empty buffers from one, fills them
+ * and passes them on through the other; the consumer takes filled buffers with
+ * {@link #next()} and gives them back with {@link #recycle(ByteBuffer)}. When
+ * every buffer is full and unconsumed the I/O thread waits, which bounds the
+ * memory used.
+ * <p>
+ * Buffers are only allocated when the I/O thread runs out of empty ones, so a
+ * short input takes one or two, and buffers of the default size are kept in a
+ * shared pool for the next reader once this one is closed. The I/O threads are
+ * pooled too.
+ */
+public class ReadAheadReader implements Closeable {
+
+	/** Default number of buffers in the pool. */
+	public static final int DEFAULT_BUFFERS = 8;
+
+	/** Default size of each buffer in bytes. */
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	// Idle default-size buffers shared by all readers
+	private static final ByteBuffer[] spare = new ByteBuffer[4 * DEFAULT_BUFFERS];
+	private static int spareCount = 0;
+
+	private static final ExecutorService threads = Executors.newCachedThreadPool(task -> {
+		Thread thread = new Thread(task, "xml-read-ahead");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final ReadableByteChannel channel;
+	private final int bufferSize;
+	private final SpscRing<ByteBuffer> empty;
+	private final SpscRing<ByteBuffer> filled;
+	private final ByteBuffer[] allocated; // written by the I/O thread only
+	private int allocatedCount = 0;
+	private final Future<?> task;
+
+	private volatile boolean closed;
+	private volatile boolean done;
+	private volatile Throwable failure;
+	private boolean released;
+
+	/**
+	 * Starts reading the given channel ahead with the default pool.
+	 *
+	 * @param channel source of bytes; it is not closed.
+	 */
+	public ReadAheadReader(ReadableByteChannel channel) {
+		this(channel, DEFAULT_BUFFERS, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Starts reading the given channel ahead into a pool of buffers.
+	 *
+	 * @param channel    source of bytes; it is not closed.
+	 * @param buffers    number of buffers in the pool.
+	 * @param bufferSize size of each buffer in bytes.
+	 */
+	public ReadAheadReader(ReadableByteChannel channel, int buffers, int bufferSize) {
+		if (buffers <= 0 || bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer count and size must be positive.");
+		}
+		this.channel = channel;
+		this.bufferSize = bufferSize;
+		empty = new SpscRing<>(buffers);
+		filled = new SpscRing<>(buffers);
+		allocated = new ByteBuffer[buffers];
+		task = threads.submit(this::readAll);
+	}
+
+	/**
+	 * Returns the next buffer of input, waiting for the I/O thread if needed.
+	 * The buffer must be handed back through {@link #recycle(ByteBuffer)} once
+	 * its bytes have been used.
+	 *
+	 * @return the next filled buffer, or <code>null</code> at the end of input.
+	 * @throws IOException if the I/O thread failed to read.
+	 */
+	public ByteBuffer next() throws IOException {
+		for (int attempt = 0;; attempt++) {
+			// Read done before polling, so no buffer filled before the end is missed
+			boolean finished = done;
+			ByteBuffer buffer = filled.poll();
+			if (buffer != null) {
+				return buffer;
+			}
+			if (finished) {
+				if (failure != null) {
+					throw new IOException("Read-ahead failed: " + failure.getMessage(), failure);
+				}
+				return null;
+			}
+			SpscRing.idle(attempt);
+		}
+	}
+
+	/**
+	 * Hands a buffer returned by {@link #next()} back to the I/O thread.
+	 *
+	 * @param buffer buffer to refill.
+	 */
+	public void recycle(ByteBuffer buffer) {
+		empty.offer(buffer);
+	}
+
+	/**
+	 * Stops reading ahead and waits for the I/O thread to finish the read in
+	 * progress, if any, so the channel may be closed as soon as this returns;
+	 * the channel itself is left open. Buffers returned by {@link #next()} must
+	 * not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		if (released) {
+			return;
+		}
+		closed = true;
+		boolean interrupted = false;
+		while (true) {
+			try {
+				task.get();
+				break;
+			} catch (InterruptedException e) {
+				// Interrupting the I/O thread would close the channel, so keep waiting
+				interrupted = true;
+			} catch (ExecutionException e) {
+				break; // readAll keeps its failures
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		released = true;
+		if (bufferSize == DEFAULT_BUFFER_SIZE) {
+			synchronized (spare) {
+				for (int i = 0; i < allocatedCount && spareCount < spare.length; i++) {
+					spare[spareCount++] = allocated[i];
+				}
+			}
+		}
+	}
+
+	private void readAll() {
+		try {
+			boolean end = false;
+			while (!end && !closed) {
+				ByteBuffer buffer = takeEmpty();
+				if (buffer == null) {
+					return;
+				}
+				buffer.clear();
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer) < 0) {
+						end = true;
+						break;
+					}
+				}
+				buffer.flip();
+				// An empty last buffer is dropped: only the consumer may refill the
+				// pool. Offering cannot fail, as there are never more buffers than
+				// ring slots.
+				if (buffer.hasRemaining()) {
+					filled.offer(buffer);
+				}
+			}
+		} catch (Throwable e) {
+			// Anything the channel throws must still end the input for the consumer
+			failure = e;
+		} finally {
+			done = true;
+		}
+	}
+
+	private ByteBuffer takeEmpty() {
+		for (int attempt = 0; !closed; attempt++) {
+			ByteBuffer buffer = empty.poll();
+			if (buffer != null) {
+				return buffer;
+			}
+			if (allocatedCount < allocated.length) {
+				buffer = allocate();
+				allocated[allocatedCount++] = buffer;
+				return buffer;
+			}
+			SpscRing.idle(attempt);
+		}
+		return null;
+	}
+
+	private ByteBuffer allocate() {
+		if (bufferSize == DEFAULT_BUFFER_SIZE) {
+			synchronized (spare) {
+				if (spareCount > 0) {
+					ByteBuffer buffer = spare[--spareCount];
+					spare[spareCount] = null;
+					return buffer;
+				}
+			}
+		}
+		// Little-endian words let the tokenizer skip its byte swap
+		return ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
@@ -0,0 +1,116 @@
+package implementations;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded first-in first-out queue for exactly one producer thread and one
+ * consumer thread. It takes no locks: each side owns one counter and publishes
+ * it with an ordered store, which is all the synchronization two threads need.
+ *
+ * @param <E> type of the elements.
+ */
+public class SpscRing<E> {
+
+	private static final int SPINS = 100;
+	private static final int YIELDS = 200;
+	private static final long PARK_NANOS = 50_000;
+
+	private final Object[] items;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong(); // next index to take, written by the consumer
+	private final AtomicLong tail = new AtomicLong(); // next index to fill, written by the producer
+
+	/**
+	 * Creates a ring holding at least the given number of elements; the
+	 * capacity is rounded up to a power of two.
+	 *
+	 * @param capacity smallest number of elements the ring can hold.
+	 */
+	public SpscRing(int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30.");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		items = new Object[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Adds an element if there is room. Only the producer thread may call this.
+	 *
+	 * @param element element to add.
+	 * @return <code>true</code> if the element was added.
+	 */
+	public boolean offer(E element) {
+		if (element == null) {
+			throw new NullPointerException("Element cannot be null.");
+		}
+		long t = tail.get();
+		if (t - head.get() == items.length) {
+			return false;
+		}
+		items[(int) t & mask] = element;
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Removes the oldest element, if any. Only the consumer thread may call
+	 * this.
+	 *
+	 * @return the oldest element, or <code>null</code> if the ring is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		long h = head.get();
+		if (h == tail.get()) {
+			return null;
+		}
+		int index = (int) h & mask;
+		E element = (E) items[index];
+		items[index] = null;
+		head.lazySet(h + 1);
+		return element;
+	}
+
+	/**
+	 * Returns the number of elements in the ring. The answer may be out of date
+	 * by the time it is used.
+	 *
+	 * @return the number of elements.
+	 */
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	/**
+	 * Returns the number of elements the ring can hold.
+	 *
+	 * @return the capacity.
+	 */
+	public int capacity() {
+		return items.length;
+	}
+
+	/**
+	 * Waits a little longer each time it is called with a larger count: first
+	 * spinning, then yielding, then parking briefly. Used by threads waiting
+	 * for the other side of a ring.
+	 *
+	 * @param attempt number of times the caller has already waited.
+	 */
+	public static void idle(int attempt) {
+		if (attempt < SPINS) {
+			return;
+		}
+		if (attempt < SPINS + YIELDS) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package implementations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import utilities.DiagnosticSink;
+
+/**
+ * Validates a file that only ever grows, such as an XML log, scanning only the
+ * bytes appended since the previous run.
+ * <p>
+ * After each run a checkpoint is saved holding the byte offset reached, the
+ * lexer state, the open tags and the error count. The next run restores it and
+ * continues from that offset, so it reports only the problems in the new bytes,
+ * followed by the verdict for the file as it now stands. If the file is
+ * shorter than the checkpoint, or the bytes just before the checkpoint changed,
+ * the file was replaced and is validated again from the start.
+ * <p>
+ * Offsets are byte offsets, so only files whose encoding can be scanned byte by
+ * byte (UTF-8 and ASCII) can be resumed; the encoding is detected from the
+ * start of the file on every run.
+ */
+public class TailXMLValidator {
+
+	private static final int MAGIC = 0x584d4c54; // "XMLT"
+	private static final int VERSION = 4;
+	private static final int FINGERPRINT_SIZE = 64;
+
+	private final Path checkpoint;
+	private boolean resumed;
+
+	/**
+	 * Creates a validator that keeps its checkpoint in the given file.
+	 *
+	 * @param checkpoint where the checkpoint is saved.
+	 */
+	public TailXMLValidator(Path checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * Validates the bytes appended since the last checkpoint, delivers their
+	 * diagnostics and the verdict to the sink, then saves a new checkpoint.
+	 *
+	 * @param channel channel open for reading; it is not closed.
+	 * @param sink    receiver of the diagnostics.
+	 * @return <code>true</code> if the file is well formed so far.
+	 * @throws IOException if the file cannot be read, is not in an encoding
+	 *                     that can be scanned byte by byte, or the checkpoint
+	 *                     cannot be saved.
+	 */
+	public boolean validate(FileChannel channel, DiagnosticSink sink) throws IOException {
+		// Refuse before the checkpoint is touched, so no offset into it is kept
+		Charset charset = XMLEncodingDetector.detect(channel);
+		if (!XMLEncodingDetector.isByteScannable(charset)) {
+			throw new IOException("Cannot resume a " + charset.name()
+					+ " document: only UTF-8 and ASCII files can be validated from a checkpoint");
+		}
+
+		XMLValidator validator = new XMLValidator(sink);
+		XMLTokenizer tokenizer = validator.getTokenizer();
+		resumed = restore(validator, channel);
+		if (!resumed) {
+			validator = new XMLValidator(sink);
+			tokenizer = validator.getTokenizer();
+		}
+
+		long start = tokenizer.getOffset();
+		long end = channel.size();
+		tokenizer.tokenizeMapped(channel, start, end - start);
+
+		// The checkpoint must be taken before finish() unwinds the stack
+		save(validator, channel, end);
+		return validator.finish();
+	}
+
+	/**
+	 * Returns <code>true</code> if the last run continued from a checkpoint
+	 * rather than from the start of the file.
+	 *
+	 * @return <code>true</code> if the last run resumed.
+	 */
+	public boolean isResumed() {
+		return resumed;
+	}
+
+	private boolean restore(XMLValidator validator, FileChannel channel) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return false;
+			}
+			byte[] fingerprint = new byte[in.readUnsignedByte()];
+			in.readFully(fingerprint);
+			validator.readCheckpoint(in);
+
+			long offset = validator.getTokenizer().getOffset();
+			return offset <= channel.size() && Arrays.equals(fingerprint, fingerprint(channel, offset));
+		} catch (NoSuchFileException e) {
+			return false;
+		} catch (IOException e) {
+			// A damaged checkpoint means starting over
+			return false;
+		}
+	}
+
+	private void save(XMLValidator validator, FileChannel channel, long end) throws IOException {
+		Path directory = checkpoint.toAbsolutePath().getParent();
+		Path temporary = Files.createTempFile(directory, checkpoint.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				byte[] fingerprint = fingerprint(channel, end);
+				out.writeByte(fingerprint.length);
+				out.write(fingerprint);
+				validator.writeCheckpoint(out);
+			}
+			Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	// The bytes just before the offset, which an append leaves untouched
+	private static byte[] fingerprint(FileChannel channel, long offset) throws IOException {
+		int length = (int) Math.min(FINGERPRINT_SIZE, offset);
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		long position = offset - length;
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				break;
+			}
+		}
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+}
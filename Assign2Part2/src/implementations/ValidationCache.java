@@ -0,0 +1,377 @@
+package implementations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Remembers the verdict and report of files that were already validated, in a
+ * local file that survives between runs.
+ * <p>
+ * An entry is reused while the file keeps its size and modification time, so
+ * an unchanged file costs a single stat call. When only the modification time
+ * changed, the content hash decides whether the file really changed. The least
+ * recently used entries are evicted once the cache grows past its size cap.
+ * All methods are safe to call from several threads; files are only ever read
+ * outside the cache's lock.
+ * <p>
+ * A file is stat'ed and, if needed, hashed once through a {@link Stamp} taken
+ * before it is validated, and the same stamp is stored with the result, so a
+ * file that changes while it is validated is seen as changed next time.
+ */
+public class ValidationCache {
+
+	/** Default cap on the total size of the cached keys and reports, in bytes. */
+	public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+	private static final int MAGIC = 0x584d4c43; // "XMLC"
+	private static final int VERSION = 2;
+	private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+	private final Path file;
+	private final long maxBytes;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Creates an empty cache that is saved to the given file.
+	 *
+	 * @param file     where the cache is saved.
+	 * @param maxBytes cap on the total size of the cached keys and reports.
+	 */
+	public ValidationCache(Path file, long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive.");
+		}
+		this.file = file;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Loads the cache saved in the given file. A missing or unreadable cache
+	 * file gives an empty cache.
+	 *
+	 * @param file     where the cache is saved.
+	 * @param maxBytes cap on the total size of the cached keys and reports.
+	 * @return the loaded cache.
+	 */
+	public static ValidationCache load(Path file, long maxBytes) {
+		ValidationCache cache = new ValidationCache(file, maxBytes);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return cache;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String key = readString(in);
+				Entry entry = new Entry(in.readLong(), in.readLong(), in.readLong(), in.readBoolean(), readString(in));
+				cache.put(key, entry);
+			}
+		} catch (NoSuchFileException e) {
+			// Nothing cached yet
+		} catch (IOException e) {
+			// A damaged cache is rebuilt from scratch
+			cache.entries.clear();
+			cache.bytes = 0;
+		}
+		return cache;
+	}
+
+	/**
+	 * Saves the cache, least recently used entries first. The file is replaced
+	 * atomically so that an interrupted save leaves the previous cache intact.
+	 *
+	 * @throws IOException if the cache file cannot be written.
+	 */
+	public synchronized void save() throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(entries.size());
+				for (java.util.Map.Entry<String, Entry> mapping : entries.entrySet()) {
+					Entry entry = mapping.getValue();
+					writeString(out, mapping.getKey());
+					out.writeLong(entry.size);
+					out.writeLong(entry.modified);
+					out.writeLong(entry.hash);
+					out.writeBoolean(entry.wellFormed);
+					writeString(out, entry.output);
+				}
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Takes the size and modification time of a file, before it is validated.
+	 *
+	 * @param path the file.
+	 * @return the stamp of the file.
+	 * @throws IOException if the file cannot be stat'ed.
+	 */
+	public static Stamp stamp(Path path) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		return new Stamp(path, attributes.size(), attributes.lastModifiedTime().toMillis());
+	}
+
+	/**
+	 * Returns the cached result for a file if the file has not changed since it
+	 * was stored. The file is hashed, outside the lock, only when its size is
+	 * the same but its modification time is not.
+	 *
+	 * @param key   identifies the file and the settings it was validated with.
+	 * @param stamp the stamp of the file.
+	 * @return the cached result, or <code>null</code> if there is none.
+	 */
+	public Entry lookup(String key, Stamp stamp) {
+		Entry entry;
+		long modified;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry == null) {
+				misses++;
+				return null;
+			}
+			modified = entry.modified;
+		}
+
+		boolean unchanged = stamp.size == entry.size && stamp.modified == modified;
+		if (!unchanged && stamp.size == entry.size) {
+			try {
+				unchanged = stamp.getHash() == entry.hash;
+			} catch (IOException e) {
+				// Treated as changed
+			}
+		}
+
+		synchronized (this) {
+			if (unchanged) {
+				entry.modified = stamp.modified;
+				hits++;
+				return entry;
+			}
+			if (entries.get(key) == entry) {
+				remove(key);
+			}
+			misses++;
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the result of validating a file under the stamp taken before it
+	 * was validated. Nothing is stored if the file cannot be hashed.
+	 *
+	 * @param key        identifies the file and the settings it was validated
+	 *                   with.
+	 * @param stamp      the stamp of the file, hashed before it was validated.
+	 * @param wellFormed the verdict.
+	 * @param output     the report printed for the file.
+	 */
+	public void store(String key, Stamp stamp, boolean wellFormed, String output) {
+		Entry entry;
+		try {
+			entry = new Entry(stamp.size, stamp.modified, stamp.getHash(), wellFormed, output);
+		} catch (IOException e) {
+			return;
+		}
+		synchronized (this) {
+			remove(key);
+			put(key, entry);
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that found a usable result.
+	 *
+	 * @return the number of cache hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that found no usable result.
+	 *
+	 * @return the number of cache misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of cached results.
+	 *
+	 * @return the number of entries.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Computes the 64-bit content hash used to recognise unchanged files. It
+	 * mixes eight bytes at a time and is not meant to resist deliberate
+	 * collisions.
+	 *
+	 * @param path the file.
+	 * @return the hash of the file's content.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public static long hash(Path path) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		long hash = 0x9e3779b97f4a7c15L;
+		long length = 0;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			int read;
+			while ((read = channel.read(buffer)) >= 0) {
+				length += read;
+				buffer.flip();
+				while (buffer.remaining() >= 8) {
+					hash = mix(hash ^ buffer.getLong());
+				}
+				buffer.compact();
+			}
+		}
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			hash = mix(hash ^ (buffer.get() & 0xff));
+		}
+		return mix(hash ^ length);
+	}
+
+	private static long mix(long value) {
+		value *= 0xbf58476d1ce4e5b9L;
+		return value ^ (value >>> 31);
+	}
+
+	private void put(String key, Entry entry) {
+		entries.put(key, entry);
+		bytes += weight(key, entry);
+		// Iteration order is least recently used first
+		Iterator<java.util.Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+		while (bytes > maxBytes && eldest.hasNext()) {
+			java.util.Map.Entry<String, Entry> mapping = eldest.next();
+			bytes -= weight(mapping.getKey(), mapping.getValue());
+			eldest.remove();
+		}
+	}
+
+	private void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			bytes -= weight(key, entry);
+		}
+	}
+
+	private static long weight(String key, Entry entry) {
+		return 2L * (key.length() + entry.output.length()) + 32;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(encoded.length);
+		out.write(encoded);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			throw new EOFException("Negative string length");
+		}
+		byte[] encoded = new byte[length];
+		in.readFully(encoded);
+		return new String(encoded, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The size, modification time and content hash of a file, each read at most
+	 * once. A stamp belongs to the one thread validating the file.
+	 */
+	public static final class Stamp {
+		private final Path path;
+		private final long size;
+		private final long modified;
+		private long hash;
+		private boolean hashed = false;
+
+		private Stamp(Path path, long size, long modified) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+		}
+
+		/**
+		 * Returns the content hash of the file, reading the file the first time.
+		 *
+		 * @return the hash of the file's content.
+		 * @throws IOException if the file cannot be read.
+		 */
+		public long getHash() throws IOException {
+			if (!hashed) {
+				hash = ValidationCache.hash(path);
+				hashed = true;
+			}
+			return hash;
+		}
+	}
+
+	/**
+	 * The cached result of validating one file.
+	 */
+	public static final class Entry {
+		private final long size;
+		private long modified;
+		private final long hash;
+		private final boolean wellFormed;
+		private final String output;
+
+		private Entry(long size, long modified, long hash, boolean wellFormed, String output) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+			this.wellFormed = wellFormed;
+			this.output = output;
+		}
+
+		/**
+		 * Returns the cached verdict.
+		 *
+		 * @return <code>true</code> if the file was well formed.
+		 */
+		public boolean isWellFormed() {
+			return wellFormed;
+		}
+
+		/**
+		 * Returns the cached report.
+		 *
+		 * @return the report printed for the file.
+		 */
+		public String getOutput() {
+			return output;
+		}
+	}
+}
@@ -0,0 +1,686 @@
+package implementations;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import utilities.Diagnostic;
+import utilities.DiagnosticSink;
+
+/**
+ * Keeps one warmed-up JVM validating documents for clients that connect over a
+ * local socket, so that each document costs a request instead of a JVM start.
+ * <p>
+ * A client sends requests, one per line, and may send several before reading
+ * the answers, which come back in the same order:
+ *
+ * <pre>
+ * VALIDATE path/to/file.xml
+ * DATA 11
+ * &lt;a&gt;&lt;/b&gt;...
+ * </pre>
+ *
+ * <code>DATA</code> is followed by exactly the given number of bytes of XML,
+ * which are handed to the worker in small chunks as they arrive rather than
+ * gathered first, so a document of any size needs only a few chunks of memory.
+ * Each diagnostic is sent back as a line as soon as it is found, then the
+ * usual verdict line for a well-formed document, then a last line of
+ * <code>END OK</code>, <code>END MALFORMED</code> or
+ * <code>END ERROR message</code>.
+ * <p>
+ * One selector thread accepts connections and moves their bytes, and the
+ * documents are validated on a pool of workers. A connection is not read while
+ * its request is being validated, except for the rest of a <code>DATA</code>
+ * body while the worker keeps up with it, and a worker waits while too much of
+ * its output is unsent, so a slow client only holds back its own requests.
+ * <p>
+ * A failed accept, such as one for lack of file descriptors, is logged and
+ * accepting pauses for a while, doubling while it keeps failing; the open
+ * connections are served meanwhile.
+ */
+public class ValidationServer implements Closeable {
+
+	private static final int MAX_LINE = 64 * 1024;
+	private static final int READ_BUFFER_SIZE = 16 * 1024;
+	private static final int MAX_PENDING_OUTPUT = 1 << 20;
+	private static final int BODY_CHUNKS = 4; // chunks of a body waiting for the worker
+	private static final long MIN_ACCEPT_PAUSE = 10;
+	private static final long MAX_ACCEPT_PAUSE = 1000;
+
+	private final ExecutorService pool;
+	private final Queue<Connection> changed = new ConcurrentLinkedQueue<>();
+	private long stopAfter = 0;
+	private boolean verdictOnly = false;
+
+	private ServerSocketChannel server;
+	private Selector selector;
+	private SelectionKey acceptKey;
+	private long acceptPause = 0; // milliseconds, 0 while accepts succeed
+	private long acceptResume; // System.nanoTime() at which to accept again
+	private Thread loop;
+	private Path socketFile; // null unless listening on a Unix-domain socket
+	private volatile boolean closed;
+
+	/**
+	 * Creates a server.
+	 *
+	 * @param threads        largest number of documents validated at once.
+	 * @param virtualThreads <code>true</code> to validate each document on a
+	 *                       virtual thread when the JVM supports them.
+	 */
+	public ValidationServer(int threads, boolean virtualThreads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Thread count must be positive.");
+		}
+		pool = BatchXMLValidator.createPool(threads, virtualThreads);
+	}
+
+	/**
+	 * Stops validating each document once the given number of errors has been
+	 * found in it. Must be called before {@link #start(SocketAddress)}.
+	 *
+	 * @param errors number of errors after which to stop, or 0 for no limit.
+	 */
+	public void setStopAfter(long errors) {
+		stopAfter = errors;
+	}
+
+	/**
+	 * Selects verdict-only validation, which stops at the first error and
+	 * builds no messages. Must be called before {@link #start(SocketAddress)}.
+	 *
+	 * @param verdictOnly <code>true</code> to compute only the verdicts.
+	 */
+	public void setVerdictOnly(boolean verdictOnly) {
+		this.verdictOnly = verdictOnly;
+	}
+
+	/**
+	 * Binds the given address and starts serving on a new thread.
+	 *
+	 * @param address a TCP address, or on Java 16 and later a Unix-domain one.
+	 * @return the address bound, which holds the actual port if port 0 was
+	 *         asked for.
+	 * @throws IOException if the address cannot be bound.
+	 */
+	public SocketAddress start(SocketAddress address) throws IOException {
+		if (loop != null) {
+			throw new IllegalStateException("Server already started.");
+		}
+		server = open(address);
+		server.bind(address);
+		server.configureBlocking(false);
+		if (!(address instanceof InetSocketAddress)) {
+			socketFile = Paths.get(address.toString());
+		}
+		selector = Selector.open();
+		acceptKey = server.register(selector, SelectionKey.OP_ACCEPT);
+
+		loop = new Thread(this::serve, "xml-server");
+		loop.start();
+		return server.getLocalAddress();
+	}
+
+	/**
+	 * Waits until the server has been closed.
+	 *
+	 * @throws InterruptedException if the wait is interrupted.
+	 */
+	public void await() throws InterruptedException {
+		loop.join();
+	}
+
+	/**
+	 * Stops accepting connections, drops the open ones and waits for the
+	 * selector thread to exit.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (selector != null) {
+			selector.wakeup();
+		}
+		if (loop != null && loop != Thread.currentThread()) {
+			try {
+				loop.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Parses a listening address: a port on the loopback interface, a
+	 * <code>host:port</code> pair, or the path of a Unix-domain socket.
+	 *
+	 * @param spec the address as given on the command line.
+	 * @return the address.
+	 * @throws IOException if a Unix-domain socket is asked for and the JVM has
+	 *                     none.
+	 */
+	public static SocketAddress parseAddress(String spec) throws IOException {
+		if (spec.indexOf('/') >= 0 || spec.indexOf('\\') >= 0) {
+			try {
+				Method of = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+				return (SocketAddress) of.invoke(null, spec);
+			} catch (ReflectiveOperationException e) {
+				throw new IOException("Unix-domain sockets need Java 16 or later.", e);
+			}
+		}
+		int colon = spec.lastIndexOf(':');
+		int port;
+		try {
+			port = Integer.parseInt(spec.substring(colon + 1));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid port: " + spec);
+		}
+		if (colon < 0) {
+			return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+		}
+		return new InetSocketAddress(spec.substring(0, colon), port);
+	}
+
+	private static ServerSocketChannel open(SocketAddress address) throws IOException {
+		if (address instanceof InetSocketAddress) {
+			return ServerSocketChannel.open();
+		}
+		// Looked up reflectively so the code still runs on JVMs without them
+		try {
+			ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+			Method open = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+			return (ServerSocketChannel) open.invoke(null, unix);
+		} catch (InvocationTargetException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} catch (ReflectiveOperationException | IllegalArgumentException e) {
+			throw new IOException("Unix-domain sockets are not supported by this JVM.", e);
+		}
+	}
+
+	private void serve() {
+		try {
+			while (!closed) {
+				long wait = 0;
+				if (acceptKey.interestOps() == 0) {
+					wait = Math.max(1, (acceptResume - System.nanoTime()) / 1_000_000);
+				}
+				selector.select(wait);
+				if (acceptKey.interestOps() == 0 && System.nanoTime() - acceptResume >= 0) {
+					acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+				}
+				Connection connection;
+				while ((connection = changed.poll()) != null) {
+					connection.resume();
+				}
+				for (SelectionKey key : selector.selectedKeys()) {
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					connection = (Connection) key.attachment();
+					try {
+						if (key.isWritable()) {
+							connection.write();
+						}
+						if (key.isReadable()) {
+							connection.read();
+						}
+						connection.update();
+					} catch (IOException e) {
+						connection.close();
+					}
+				}
+				selector.selectedKeys().clear();
+			}
+		} catch (IOException e) {
+			System.err.println("Validation server stopped: " + e.getMessage());
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof Connection) {
+					((Connection) key.attachment()).close();
+				}
+			}
+			try {
+				selector.close();
+				server.close();
+				if (socketFile != null) {
+					Files.deleteIfExists(socketFile);
+				}
+			} catch (IOException e) {
+				// Nothing more can be done while shutting down
+			}
+			closed = true;
+		}
+	}
+
+	private void accept() {
+		SocketChannel channel;
+		try {
+			channel = server.accept();
+		} catch (IOException e) {
+			// Usually out of file descriptors: pause accepting until some close
+			acceptPause = acceptPause == 0 ? MIN_ACCEPT_PAUSE : Math.min(acceptPause * 2, MAX_ACCEPT_PAUSE);
+			acceptResume = System.nanoTime() + acceptPause * 1_000_000;
+			acceptKey.interestOps(0);
+			System.err.println("Validation server cannot accept a connection (retrying in " + acceptPause + " ms): "
+					+ e.getMessage());
+			return;
+		}
+		if (channel == null) {
+			return;
+		}
+		acceptPause = 0;
+		try {
+			channel.configureBlocking(false);
+			if (channel.getRemoteAddress() instanceof InetSocketAddress) {
+				// Answers are small, so waiting to fill a packet only adds latency
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			}
+			Connection connection = new Connection(channel);
+			connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+		} catch (IOException e) {
+			try {
+				channel.close();
+			} catch (IOException ignored) {
+				// The connection is gone either way
+			}
+		}
+	}
+
+	private void validate(Connection connection, String path, InputStream document) {
+		XMLParser parser = new XMLParser(new ConnectionSink(connection));
+		if (stopAfter > 0) {
+			parser.setStopAfter(stopAfter);
+		}
+		parser.setVerdictOnly(verdictOnly);
+
+		String end;
+		try {
+			if (document != null) {
+				try {
+					parser.parseStream(document);
+				} finally {
+					// A parse that stopped early leaves the rest of the body unread
+					document.skip(Long.MAX_VALUE);
+				}
+			} else {
+				try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+					if (XMLParser.isCompressed(path)) {
+						parser.parseCompressed(Channels.newInputStream(channel));
+					} else {
+						parser.parseFile(channel, false);
+					}
+				}
+			}
+			end = parser.isWellFormed() ? "END OK" : "END MALFORMED";
+		} catch (IOException | InvalidPathException e) {
+			end = "END ERROR " + String.valueOf(e.getMessage()).replace('\n', ' ');
+		}
+		connection.send(end);
+		connection.finishRequest();
+	}
+
+	/**
+	 * One client. Its buffers and selection key are only touched by the
+	 * selector thread; workers hand it output through a queue and ask the
+	 * selector to look at it again.
+	 */
+	private class Connection {
+		private final SocketChannel channel;
+		private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private SelectionKey key;
+		private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		private boolean endOfInput;
+		private Body body; // the DATA body still arriving, or null
+		private long bodyRemaining; // bytes of it not yet handed to the worker
+		private long pending; // bytes queued but not yet written, guarded by this
+		private volatile boolean busy;
+		private volatile boolean open = true;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void read() throws IOException {
+			if (channel.read(input) < 0) {
+				endOfInput = true;
+			}
+			dispatch();
+		}
+
+		void write() throws IOException {
+			long written = 0;
+			ByteBuffer head;
+			while ((head = output.peek()) != null) {
+				written += channel.write(head);
+				if (head.hasRemaining()) {
+					break;
+				}
+				output.poll();
+			}
+			if (written > 0) {
+				synchronized (this) {
+					pending -= written;
+					notifyAll();
+				}
+			}
+		}
+
+		// Called on the selector thread after a worker signalled
+		void resume() {
+			scheduled.set(false);
+			if (!open) {
+				return;
+			}
+			try {
+				write();
+				dispatch();
+				update();
+			} catch (IOException e) {
+				close();
+			}
+		}
+
+		void update() {
+			if (!open) {
+				return;
+			}
+			if (endOfInput && !busy && output.isEmpty()) {
+				close();
+				return;
+			}
+			int operations = 0;
+			if (!endOfInput && (!busy || body != null && input.hasRemaining())) {
+				operations |= SelectionKey.OP_READ;
+			}
+			if (!output.isEmpty()) {
+				operations |= SelectionKey.OP_WRITE;
+			}
+			key.interestOps(operations);
+		}
+
+		// Starts the next complete request in the input, if any
+		private void dispatch() {
+			if (body != null) {
+				pump();
+				return;
+			}
+			while (!busy && open) {
+				input.flip();
+				int newline = -1;
+				for (int i = input.position(); i < input.limit(); i++) {
+					if (input.get(i) == '\n') {
+						newline = i;
+						break;
+					}
+				}
+				if (newline < 0) {
+					boolean tooLong = input.remaining() >= MAX_LINE;
+					input.compact();
+					if (tooLong) {
+						reject("Request line too long");
+					} else if (!input.hasRemaining()) {
+						grow(input.capacity() * 2);
+					}
+					return;
+				}
+
+				int start = input.position();
+				String line = new String(input.array(), start, newline - start, StandardCharsets.UTF_8);
+				if (line.endsWith("\r")) {
+					line = line.substring(0, line.length() - 1);
+				}
+
+				if (line.startsWith("DATA ")) {
+					long size = parseSize(line.substring("DATA ".length()));
+					input.position(newline + 1);
+					input.compact();
+					if (size < 0) {
+						reject("Invalid document size");
+						return;
+					}
+					body = new Body(this, size);
+					bodyRemaining = size;
+					submit(null, body);
+					pump();
+				} else if (line.startsWith("VALIDATE ")) {
+					input.position(newline + 1);
+					input.compact();
+					submit(line.substring("VALIDATE ".length()), null);
+				} else {
+					input.position(newline + 1);
+					input.compact();
+					if (!line.trim().isEmpty()) {
+						send("END ERROR Unknown request: " + line);
+					}
+				}
+			}
+		}
+
+		private void submit(String path, InputStream document) {
+			busy = true;
+			if (input.position() == 0 && input.capacity() > READ_BUFFER_SIZE) {
+				// Give back the room a long request line needed
+				input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+			}
+			pool.execute(() -> validate(this, path, document));
+		}
+
+		// Answers with an error, then hangs up once the answer is sent
+		private void reject(String message) {
+			send("END ERROR " + message);
+			input.clear();
+			endOfInput = true;
+		}
+
+		private void grow(int capacity) {
+			if (capacity <= input.capacity()) {
+				return;
+			}
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(capacity, input.capacity() * 2));
+			input.flip();
+			larger.put(input);
+			input = larger;
+		}
+
+		// Hands the worker as much of the body as has arrived and it has room for
+		private void pump() {
+			input.flip();
+			while (bodyRemaining > 0 && input.hasRemaining() && body.chunks.size() < BODY_CHUNKS) {
+				int length = (int) Math.min(input.remaining(), bodyRemaining);
+				ByteBuffer chunk = ByteBuffer.allocate(length);
+				int limit = input.limit();
+				input.limit(input.position() + length);
+				chunk.put(input).flip();
+				input.limit(limit);
+				body.chunks.offer(chunk);
+				bodyRemaining -= length;
+			}
+			input.compact();
+			if (bodyRemaining == 0) {
+				body = null;
+			} else if (endOfInput && input.position() == 0) {
+				body.cut = true;
+				body = null;
+			}
+		}
+
+		private long parseSize(String value) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+		// Queues one line of output; called by workers and by the selector thread
+		void send(String line) {
+			byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+			synchronized (this) {
+				// The selector thread must never wait, as it is the one that drains
+				while (open && pending > MAX_PENDING_OUTPUT && Thread.currentThread() != loop) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+				if (!open) {
+					return;
+				}
+				pending += bytes.length;
+			}
+			output.add(ByteBuffer.wrap(bytes));
+			signal();
+		}
+
+		void finishRequest() {
+			busy = false;
+			signal();
+		}
+
+		private void signal() {
+			if (Thread.currentThread() != loop && scheduled.compareAndSet(false, true)) {
+				changed.add(this);
+				selector.wakeup();
+			}
+		}
+
+		void close() {
+			open = false;
+			if (key != null) {
+				key.cancel();
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// The connection is gone either way
+			}
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * The body of a <code>DATA</code> request as the worker reads it: chunks
+	 * handed over by the selector thread, which stops reading the connection
+	 * while the worker has {@link #BODY_CHUNKS} of them waiting.
+	 */
+	private static class Body extends InputStream {
+		private final SpscRing<ByteBuffer> chunks = new SpscRing<>(BODY_CHUNKS);
+		private final Connection connection;
+		private long unread; // bytes the worker has yet to read
+		private ByteBuffer current;
+		private volatile boolean cut; // the client hung up part way
+
+		Body(Connection connection, long size) {
+			this.connection = connection;
+			unread = size;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if (unread == 0) {
+				return -1;
+			}
+			if (length == 0) {
+				return 0;
+			}
+			ByteBuffer chunk = next();
+			int count = Math.min(length, chunk.remaining());
+			chunk.get(bytes, offset, count);
+			unread -= count;
+			return count;
+		}
+
+		@Override
+		public long skip(long count) throws IOException {
+			long skipped = 0;
+			while (skipped < count && unread > 0) {
+				ByteBuffer chunk = next();
+				int length = (int) Math.min(count - skipped, chunk.remaining());
+				chunk.position(chunk.position() + length);
+				unread -= length;
+				skipped += length;
+			}
+			return skipped;
+		}
+
+		private ByteBuffer next() throws IOException {
+			for (int attempt = 0; current == null || !current.hasRemaining(); attempt++) {
+				// Read cut before polling, so no chunk handed over before it is missed
+				boolean ended = cut || !connection.open;
+				current = chunks.poll();
+				if (current != null) {
+					// Room for another chunk
+					connection.signal();
+				} else if (ended) {
+					throw new IOException("Connection closed before the end of the document");
+				} else {
+					SpscRing.idle(attempt);
+				}
+			}
+			return current;
+		}
+	}
+
+	/**
+	 * Sends each diagnostic to the client as soon as it is found.
+	 */
+	private static class ConnectionSink implements DiagnosticSink {
+		private final Connection connection;
+
+		ConnectionSink(Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public void report(Diagnostic diagnostic) {
+			connection.send(diagnostic.toString());
+		}
+
+		@Override
+		public void finish(boolean wellFormed) {
+			if (wellFormed) {
+				connection.send("XML document is constructed correctly.");
+			}
+		}
+	}
+}
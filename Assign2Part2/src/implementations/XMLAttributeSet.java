@@ -0,0 +1,364 @@
+package implementations;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The attribute names of the start tag being read, kept to find duplicates.
+ * <p>
+ * Names are stored one after another in a single buffer and found through an
+ * open-addressing table of indexes into it. Both are reused from tag to tag and
+ * only ever grow, so once they are large enough reading a tag allocates
+ * nothing, and {@link #clear()} empties only the slots that were used, in time
+ * proportional to the number of attributes rather than to the size of the
+ * table. Like tag names, names are compared in full but only their first
+ * {@link XMLTokenizer#MAX_NAME_LENGTH} units are kept; the rest is folded into
+ * the hash.
+ * <p>
+ * When asked, the value of the last attribute added is kept after its name,
+ * capped at the same length, so that namespace declarations can be read once
+ * the tag is complete.
+ */
+class XMLAttributeSet {
+
+	private static final int INITIAL_NAMES = 8;
+	private static final int FNV_OFFSET = 0x811c9dc5;
+	private static final int FNV_PRIME = 0x01000193;
+	private static final char[] XMLNS = "xmlns".toCharArray();
+
+	private char[] chars = new char[64];
+	private int used = 0; // chars taken by the names added
+
+	// The last name read, stored after the names added unless it is one of them
+	private int nameStart = 0;
+	private int nameLength = 0;
+	private int nameFullLength = 0;
+	private int nameHash = FNV_OFFSET;
+	private boolean nameAdded = false;
+
+	private int[] starts = new int[INITIAL_NAMES];
+	private int[] lengths = new int[INITIAL_NAMES];
+	private int[] fullLengths = new int[INITIAL_NAMES];
+	private int[] hashes = new int[INITIAL_NAMES];
+	private int[] slotOf = new int[INITIAL_NAMES];
+	private int[] valueStarts = new int[INITIAL_NAMES];
+	private int[] valueLengths = new int[INITIAL_NAMES]; // -1 if the value is not kept
+	private int size = 0;
+
+	private int[] slots = new int[INITIAL_NAMES * 2]; // name index + 1, 0 if free
+
+	/**
+	 * Forgets every name, ready for the next start tag.
+	 */
+	void clear() {
+		for (int i = 0; i < size; i++) {
+			slots[slotOf[i]] = 0;
+		}
+		size = 0;
+		used = 0;
+		startName();
+	}
+
+	/**
+	 * Starts reading a new name, discarding the previous one if it was not
+	 * added.
+	 */
+	void startName() {
+		nameStart = used;
+		nameLength = 0;
+		nameFullLength = 0;
+		nameHash = FNV_OFFSET;
+		nameAdded = false;
+	}
+
+	/**
+	 * Appends a unit to the name being read.
+	 */
+	void append(char c) {
+		nameFullLength++;
+		nameHash = (nameHash ^ c) * FNV_PRIME;
+		if (nameLength == XMLTokenizer.MAX_NAME_LENGTH) {
+			return;
+		}
+		if (nameStart + nameLength == chars.length) {
+			chars = Arrays.copyOf(chars, chars.length * 2);
+		}
+		chars[nameStart + nameLength++] = c;
+	}
+
+	/**
+	 * Adds the name read since {@link #startName()}. It stays readable through
+	 * {@link #getName()} until the next name is started.
+	 *
+	 * @return <code>false</code> if the tag already has an attribute of that name.
+	 */
+	boolean add() {
+		int mask = slots.length - 1;
+		int slot = nameHash & mask;
+		for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+			int index = slots[slot] - 1;
+			if (hashes[index] == nameHash && fullLengths[index] == nameFullLength && lengths[index] == nameLength
+					&& equals(starts[index], nameStart, nameLength)) {
+				return false;
+			}
+		}
+
+		if (size == starts.length) {
+			int capacity = size * 2;
+			starts = Arrays.copyOf(starts, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			fullLengths = Arrays.copyOf(fullLengths, capacity);
+			hashes = Arrays.copyOf(hashes, capacity);
+			slotOf = Arrays.copyOf(slotOf, capacity);
+			valueStarts = Arrays.copyOf(valueStarts, capacity);
+			valueLengths = Arrays.copyOf(valueLengths, capacity);
+		}
+		starts[size] = nameStart;
+		lengths[size] = nameLength;
+		fullLengths[size] = nameFullLength;
+		hashes[size] = nameHash;
+		slotOf[size] = slot;
+		valueLengths[size] = -1;
+		slots[slot] = ++size;
+		used = nameStart + nameLength;
+		nameAdded = true;
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> if the last name read was added and declares a
+	 * namespace: it is <code>xmlns</code> or starts with <code>xmlns:</code>.
+	 */
+	boolean isNamespaceDeclaration() {
+		if (!nameAdded || nameLength < XMLNS.length) {
+			return false;
+		}
+		return equals(nameStart, XMLNS) && (nameLength == XMLNS.length || chars[nameStart + XMLNS.length] == ':');
+	}
+
+	/**
+	 * Keeps the value of the last attribute added, which is read next through
+	 * {@link #appendValue(char)}.
+	 */
+	void keepValue() {
+		valueStarts[size - 1] = used;
+		valueLengths[size - 1] = 0;
+	}
+
+	/**
+	 * Appends a unit to the value being kept.
+	 */
+	void appendValue(char c) {
+		if (valueLengths[size - 1] == XMLTokenizer.MAX_NAME_LENGTH) {
+			return;
+		}
+		if (used == chars.length) {
+			chars = Arrays.copyOf(chars, chars.length * 2);
+		}
+		chars[used++] = c;
+		valueLengths[size - 1]++;
+	}
+
+	/**
+	 * Decodes the names and kept values added from UTF-8 in place, once the tag
+	 * is complete. Only the accessors by index may be used afterwards.
+	 */
+	void decode() {
+		for (int i = 0; i < size; i++) {
+			lengths[i] = XMLTokenizer.decode(chars, starts[i], lengths[i]);
+			if (valueLengths[i] > 0) {
+				valueLengths[i] = XMLTokenizer.decode(chars, valueStarts[i], valueLengths[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of attributes added.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the index in {@link #getName()} of the name of the given attribute.
+	 */
+	int getNameOffset(int index) {
+		return starts[index];
+	}
+
+	/**
+	 * Returns the number of units kept of the name of the given attribute.
+	 */
+	int getNameLength(int index) {
+		return lengths[index];
+	}
+
+	/**
+	 * Returns the index in {@link #getName()} of the kept value of the given
+	 * attribute.
+	 */
+	int getValueOffset(int index) {
+		return valueStarts[index];
+	}
+
+	/**
+	 * Returns the number of units kept of the value of the given attribute, or
+	 * -1 if its value was not kept.
+	 */
+	int getValueLength(int index) {
+		return valueLengths[index];
+	}
+
+	/**
+	 * Returns the buffer holding the last name read, from
+	 * {@link #getNameOffset()}.
+	 */
+	char[] getName() {
+		return chars;
+	}
+
+	/**
+	 * Returns the index of the last name read in {@link #getName()}.
+	 */
+	int getNameOffset() {
+		return nameStart;
+	}
+
+	/**
+	 * Returns the number of units of the last name read that are kept.
+	 */
+	int getNameLength() {
+		return nameLength;
+	}
+
+	/**
+	 * Copies the names of another set, so that this set continues the tag the
+	 * other one was reading.
+	 */
+	void copyState(XMLAttributeSet other) {
+		chars = Arrays.copyOf(other.chars, other.chars.length);
+		used = other.used;
+		nameStart = other.nameStart;
+		nameLength = other.nameLength;
+		nameFullLength = other.nameFullLength;
+		nameHash = other.nameHash;
+		nameAdded = other.nameAdded;
+		starts = Arrays.copyOf(other.starts, other.starts.length);
+		lengths = Arrays.copyOf(other.lengths, other.lengths.length);
+		fullLengths = Arrays.copyOf(other.fullLengths, other.fullLengths.length);
+		hashes = Arrays.copyOf(other.hashes, other.hashes.length);
+		slotOf = Arrays.copyOf(other.slotOf, other.slotOf.length);
+		valueStarts = Arrays.copyOf(other.valueStarts, other.valueStarts.length);
+		valueLengths = Arrays.copyOf(other.valueLengths, other.valueLengths.length);
+		size = other.size;
+		slots = Arrays.copyOf(other.slots, other.slots.length);
+	}
+
+	/**
+	 * Writes the names and values added and the name being read.
+	 */
+	void writeState(DataOutput out) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			writeName(out, starts[i], lengths[i], fullLengths[i], hashes[i]);
+			out.writeInt(valueLengths[i]);
+			for (int k = 0; k < valueLengths[i]; k++) {
+				out.writeChar(chars[valueStarts[i] + k]);
+			}
+		}
+		writeName(out, nameStart, nameLength, nameFullLength, nameHash);
+		out.writeBoolean(nameAdded);
+	}
+
+	/**
+	 * Restores names written by {@link #writeState(DataOutput)}.
+	 */
+	void readState(DataInput in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) {
+			throw new IOException("Invalid tokenizer state");
+		}
+		clear();
+		for (int i = 0; i <= count; i++) {
+			int length = in.readInt();
+			int fullLength = in.readInt();
+			int hash = in.readInt();
+			if (length < 0 || length > XMLTokenizer.MAX_NAME_LENGTH || fullLength < length) {
+				throw new IOException("Invalid tokenizer state");
+			}
+			startName();
+			for (int k = 0; k < length; k++) {
+				append(in.readChar());
+			}
+			nameFullLength = fullLength;
+			nameHash = hash;
+			if (i < count) {
+				if (!add()) {
+					throw new IOException("Invalid tokenizer state");
+				}
+				int valueLength = in.readInt();
+				if (valueLength < -1 || valueLength > XMLTokenizer.MAX_NAME_LENGTH) {
+					throw new IOException("Invalid tokenizer state");
+				}
+				if (valueLength >= 0) {
+					keepValue();
+					for (int k = 0; k < valueLength; k++) {
+						appendValue(in.readChar());
+					}
+				}
+			}
+		}
+		nameAdded = in.readBoolean();
+		if (nameAdded) {
+			if (count == 0) {
+				throw new IOException("Invalid tokenizer state");
+			}
+			nameStart = starts[count - 1]; // the same name, already stored
+		}
+	}
+
+	private void writeName(DataOutput out, int start, int length, int fullLength, int hash) throws IOException {
+		out.writeInt(length);
+		out.writeInt(fullLength);
+		out.writeInt(hash);
+		for (int i = 0; i < length; i++) {
+			out.writeChar(chars[start + i]);
+		}
+	}
+
+	private boolean equals(int start, char[] other) {
+		for (int i = 0; i < other.length; i++) {
+			if (chars[start + i] != other[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean equals(int start, int other, int length) {
+		for (int i = 0; i < length; i++) {
+			if (chars[start + i] != chars[other + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int i = 0; i < size; i++) {
+			int slot = hashes[i] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = i + 1;
+			slotOf[i] = slot;
+		}
+	}
+}
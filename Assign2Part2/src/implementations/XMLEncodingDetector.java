@@ -0,0 +1,146 @@
+package implementations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * Works out the character encoding of an XML document from its first bytes,
+ * following the byte order mark and the encoding declaration as described in
+ * appendix F of the XML specification.
+ */
+public final class XMLEncodingDetector {
+
+	/** Number of leading bytes examined. */
+	public static final int HEAD_SIZE = 1024;
+
+	private XMLEncodingDetector() {
+	}
+
+	/**
+	 * Detects the encoding of the document in the given file without moving the
+	 * channel's position.
+	 *
+	 * @param channel channel open for reading.
+	 * @return the detected encoding, UTF-8 when nothing says otherwise.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public static Charset detect(FileChannel channel) throws IOException {
+		ByteBuffer head = ByteBuffer.allocate(HEAD_SIZE);
+		while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+			// Keep reading until the head is full or the file ends
+		}
+		return detect(head.array(), head.position());
+	}
+
+	/**
+	 * Detects the encoding of the document read from the given stream, then
+	 * resets the stream to where it was.
+	 *
+	 * @param in stream that supports mark and reset.
+	 * @return the detected encoding, UTF-8 when nothing says otherwise.
+	 * @throws IOException if the stream cannot be read.
+	 */
+	public static Charset detect(InputStream in) throws IOException {
+		if (!in.markSupported()) {
+			throw new IllegalArgumentException("Stream must support mark and reset.");
+		}
+		byte[] head = new byte[HEAD_SIZE];
+		in.mark(HEAD_SIZE);
+		int length = 0;
+		int read;
+		while (length < HEAD_SIZE && (read = in.read(head, length, HEAD_SIZE - length)) > 0) {
+			length += read;
+		}
+		in.reset();
+		return detect(head, length);
+	}
+
+	/**
+	 * Detects the encoding of a document from its first bytes.
+	 *
+	 * @param head   the first bytes of the document.
+	 * @param length number of bytes in head.
+	 * @return the detected encoding, UTF-8 when nothing says otherwise.
+	 */
+	public static Charset detect(byte[] head, int length) {
+		int b0 = length > 0 ? head[0] & 0xFF : -1;
+		int b1 = length > 1 ? head[1] & 0xFF : -1;
+		int b2 = length > 2 ? head[2] & 0xFF : -1;
+		int b3 = length > 3 ? head[3] & 0xFF : -1;
+
+		if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+			return StandardCharsets.UTF_8;
+		}
+		if (b0 == 0x00 && b1 == 0x00 && b2 == 0xFE && b3 == 0xFF) {
+			return lookup("UTF-32BE", StandardCharsets.UTF_8);
+		}
+		if (b0 == 0xFF && b1 == 0xFE && b2 == 0x00 && b3 == 0x00) {
+			return lookup("UTF-32LE", StandardCharsets.UTF_8);
+		}
+		if ((b0 == 0xFE && b1 == 0xFF) || (b0 == 0x00 && b1 == '<' && b2 == 0x00 && b3 == '?')) {
+			return StandardCharsets.UTF_16BE;
+		}
+		if ((b0 == 0xFF && b1 == 0xFE) || (b0 == '<' && b1 == 0x00 && b2 == '?' && b3 == 0x00)) {
+			return StandardCharsets.UTF_16LE;
+		}
+		if (b0 == '<' && b1 == '?' && b2 == 'x' && b3 == 'm') {
+			String declared = declaredEncoding(head, length);
+			if (declared != null) {
+				return lookup(declared, StandardCharsets.UTF_8);
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * Returns <code>true</code> if documents in the given encoding can be
+	 * scanned as raw bytes by {@link XMLTokenizer}: the markup is ASCII and tag
+	 * names decode as UTF-8.
+	 *
+	 * @param charset the encoding.
+	 * @return <code>true</code> for UTF-8 and US-ASCII.
+	 */
+	public static boolean isByteScannable(Charset charset) {
+		return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII);
+	}
+
+	// The value of encoding="..." in an ASCII-compatible XML declaration
+	private static String declaredEncoding(byte[] head, int length) {
+		int end = 0;
+		while (end + 1 < length && !(head[end] == '?' && head[end + 1] == '>')) {
+			end++;
+		}
+		String declaration = new String(head, 0, end, StandardCharsets.ISO_8859_1);
+		int index = declaration.indexOf("encoding");
+		if (index < 0) {
+			return null;
+		}
+		index += "encoding".length();
+		while (index < declaration.length() && " =\t\r\n".indexOf(declaration.charAt(index)) >= 0) {
+			index++;
+		}
+		if (index >= declaration.length()) {
+			return null;
+		}
+		char quote = declaration.charAt(index);
+		int close = declaration.indexOf(quote, index + 1);
+		if ((quote != '"' && quote != '\'') || close < 0) {
+			return null;
+		}
+		return declaration.substring(index + 1, close);
+	}
+
+	private static Charset lookup(String name, Charset fallback) {
+		try {
+			return Charset.forName(name);
+		} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+			return fallback;
+		}
+	}
+}
@@ -0,0 +1,459 @@
+package implementations;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * The structure of a well-formed document: for each element its tag, its
+ * depth and the byte range from its start tag to its end tag. Elements are
+ * numbered from 0 in document order.
+ * <p>
+ * An index is written while the document is validated (see
+ * {@link XMLParser#setIndexing(Path)}) to a sidecar next to it: a header, the
+ * records in blocks of {@link #BLOCK_RECORDS} elements, a table of where each
+ * block starts, the end offsets of elements that outlast their block, then the
+ * tag names. Within a block, each record holds the tag, the depth, the
+ * distance from the previous start tag and the element's length as varints,
+ * so a record takes a few bytes, not a fixed 24.
+ * <p>
+ * Loading the sidecar reads only the header and the names; the records are
+ * read as they are needed, a block at a time, so finding the Nth element of a
+ * name streams through the records and selecting a path seeks straight past
+ * the subtrees that leave it. The elements found are read from the document
+ * without scanning it again.
+ * <p>
+ * An index keeps its sidecar open until it is closed, and is not safe for use
+ * by several threads at once.
+ */
+public class XMLIndex implements Closeable {
+
+	static final int MAGIC = 0x584d4c49; // "XMLI"
+	static final int VERSION = 3;
+
+	/**
+	 * Magic, version, document size and time, element count, late end count
+	 * and offset of the block table.
+	 */
+	static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 8;
+
+	/** Number of records in each block; the last may hold fewer. */
+	static final int BLOCK_RECORDS = 512;
+
+	/** Largest encoded block: four varints of at most 5, 5, 10 and 10 bytes per record. */
+	static final int MAX_BLOCK_SIZE = BLOCK_RECORDS * (5 + 5 + 10 + 10);
+
+	private final FileChannel sidecar;
+	private final String[] names;
+	private final int count;
+	private final int lateCount;
+	private final long tableOffset;
+	private final long documentSize;
+	private final long documentModified;
+
+	private final ByteBuffer block = ByteBuffer.allocate(MAX_BLOCK_SIZE);
+	private final ByteBuffer offsets = ByteBuffer.allocate(16);
+	private final int[] tags = new int[BLOCK_RECORDS];
+	private final int[] depths = new int[BLOCK_RECORDS];
+	private final long[] starts = new long[BLOCK_RECORDS];
+	private final long[] ends = new long[BLOCK_RECORDS];
+	private int blockFirst = 0; // number of the first record in the block
+	private int blockCount = 0;
+
+	private XMLIndex(FileChannel sidecar, String[] names, int count, int lateCount, long tableOffset,
+			long documentSize, long documentModified) {
+		this.sidecar = sidecar;
+		this.names = names;
+		this.count = count;
+		this.lateCount = lateCount;
+		this.tableOffset = tableOffset;
+		this.documentSize = documentSize;
+		this.documentModified = documentModified;
+	}
+
+	/**
+	 * Returns where the sidecar of the given document is kept.
+	 *
+	 * @param document the document.
+	 * @return the document's path with <code>.idx</code> appended.
+	 */
+	public static Path sidecarOf(Path document) {
+		return Paths.get(document + ".idx");
+	}
+
+	/**
+	 * Opens an index written by {@link XMLParser#saveIndex(Path)}, reading its
+	 * header and tag names.
+	 *
+	 * @param sidecar the saved index.
+	 * @return the index, which must be closed.
+	 * @throws IOException if the file cannot be read or is not an index.
+	 */
+	public static XMLIndex load(Path sidecar) throws IOException {
+		FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(channel, header, 0);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				throw new IOException("Not an XML index: " + sidecar);
+			}
+			long documentSize = header.getLong(8);
+			long documentModified = header.getLong(16);
+			int count = header.getInt(24);
+			int lateCount = header.getInt(28);
+			long tableOffset = header.getLong(32);
+			long namesStart = lateStart(tableOffset, count) + lateCount * 8L;
+			long namesLength = channel.size() - namesStart;
+			if (count < 0 || lateCount < 0 || tableOffset < HEADER_SIZE || namesLength < 4
+					|| namesLength > Integer.MAX_VALUE) {
+				throw new IOException("Invalid XML index: " + sidecar);
+			}
+			ByteBuffer table = ByteBuffer.allocate((int) namesLength);
+			readFully(channel, table, namesStart);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(table.array()));
+			int nameCount = in.readInt();
+			if (nameCount < 0 || nameCount > namesLength / 2) {
+				throw new IOException("Invalid XML index: " + sidecar);
+			}
+			String[] names = new String[nameCount];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = in.readUTF();
+			}
+			return new XMLIndex(channel, names, count, lateCount, tableOffset, documentSize, documentModified);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes the sidecar.
+	 *
+	 * @throws IOException if closing fails.
+	 */
+	@Override
+	public void close() throws IOException {
+		sidecar.close();
+	}
+
+	/**
+	 * Returns <code>true</code> if the given document still has the size and
+	 * modification time it had when it was indexed.
+	 *
+	 * @param document the indexed document.
+	 * @return <code>true</code> if the index can be trusted.
+	 * @throws IOException if the document cannot be examined.
+	 */
+	public boolean isCurrent(Path document) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(document, BasicFileAttributes.class);
+		return attributes.size() == documentSize && attributes.lastModifiedTime().toMillis() == documentModified;
+	}
+
+	/**
+	 * Returns the number of elements in the document.
+	 *
+	 * @return the element count.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns the tag name of an element.
+	 *
+	 * @param element number of the element.
+	 * @return the tag name.
+	 * @throws IOException if the sidecar cannot be read.
+	 */
+	public String getName(int element) throws IOException {
+		return names[tagOf(element)];
+	}
+
+	/**
+	 * Returns the depth of an element; the root element has depth 0.
+	 *
+	 * @param element number of the element.
+	 * @return the depth.
+	 * @throws IOException if the sidecar cannot be read.
+	 */
+	public int getDepth(int element) throws IOException {
+		return depths[record(element)];
+	}
+
+	/**
+	 * Returns the byte offset of an element's start tag.
+	 *
+	 * @param element number of the element.
+	 * @return offset of the '&lt;' of the start tag.
+	 * @throws IOException if the sidecar cannot be read.
+	 */
+	public long getStart(int element) throws IOException {
+		return starts[record(element)];
+	}
+
+	/**
+	 * Returns the byte offset just past an element's end tag.
+	 *
+	 * @param element number of the element.
+	 * @return offset just past the '&gt;' of the end tag.
+	 * @throws IOException if the sidecar cannot be read.
+	 */
+	public long getEnd(int element) throws IOException {
+		return ends[record(element)];
+	}
+
+	/**
+	 * Finds the Nth element with the given tag name.
+	 *
+	 * @param name tag name.
+	 * @param n    0-based position among the elements with that name.
+	 * @return number of the element, or -1 if there are not that many.
+	 * @throws IOException if the sidecar cannot be read.
+	 */
+	public int find(String name, int n) throws IOException {
+		int tag = tagOf(name);
+		for (int i = 0; i < count && tag >= 0; i++) {
+			if (tagOf(i) == tag && n-- == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the elements at an absolute path such as
+	 * <code>/XMLDATA/Submission/Category</code>. Subtrees that leave the path
+	 * are jumped over using their byte ranges, not walked.
+	 *
+	 * @param path names of the elements from the root down, each preceded by '/'.
+	 * @return numbers of the matching elements in document order.
+	 * @throws IOException              if the sidecar cannot be read.
+	 * @throws IllegalArgumentException if the path is not absolute.
+	 */
+	public int[] select(String path) throws IOException {
+		int[] steps = compile(path);
+		MyIntStack found = new MyIntStack();
+		int i = 0;
+		while (i < count) {
+			int depth = getDepth(i);
+			if (depth < steps.length && tagOf(i) == steps[depth]) {
+				if (depth == steps.length - 1) {
+					found.push(i);
+					i = after(i);
+				} else {
+					i++;
+				}
+			} else {
+				i = after(i);
+			}
+		}
+		int[] elements = new int[found.size()];
+		for (int j = 0; j < elements.length; j++) {
+			elements[j] = found.get(j);
+		}
+		return elements;
+	}
+
+	/**
+	 * Reads an element, from its start tag to its end tag, from the document.
+	 *
+	 * @param document channel open on the indexed document.
+	 * @param element  number of the element.
+	 * @return the bytes of the element.
+	 * @throws IOException if the document or the sidecar cannot be read.
+	 */
+	public byte[] read(FileChannel document, int element) throws IOException {
+		long start = getStart(element);
+		long length = getEnd(element) - start;
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IOException("Element too large to read at once; use copy instead.");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) length);
+		while (buffer.hasRemaining()) {
+			if (document.read(buffer, start + buffer.position()) < 0) {
+				throw new IOException("Document is shorter than its index.");
+			}
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Copies an element, from its start tag to its end tag, from the document
+	 * to the given channel.
+	 *
+	 * @param document channel open on the indexed document.
+	 * @param element  number of the element.
+	 * @param target   destination of the bytes; it is not closed.
+	 * @throws IOException if reading or writing fails.
+	 */
+	public void copy(FileChannel document, int element, WritableByteChannel target) throws IOException {
+		long position = getStart(element);
+		long end = getEnd(element);
+		while (position < end) {
+			long copied = document.transferTo(position, end - position, target);
+			if (copied <= 0) {
+				throw new IOException("Document is shorter than its index.");
+			}
+			position += copied;
+		}
+	}
+
+	// The first element after the subtree of the given one
+	private int after(int element) throws IOException {
+		long end = getEnd(element);
+		int low = element + 1;
+		int high = low;
+		// Most subtrees are small, so gallop first to stay within the block
+		for (int step = 1; high < count && getStart(high) < end; step <<= 1) {
+			low = high + 1;
+			high = (int) Math.min(count, (long) high + step);
+		}
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getStart(middle) < end) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	// The tag IDs of each step of a path, -1 for a name not in the document
+	private int[] compile(String path) {
+		if (!path.startsWith("/")) {
+			throw new IllegalArgumentException("Path must start with '/': " + path);
+		}
+		String[] steps = path.substring(1).split("/", -1);
+		int[] ids = new int[steps.length];
+		for (int i = 0; i < steps.length; i++) {
+			ids[i] = tagOf(steps[i]);
+		}
+		return ids;
+	}
+
+	private int tagOf(String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int tagOf(int element) throws IOException {
+		return tags[record(element)];
+	}
+
+	// The position in the block of an element's record, reading its block if needed
+	private int record(int element) throws IOException {
+		if (element < 0 || element >= count) {
+			throw new IndexOutOfBoundsException("No element " + element + " in an index of " + count);
+		}
+		if (element < blockFirst || element >= blockFirst + blockCount) {
+			int first = element / BLOCK_RECORDS * BLOCK_RECORDS;
+			blockCount = 0; // invalid until the block is decoded
+			decode(first, Math.min(BLOCK_RECORDS, count - first));
+			blockFirst = first;
+			blockCount = Math.min(BLOCK_RECORDS, count - first);
+		}
+		return element - blockFirst;
+	}
+
+	private void decode(int first, int records) throws IOException {
+		offsets.clear();
+		readFully(sidecar, offsets, tableOffset + (long) (first / BLOCK_RECORDS) * 8);
+		long blockStart = offsets.getLong(0);
+		long blockLength = offsets.getLong(8) - blockStart;
+		if (blockStart < HEADER_SIZE || blockLength <= 0 || blockLength > MAX_BLOCK_SIZE) {
+			throw new IOException("Invalid XML index: bad offset of element " + first);
+		}
+		block.clear();
+		block.limit((int) blockLength);
+		readFully(sidecar, block, blockStart);
+		block.flip();
+
+		long start = 0;
+		try {
+			for (int i = 0; i < records; i++) {
+				long tag = getVarLong(block);
+				long depth = getVarLong(block);
+				start += getVarLong(block);
+				long length = getVarLong(block);
+				if (tag < 0 || tag >= names.length || depth < 0 || depth > Integer.MAX_VALUE) {
+					throw new IOException("Invalid XML index: bad tag in element " + (first + i));
+				}
+				tags[i] = (int) tag;
+				depths[i] = (int) depth;
+				starts[i] = start;
+				ends[i] = (length & 1) == 0 ? start + (length >>> 1) : lateEnd(length >>> 1, first + i);
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Invalid XML index: block of element " + first + " is too short.");
+		}
+	}
+
+	// The end offset kept apart for an element that was open when its block was written
+	private long lateEnd(long slot, int element) throws IOException {
+		if (slot >= lateCount) {
+			throw new IOException("Invalid XML index: bad end of element " + element);
+		}
+		offsets.clear();
+		offsets.limit(8);
+		readFully(sidecar, offsets, lateStart(tableOffset, count) + slot * 8);
+		return offsets.getLong(0);
+	}
+
+	// Where the late end offsets start, after the block table and its end marker
+	private static long lateStart(long tableOffset, int count) {
+		long blocks = (count + (long) BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+		return tableOffset + (blocks + 1) * 8;
+	}
+
+	/**
+	 * Appends a non-negative value in 7-bit groups, lowest first, with the high
+	 * bit set on every byte but the last.
+	 */
+	static void putVarLong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Reads a value written by {@link #putVarLong(ByteBuffer, long)}.
+	 *
+	 * @throws IOException if the value has more than 64 bits.
+	 */
+	static long getVarLong(ByteBuffer buffer) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid XML index: varint too long.");
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Invalid XML index: file is too short.");
+			}
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package implementations;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import utilities.XMLTagHandler;
+
+/**
+ * Writes every element seen by a validator to a sidecar, with its tag, depth
+ * and byte range, as the document is validated. Elements are numbered in the
+ * order their start tags appear.
+ * <p>
+ * Records are gathered in blocks of {@link XMLIndex#BLOCK_RECORDS} elements,
+ * and each full block is encoded as varints into a temporary file beside the
+ * sidecar. An element still open when its block is written gets a slot in a
+ * second temporary file instead of a length, and its end offset is patched
+ * into the slot when its end tag is seen. Only the current block, the open
+ * elements, one offset per block and the tag names are kept in memory.
+ * {@link #save(long, long)} appends the block offsets, the slots and the name
+ * table, adds the header and moves the file into place.
+ */
+class XMLIndexBuilder implements XMLTagHandler {
+
+	private final XMLTokenizer tokenizer;
+	private final Path sidecar;
+	private final XMLSymbolTable symbols = new XMLSymbolTable();
+	private final MyIntStack open = new MyIntStack();
+	private final MyIntStack slots = new MyIntStack(); // slot of each open element, -1 in the current block
+
+	private final int[] tags = new int[XMLIndex.BLOCK_RECORDS];
+	private final int[] depths = new int[XMLIndex.BLOCK_RECORDS];
+	private final long[] starts = new long[XMLIndex.BLOCK_RECORDS];
+	private final long[] ends = new long[XMLIndex.BLOCK_RECORDS]; // -1 while open
+	private final ByteBuffer encoded = ByteBuffer.allocate(XMLIndex.MAX_BLOCK_SIZE);
+	private final ByteBuffer patch = ByteBuffer.allocate(8);
+
+	private Path temporary;
+	private Path lateTemporary;
+	private FileChannel out;
+	private FileChannel late;
+	private long written = XMLIndex.HEADER_SIZE; // end of the blocks written so far
+	private long[] blockOffsets = new long[16];
+	private int blocks = 0;
+	private int lateCount = 0;
+	private int blockFirst = 0; // number of the first element of the current block
+	private int count = 0;
+	private IOException failure;
+
+	/**
+	 * Creates a builder reading tag positions from the given tokenizer.
+	 *
+	 * @param tokenizer tokenizer producing the tag events.
+	 * @param sidecar   where {@link #save(long, long)} puts the index.
+	 */
+	XMLIndexBuilder(XMLTokenizer tokenizer, Path sidecar) {
+		this.tokenizer = tokenizer;
+		this.sidecar = sidecar;
+	}
+
+	@Override
+	public void startTag(char[] name, int length, boolean selfClosing) {
+		if (failure != null) {
+			return;
+		}
+		if (count == Integer.MAX_VALUE) {
+			fail(new IOException("Too many elements to index."));
+			return;
+		}
+		if (count - blockFirst == XMLIndex.BLOCK_RECORDS) {
+			try {
+				flush();
+			} catch (IOException e) {
+				fail(e);
+				return;
+			}
+		}
+		int i = count - blockFirst;
+		tags[i] = symbols.intern(name, 0, length);
+		depths[i] = open.size();
+		starts[i] = tokenizer.getTagOffset();
+		ends[i] = selfClosing ? tokenizer.getOffset() : -1;
+		if (!selfClosing) {
+			open.push(count);
+			slots.push(-1);
+		}
+		count++;
+	}
+
+	@Override
+	public void endTag(char[] name, int length) {
+		// Only well-formed documents are indexed, so the names always match
+		if (open.isEmpty() || failure != null) {
+			return;
+		}
+		int element = open.pop();
+		int slot = slots.pop();
+		long end = tokenizer.getOffset();
+		if (slot < 0) {
+			ends[element - blockFirst] = end;
+			return;
+		}
+		try {
+			patch.clear();
+			patch.putLong(end).flip();
+			write(late, patch, (long) slot * 8);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Completes the sidecar and replaces the given file with it atomically,
+	 * unless the document was read as chars, whose offsets are not byte
+	 * offsets; the records written are then deleted.
+	 *
+	 * @param documentSize     size of the document in bytes.
+	 * @param documentModified modification time of the document in milliseconds.
+	 * @return the number of elements indexed, or -1 if no index was saved.
+	 * @throws IOException if the sidecar cannot be written.
+	 */
+	int save(long documentSize, long documentModified) throws IOException {
+		if (failure != null) {
+			discard();
+			throw failure;
+		}
+		if (!tokenizer.isByteMode() && count > 0) {
+			discard();
+			return -1;
+		}
+		try {
+			if (out == null) {
+				create();
+			}
+			if (count > blockFirst) {
+				flush();
+			}
+			long tableOffset = written;
+			ByteBuffer table = ByteBuffer.allocate((blocks + 1) * 8);
+			for (int b = 0; b < blocks; b++) {
+				table.putLong(blockOffsets[b]);
+			}
+			table.putLong(tableOffset).flip();
+			write(out, table, tableOffset);
+
+			long position = tableOffset + (blocks + 1) * 8L;
+			long lateLength = lateCount * 8L;
+			out.position(position);
+			for (long copied = 0; copied < lateLength;) {
+				long moved = late.transferTo(copied, lateLength - copied, out);
+				if (moved <= 0) {
+					throw new IOException("Index slots were lost.");
+				}
+				copied += moved;
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(XMLIndex.HEADER_SIZE);
+			header.putInt(XMLIndex.MAGIC).putInt(XMLIndex.VERSION).putLong(documentSize).putLong(documentModified)
+					.putInt(count).putInt(lateCount).putLong(tableOffset).flip();
+			write(out, header, 0);
+
+			out.position(position + lateLength);
+			try (DataOutputStream names = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)))) {
+				names.writeInt(symbols.size());
+				for (int i = 0; i < symbols.size(); i++) {
+					names.writeUTF(symbols.nameOf(i));
+				}
+			}
+			Files.move(temporary, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return count;
+		} finally {
+			discard();
+		}
+	}
+
+	/**
+	 * Deletes the records written so far, if any.
+	 *
+	 * @throws IOException if a temporary file cannot be deleted.
+	 */
+	void discard() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+		if (late != null) {
+			late.close();
+			late = null;
+		}
+		if (temporary != null) {
+			Files.deleteIfExists(temporary);
+			temporary = null;
+		}
+		if (lateTemporary != null) {
+			Files.deleteIfExists(lateTemporary);
+			lateTemporary = null;
+		}
+	}
+
+	// Handlers cannot throw, so stop scanning and report it from save()
+	private void fail(IOException e) {
+		failure = e;
+		tokenizer.stop();
+	}
+
+	// Creates the temporary files for the blocks and for the slots
+	private void create() throws IOException {
+		Path directory = sidecar.toAbsolutePath().getParent();
+		String prefix = sidecar.getFileName().toString();
+		temporary = Files.createTempFile(directory, prefix, ".tmp");
+		out = FileChannel.open(temporary, StandardOpenOption.WRITE);
+		lateTemporary = Files.createTempFile(directory, prefix, ".tmp");
+		late = FileChannel.open(lateTemporary, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	// Encodes and writes the current block, creating the temporary files on first use
+	private void flush() throws IOException {
+		if (out == null) {
+			create();
+		}
+
+		// Elements still open move to slots, numbered in document order
+		int stillOpen = 0;
+		while (stillOpen < open.size() && open.get(open.size() - 1 - stillOpen) >= blockFirst) {
+			stillOpen++;
+		}
+		MyIntStack reopened = new MyIntStack();
+		for (int k = 0; k < stillOpen; k++) {
+			reopened.push(open.pop());
+			slots.pop();
+		}
+		int firstSlot = lateCount;
+		ByteBuffer unknown = ByteBuffer.allocate(stillOpen * 8);
+		while (!reopened.isEmpty()) {
+			open.push(reopened.pop());
+			slots.push(lateCount++);
+			unknown.putLong(-1);
+		}
+		unknown.flip();
+		write(late, unknown, (long) firstSlot * 8);
+
+		encoded.clear();
+		long previous = 0;
+		int slot = firstSlot;
+		for (int i = 0; i < count - blockFirst; i++) {
+			XMLIndex.putVarLong(encoded, tags[i]);
+			XMLIndex.putVarLong(encoded, depths[i]);
+			XMLIndex.putVarLong(encoded, starts[i] - previous);
+			// Lengths are even, slot numbers odd
+			XMLIndex.putVarLong(encoded, ends[i] >= 0 ? (ends[i] - starts[i]) << 1 : ((long) slot++ << 1) | 1);
+			previous = starts[i];
+		}
+		encoded.flip();
+
+		if (blocks == blockOffsets.length) {
+			long[] grown = new long[blocks * 2];
+			System.arraycopy(blockOffsets, 0, grown, 0, blocks);
+			blockOffsets = grown;
+		}
+		blockOffsets[blocks++] = written;
+		int size = encoded.remaining();
+		write(out, encoded, written);
+		written += size;
+		blockFirst = count;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+}
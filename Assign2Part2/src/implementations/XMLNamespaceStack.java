@@ -0,0 +1,232 @@
+package implementations;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The namespace prefixes in scope at the current element.
+ * <p>
+ * Bindings are pushed onto one array-backed stack as elements declare them,
+ * and each open element remembers the height of that stack when it started, so
+ * ending an element pops exactly its own bindings. Prefixes and URIs are
+ * interned, and each prefix ID points at its innermost binding, which in turn
+ * remembers the binding it shadows: resolving a prefix is a symbol lookup and
+ * two array reads, and pushing or popping a binding is constant time.
+ */
+class XMLNamespaceStack {
+
+	/** The namespace the prefix <code>xml</code> is always bound to. */
+	static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final XMLSymbolTable prefixes = new XMLSymbolTable();
+	private final XMLSymbolTable uris = new XMLSymbolTable();
+	private final XMLSymbolTable localNames = new XMLSymbolTable();
+
+	private final int emptyUri = uris.intern("");
+
+	private int[] innermost = new int[INITIAL_CAPACITY]; // prefix ID to binding, -1 if unbound
+
+	// The bindings in scope, outermost first
+	private int[] bindingPrefixes = new int[INITIAL_CAPACITY];
+	private int[] bindingUris = new int[INITIAL_CAPACITY];
+	private int[] shadowed = new int[INITIAL_CAPACITY]; // binding of the same prefix underneath
+	private int bindings = 0;
+
+	private int[] marks = new int[INITIAL_CAPACITY]; // bindings below each open element
+	private int depth = 0;
+
+	// Expanded names of the prefixed attributes of the current tag
+	private long[] attributeNames = new long[INITIAL_CAPACITY];
+	private int[] usedSlots = new int[INITIAL_CAPACITY / 2];
+	private int attributeCount = 0;
+
+	/**
+	 * Creates a stack with only the <code>xml</code> prefix bound.
+	 */
+	XMLNamespaceStack() {
+		Arrays.fill(innermost, -1);
+		Arrays.fill(attributeNames, -1);
+		char[] xml = "xml".toCharArray();
+		char[] uri = XML_NAMESPACE.toCharArray();
+		declare(xml, 0, xml.length, uri, 0, uri.length);
+	}
+
+	/**
+	 * Starts the scope of an element; declarations made until the matching
+	 * {@link #endElement()} belong to it.
+	 */
+	void startElement() {
+		if (depth == marks.length) {
+			marks = Arrays.copyOf(marks, depth * 2);
+		}
+		marks[depth++] = bindings;
+		for (int i = 0; i < attributeCount; i++) {
+			attributeNames[usedSlots[i]] = -1;
+		}
+		attributeCount = 0;
+	}
+
+	/**
+	 * Ends the scope of the innermost element, removing its declarations.
+	 */
+	void endElement() {
+		if (depth == 0) {
+			return;
+		}
+		int mark = marks[--depth];
+		while (bindings > mark) {
+			bindings--;
+			innermost[bindingPrefixes[bindings]] = shadowed[bindings];
+		}
+	}
+
+	/**
+	 * Binds a prefix to a URI in the current element; an empty prefix sets the
+	 * default namespace.
+	 */
+	void declare(char[] prefix, int prefixOffset, int prefixLength, char[] uri, int uriOffset, int uriLength) {
+		int prefixId = prefixes.intern(prefix, prefixOffset, prefixLength);
+		if (prefixId == innermost.length) {
+			innermost = Arrays.copyOf(innermost, prefixId * 2);
+			Arrays.fill(innermost, prefixId, innermost.length, -1);
+		}
+		if (bindings == bindingPrefixes.length) {
+			int capacity = bindings * 2;
+			bindingPrefixes = Arrays.copyOf(bindingPrefixes, capacity);
+			bindingUris = Arrays.copyOf(bindingUris, capacity);
+			shadowed = Arrays.copyOf(shadowed, capacity);
+		}
+		bindingPrefixes[bindings] = prefixId;
+		bindingUris[bindings] = uris.intern(uri, uriOffset, uriLength);
+		shadowed[bindings] = innermost[prefixId];
+		innermost[prefixId] = bindings++;
+	}
+
+	/**
+	 * Returns the ID of the URI the given prefix is bound to. A prefix bound to
+	 * the empty URI is unbound, and the empty prefix is never bound: the default
+	 * namespace does not apply to prefixed names.
+	 *
+	 * @return the URI ID, or -1 if the prefix is not bound.
+	 */
+	int resolve(char[] prefix, int offset, int length) {
+		int prefixId = length == 0 ? -1 : prefixes.lookup(prefix, offset, length);
+		if (prefixId < 0 || innermost[prefixId] < 0) {
+			return -1;
+		}
+		int uri = bindingUris[innermost[prefixId]];
+		return uri == emptyUri ? -1 : uri;
+	}
+
+	/**
+	 * Returns the URI with the given ID.
+	 */
+	String uriOf(int uri) {
+		return uris.nameOf(uri);
+	}
+
+	/**
+	 * Records the expanded name of a prefixed attribute of the current tag.
+	 *
+	 * @return <code>false</code> if the tag already has an attribute with the
+	 *         same URI and local name, under whatever prefix.
+	 */
+	boolean addAttribute(int uri, char[] localName, int offset, int length) {
+		long key = (long) uri << 32 | localNames.intern(localName, offset, length);
+		if (attributeCount == usedSlots.length) {
+			rehash();
+		}
+		int mask = attributeNames.length - 1;
+		int slot = hash(key) & mask;
+		for (; attributeNames[slot] >= 0; slot = (slot + 1) & mask) {
+			if (attributeNames[slot] == key) {
+				return false;
+			}
+		}
+		attributeNames[slot] = key;
+		usedSlots[attributeCount++] = slot;
+		return true;
+	}
+
+	/**
+	 * Returns the number of elements whose scope has not ended.
+	 */
+	int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Writes the bindings in scope and the open scopes.
+	 */
+	void writeState(DataOutput out) throws IOException {
+		out.writeInt(depth);
+		out.writeInt(bindings);
+		int next = 0;
+		for (int level = 0; level <= depth; level++) {
+			int end = level < depth ? marks[level] : bindings;
+			out.writeInt(end - next);
+			for (; next < end; next++) {
+				out.writeUTF(prefixes.nameOf(bindingPrefixes[next]));
+				out.writeUTF(uris.nameOf(bindingUris[next]));
+			}
+		}
+	}
+
+	/**
+	 * Replaces the bindings with those written by {@link #writeState(DataOutput)}.
+	 */
+	void readState(DataInput in) throws IOException {
+		int levels = in.readInt();
+		if (levels < 0) {
+			throw new IOException("Invalid namespace state");
+		}
+		while (depth > 0) {
+			endElement();
+		}
+		bindings = 0;
+		Arrays.fill(innermost, -1);
+		in.readInt(); // total, implied by the counts that follow
+		for (int level = 0; level <= levels; level++) {
+			if (level > 0) {
+				startElement();
+			}
+			int count = in.readInt();
+			if (count < 0) {
+				throw new IOException("Invalid namespace state");
+			}
+			for (int i = 0; i < count; i++) {
+				char[] prefix = in.readUTF().toCharArray();
+				char[] uri = in.readUTF().toCharArray();
+				declare(prefix, 0, prefix.length, uri, 0, uri.length);
+			}
+		}
+	}
+
+	private void rehash() {
+		long[] old = attributeNames;
+		attributeNames = new long[old.length * 2];
+		Arrays.fill(attributeNames, -1);
+		usedSlots = Arrays.copyOf(usedSlots, attributeNames.length / 2);
+		int mask = attributeNames.length - 1;
+		attributeCount = 0;
+		for (long key : old) {
+			if (key >= 0) {
+				int slot = hash(key) & mask;
+				while (attributeNames[slot] >= 0) {
+					slot = (slot + 1) & mask;
+				}
+				attributeNames[slot] = key;
+				usedSlots[attributeCount++] = slot;
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
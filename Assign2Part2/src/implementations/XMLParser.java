@@ -1,89 +1,748 @@
 package implementations;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import utilities.DiagnosticSink;
+import utilities.XMLTagHandler;
 
 public class XMLParser {
 
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+	private final XMLValidator validator;
+	private XMLIndexBuilder index = null;
+	private XMLPathStatistics statistics = null;
+	private XMLPathExtractor extractor = null;
+
+	/**
+	 * Creates a parser that prints its results to standard output.
+	 */
+	public XMLParser() {
+		this(System.out);
+	}
+
+	/**
+	 * Creates a parser that prints its results to the given stream.
+	 *
+	 * @param out destination of the validation messages.
+	 */
+	public XMLParser(PrintStream out) {
+		validator = new XMLValidator(out);
+	}
+
+	/**
+	 * Creates a parser that delivers its diagnostics to the given sink.
+	 *
+	 * @param sink receiver of the diagnostics.
+	 */
+	public XMLParser(DiagnosticSink sink) {
+		validator = new XMLValidator(sink);
+	}
+
 	public static void main(String[] args) {
 
-		if (args.length != 1) {
-			System.out.println("Usage: java XMLParser <filename>");
+		boolean mapped = false;
+		boolean pipelined = false;
+		boolean batch = false;
+		boolean virtualThreads = false;
+		boolean aggregate = false;
+		long maxErrors = BufferedDiagnosticSink.UNLIMITED;
+		long stopAfter = 0;
+		boolean verdict = false;
+		String cacheFile = null;
+		String checkpoint = null;
+		String serve = null;
+		String http = null;
+		boolean indexing = false;
+		boolean stats = false;
+		String query = null;
+		String rulesFile = null;
+		boolean namespaces = false;
+		int parallel = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		MyArrayList<String> inputs = new MyArrayList<>();
+		boolean usage = false;
+
+		for (String arg : args) {
+			if (arg.equals("--mmap")) {
+				mapped = true;
+			} else if (arg.equals("--pipeline")) {
+				pipelined = true;
+			} else if (arg.equals("--parallel")) {
+				parallel = Runtime.getRuntime().availableProcessors();
+			} else if (arg.startsWith("--parallel=")) {
+				parallel = parseCount(arg.substring("--parallel=".length()));
+				usage |= parallel <= 0;
+			} else if (arg.equals("--batch")) {
+				batch = true;
+			} else if (arg.startsWith("--threads=")) {
+				threads = parseCount(arg.substring("--threads=".length()));
+				usage |= threads <= 0;
+			} else if (arg.equals("--virtual")) {
+				virtualThreads = true;
+			} else if (arg.startsWith("--max-errors=")) {
+				maxErrors = parseCount(arg.substring("--max-errors=".length()));
+				usage |= maxErrors < 0;
+			} else if (arg.equals("--aggregate")) {
+				aggregate = true;
+			} else if (arg.equals("--fail-fast")) {
+				stopAfter = 1;
+			} else if (arg.startsWith("--stop-after=")) {
+				stopAfter = parseCount(arg.substring("--stop-after=".length()));
+				usage |= stopAfter <= 0;
+			} else if (arg.equals("--verdict")) {
+				verdict = true;
+			} else if (arg.startsWith("--cache=")) {
+				cacheFile = arg.substring("--cache=".length());
+				usage |= cacheFile.isEmpty();
+			} else if (arg.startsWith("--resume=")) {
+				checkpoint = arg.substring("--resume=".length());
+				usage |= checkpoint.isEmpty();
+			} else if (arg.startsWith("--serve=")) {
+				serve = arg.substring("--serve=".length());
+				usage |= serve.isEmpty();
+			} else if (arg.startsWith("--http=")) {
+				http = arg.substring("--http=".length());
+				usage |= http.isEmpty();
+			} else if (arg.startsWith("--query=")) {
+				query = arg.substring("--query=".length());
+				usage |= !query.startsWith("/") || query.length() == 1;
+			} else if (arg.startsWith("--rules=")) {
+				rulesFile = arg.substring("--rules=".length());
+				usage |= rulesFile.isEmpty();
+			} else if (arg.equals("--namespaces")) {
+				namespaces = true;
+			} else if (arg.equals("--stats")) {
+				stats = true;
+			} else if (arg.equals("--index")) {
+				indexing = true;
+			} else if (arg.startsWith("--")) {
+				usage = true;
+			} else {
+				inputs.add(arg);
+			}
+		}
+
+		// Verdict-only validation needs a single sequential scan of each file
+		usage |= parallel > 0 && verdict;
+		usage |= !batch && cacheFile != null;
+		usage |= pipelined && (mapped || parallel > 0 || batch);
+		usage |= !batch && inputs.size() == 1 && isCompressed(inputs.get(0))
+				&& (mapped || parallel > 0 || checkpoint != null);
+		usage |= query != null && (batch || mapped || pipelined || parallel > 0 || checkpoint != null
+				|| (inputs.size() == 1 && (isCompressed(inputs.get(0)) || isArchive(inputs.get(0)))));
+		usage |= stats && (batch || parallel > 0 || checkpoint != null
+				|| (inputs.size() == 1 && isArchive(inputs.get(0))));
+		usage |= indexing && (batch || parallel > 0 || checkpoint != null
+				|| (inputs.size() == 1 && (isCompressed(inputs.get(0)) || isArchive(inputs.get(0)))));
+		usage |= checkpoint != null && (batch || parallel > 0 || stopAfter > 0 || verdict);
+		usage |= rulesFile != null && (batch || parallel > 0 || checkpoint != null
+				|| (inputs.size() == 1 && isArchive(inputs.get(0))));
+		usage |= namespaces && (batch || parallel > 0 || checkpoint != null
+				|| (inputs.size() == 1 && isArchive(inputs.get(0))));
+
+		usage |= serve != null && (!inputs.isEmpty() || batch || mapped || pipelined || parallel > 0
+				|| checkpoint != null || cacheFile != null || maxErrors != BufferedDiagnosticSink.UNLIMITED || aggregate
+				|| indexing || stats || query != null || rulesFile != null || namespaces);
+
+		usage |= http != null && (!inputs.isEmpty() || batch || mapped || pipelined || parallel > 0 || serve != null
+				|| checkpoint != null || cacheFile != null || maxErrors != BufferedDiagnosticSink.UNLIMITED || aggregate
+				|| stopAfter > 0 || verdict || virtualThreads || indexing || stats || query != null || rulesFile != null
+				|| namespaces);
+
+		if (http != null && !usage) {
+			serveHttp(http, threads);
+			return;
+		}
+		if (serve != null && !usage) {
+			serve(serve, threads, virtualThreads, stopAfter, verdict);
 			return;
 		}
 
-		String filename = args[0];
-		MyStack<String> stack = new MyStack<>();
+		// An archive is validated entry by entry, like a batch of files
+		batch |= inputs.size() == 1 && isArchive(inputs.get(0));
 
-		int lineNumber = 0;
-		boolean hasRoot = false;
-		boolean rootClosed = false;
+		if (usage || inputs.isEmpty() || (!batch && inputs.size() != 1)) {
+			System.out.println("Usage: java XMLParser [options] [--index] [--stats] [--mmap | --pipeline | --parallel[=threads]] <filename>");
+			System.out.println("       java XMLParser [options] [--index] [--stats] --query=/path/to/element <filename>");
+			System.out.println("       java XMLParser [options] --resume=checkpoint <filename>");
+			System.out.println("       java XMLParser [options] --batch [--threads=n] [--virtual] [--cache=file] <file|directory|archive|glob>...");
+			System.out.println("       java XMLParser [--threads=n] [--virtual] [--stop-after=n] [--verdict] --serve=<[host:]port|socket>");
+			System.out.println("       java XMLParser [--threads=n] --http=<[host:]port>");
+			System.out.println("Options: --max-errors=n --aggregate --fail-fast --stop-after=n --verdict --rules=file --namespaces");
+			return;
+		}
 
-		try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-			String line;
+		if (batch) {
+			try {
+				BatchXMLValidator validator = new BatchXMLValidator(threads, virtualThreads, maxErrors, aggregate);
+				validator.setStopAfter(stopAfter);
+				validator.setVerdictOnly(verdict);
+				ValidationCache cache = null;
+				if (cacheFile != null) {
+					cache = ValidationCache.load(Paths.get(cacheFile), ValidationCache.DEFAULT_MAX_BYTES);
+					validator.setCache(cache);
+				}
+				validator.validate(BatchXMLValidator.collect(inputs), System.out);
+				if (cache != null) {
+					cache.save();
+				}
+			} catch (IOException e) {
+				System.out.println("Error reading files: " + e.getMessage());
+			}
+			return;
+		}
 
-			while ((line = reader.readLine()) != null) {
-				lineNumber++;
+		String filename = inputs.get(0);
+		if (query != null && !indexing && !stats && rulesFile == null && !namespaces
+				&& queryIndex(filename, query)) {
+			return;
+		}
 
-				int idx = 0;
-				while ((idx = line.indexOf("<", idx)) != -1) {
-					int closeIdx = line.indexOf(">", idx);
-					if (closeIdx == -1) {
-						break;
-					}
+		// Queried elements go to standard output, so messages go elsewhere
+		PrintStream messages = query != null ? System.err : System.out;
+		DiagnosticSink sink = new BufferedDiagnosticSink(new OutputStreamWriter(messages), maxErrors, aggregate);
 
-					String tag = line.substring(idx + 1, closeIdx).trim();
+		XMLParser parser = new XMLParser(sink);
+		if (rulesFile != null) {
+			try {
+				parser.setContentRules(ContentRules.load(Paths.get(rulesFile)));
+			} catch (IOException e) {
+				messages.println("Error reading rules: " + e.getMessage());
+				return;
+			}
+		}
+		parser.setNamespaceAware(namespaces);
+		if (stopAfter > 0) {
+			parser.setStopAfter(stopAfter);
+		}
+		parser.setVerdictOnly(verdict);
+		if (indexing) {
+			try {
+				parser.setIndexing(XMLIndex.sidecarOf(Paths.get(filename)));
+			} catch (IOException e) {
+				// Nothing was recorded yet
+			}
+		}
+		parser.setStatistics(stats);
 
-					// Skip processing instructions and comments
-					// Self-closing tag
-					if (tag.startsWith("?") || tag.startsWith("!--") || tag.endsWith("/")) {
-						idx = closeIdx + 1;
-						continue;
+		try {
+			if (isCompressed(filename)) {
+				try (InputStream in = Files.newInputStream(Paths.get(filename))) {
+					parser.parseCompressed(in);
+				}
+			} else if (checkpoint != null) {
+				try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+					new TailXMLValidator(Paths.get(checkpoint)).validate(channel, sink);
+				}
+			} else if (parallel > 0) {
+				try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+					ParallelXMLValidator validator = new ParallelXMLValidator(parallel);
+					if (stopAfter > 0) {
+						validator.setStopAfter(stopAfter);
 					}
+					validator.validate(channel, sink);
+				}
+			} else if (query != null) {
+				try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+					parser.extract(channel, query, Channels.newChannel(System.out));
+				}
+				System.out.flush();
+			} else {
+				try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+					parser.parseFile(channel, mapped, pipelined);
+				}
+			}
+		} catch (IOException e) {
+			// Deliver what was found before the error, ahead of the error itself
+			sink.finish(false);
+			messages.println("Error reading file: " + e.getMessage());
+			try {
+				parser.setIndexing(null);
+			} catch (IOException ignored) {
+				// Only a temporary file is left behind
+			}
+			if (verdict) {
+				System.exit(2);
+			}
+			return;
+		}
 
-					// Closing tag
-					if (tag.startsWith("/")) {
-						String tagName = tag.substring(1);
-						if (stack.isEmpty()) {
-							System.out.println("Line " + lineNumber + ": Unexpected closing tag </" + tagName + ">");
-						} else {
-							String openTag = stack.pop();
-							if (!openTag.equals(tagName)) {
-								System.out.println("Line " + lineNumber + ": Mismatched tag </" + tagName
-										+ ">, expected </" + openTag + ">");
-							}
-						}
-						if (stack.isEmpty()) {
-							rootClosed = true;
-						}
-					} else {
-						if (!hasRoot) {
-							hasRoot = true;
-						}
-						if (rootClosed) {
-							System.out.println("Line " + lineNumber + ": Content after root tag closed.");
-						}
-						String tagName = tag.split("\\s+")[0];
-						stack.push(tagName);
-					}
+		if (verdict && !parser.isWellFormed()) {
+			messages.println("XML document is malformed.");
+			System.exit(1);
+		}
+
+		if (stats) {
+			parser.getStatistics().print(messages);
+		}
 
-					idx = closeIdx + 1;
+		if (indexing) {
+			try {
+				int elements = parser.saveIndex(Paths.get(filename));
+				if (elements >= 0) {
+					messages.println("Indexed " + elements + " elements.");
+				} else if (parser.isWellFormed()) {
+					messages.println("Only UTF-8 documents can be indexed.");
 				}
+			} catch (IOException e) {
+				messages.println("Error writing index: " + e.getMessage());
 			}
+		}
+	}
 
-			if (!hasRoot) {
-				System.out.println("Missing root tag");
-			} else if (!stack.isEmpty()) {
-				while (!stack.isEmpty()) {
-					System.out.println("Unclosed tag: <" + stack.pop() + ">");
+	// Answers a query from the file's index, if it has an up-to-date one
+	private static boolean queryIndex(String filename, String query) {
+		Path document = Paths.get(filename);
+		Path sidecar = XMLIndex.sidecarOf(document);
+		if (!Files.exists(sidecar)) {
+			return false;
+		}
+		try (XMLIndex index = XMLIndex.load(sidecar)) {
+			if (!index.isCurrent(document)) {
+				return false;
+			}
+			try (FileChannel channel = FileChannel.open(document, StandardOpenOption.READ)) {
+				WritableByteChannel out = Channels.newChannel(System.out);
+				ByteBuffer newline = ByteBuffer.allocate(1);
+				for (int element : index.select(query)) {
+					index.copy(channel, element, out);
+					newline.clear();
+					newline.put((byte) '\n').flip();
+					out.write(newline);
 				}
-			} else {
-				System.out.println("XML document is constructed correctly.");
+			} catch (IOException e) {
+				System.err.println("Error reading file: " + e.getMessage());
+			}
+		} catch (IOException e) {
+			// An unreadable index means scanning the document instead
+			return false;
+		}
+		System.out.flush();
+		return true;
+	}
+
+	// Runs a validation server until the JVM is stopped
+	private static void serve(String address, int threads, boolean virtualThreads, long stopAfter, boolean verdict) {
+		ValidationServer server = new ValidationServer(threads, virtualThreads);
+		server.setStopAfter(stopAfter);
+		server.setVerdictOnly(verdict);
+		try {
+			System.out.println("Listening on " + server.start(ValidationServer.parseAddress(address)));
+			Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+			server.await();
+		} catch (IOException | IllegalArgumentException e) {
+			System.out.println("Error starting server: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Runs an HTTP validation server until the JVM is stopped
+	private static void serveHttp(String address, int threads) {
+		HttpValidationServer server = new HttpValidationServer(threads);
+		try {
+			SocketAddress parsed = ValidationServer.parseAddress(address);
+			if (!(parsed instanceof InetSocketAddress)) {
+				throw new IllegalArgumentException("HTTP needs a TCP address: " + address);
 			}
+			InetSocketAddress bound = server.start((InetSocketAddress) parsed);
+			System.out.println("Listening on http://" + bound.getAddress().getHostAddress() + ":" + bound.getPort()
+					+ "/validate");
+			Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+		} catch (IOException | IllegalArgumentException e) {
+			System.out.println("Error starting server: " + e.getMessage());
+			server.close();
+		}
+	}
 
+	private static int parseCount(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Stops parsing once the given number of errors has been found.
+	 *
+	 * @param errors number of errors after which to stop.
+	 * @see XMLValidator#setStopAfter(long)
+	 */
+	public void setStopAfter(long errors) {
+		validator.setStopAfter(errors);
+	}
+
+	/**
+	 * Selects verdict-only parsing, which stops at the first error and builds no
+	 * messages.
+	 *
+	 * @param verdictOnly <code>true</code> to compute only the verdict.
+	 * @see XMLValidator#setVerdictOnly(boolean)
+	 */
+	public void setVerdictOnly(boolean verdictOnly) {
+		validator.setVerdictOnly(verdictOnly);
+	}
+
+	/**
+	 * Checks the children of each element against the given rules while
+	 * parsing.
+	 *
+	 * @param rules the content rules, or <code>null</code> to check only nesting.
+	 * @see XMLValidator#setContentRules(ContentRules)
+	 */
+	public void setContentRules(ContentRules rules) {
+		validator.setContentRules(rules);
+	}
+
+	/**
+	 * Checks that every namespace prefix used is bound while parsing.
+	 *
+	 * @param namespaceAware <code>true</code> to check namespace prefixes.
+	 * @see XMLValidator#setNamespaceAware(boolean)
+	 */
+	public void setNamespaceAware(boolean namespaceAware) {
+		validator.setNamespaceAware(namespaceAware);
+	}
+
+	/**
+	 * Writes the position of every element to a temporary file beside the
+	 * given sidecar while parsing; {@link #saveIndex(Path)} completes it.
+	 * Replacing or turning off indexing deletes the records not yet saved.
+	 *
+	 * @param sidecar where the index is to be saved, or <code>null</code> to
+	 *                turn indexing off.
+	 * @throws IOException if the unsaved records cannot be deleted.
+	 * @see XMLIndex#sidecarOf(Path)
+	 */
+	public void setIndexing(Path sidecar) throws IOException {
+		if (index != null) {
+			index.discard();
+		}
+		index = sidecar != null ? new XMLIndexBuilder(validator.getTokenizer(), sidecar) : null;
+		updateObserver();
+	}
+
+	/**
+	 * Gathers element path statistics while parsing, for
+	 * {@link #getStatistics()}.
+	 *
+	 * @param gathering <code>true</code> to gather statistics.
+	 */
+	public void setStatistics(boolean gathering) {
+		statistics = gathering ? new XMLPathStatistics(validator.getTokenizer()) : null;
+		updateObserver();
+	}
+
+	/**
+	 * Returns the element path statistics of the document parsed so far.
+	 *
+	 * @return the statistics, or <code>null</code> if they are not gathered.
+	 */
+	public XMLPathStatistics getStatistics() {
+		return statistics;
+	}
+
+	// Passes the tag events to every helper that is switched on
+	private void updateObserver() {
+		MyArrayList<XMLTagHandler> handlers = new MyArrayList<>();
+		if (index != null) {
+			handlers.add(index);
+		}
+		if (statistics != null) {
+			handlers.add(statistics);
+		}
+		if (extractor != null) {
+			handlers.add(extractor);
+		}
+		if (handlers.size() <= 1) {
+			validator.setObserver(handlers.isEmpty() ? null : handlers.get(0));
+			return;
+		}
+		XMLTagHandler[] all = handlers.toArray(new XMLTagHandler[handlers.size()]);
+		validator.setObserver(new XMLTagHandler() {
+			@Override
+			public void startTag(char[] name, int length, boolean selfClosing) {
+				for (XMLTagHandler handler : all) {
+					handler.startTag(name, length, selfClosing);
+				}
+			}
+
+			@Override
+			public void endTag(char[] name, int length) {
+				for (XMLTagHandler handler : all) {
+					handler.endTag(name, length);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Saves the structure of the document parsed with indexing on to the
+	 * sidecar given to {@link #setIndexing(Path)}, stamped with the current size
+	 * and modification time of its file, and turns indexing off.
+	 *
+	 * @param document file the document was read from.
+	 * @return the number of elements indexed, or -1 if no index was saved
+	 *         because indexing was off, the document is not well formed, or it
+	 *         was not scanned as bytes.
+	 * @throws IOException if the file cannot be examined or the sidecar
+	 *                     cannot be written.
+	 */
+	public int saveIndex(Path document) throws IOException {
+		XMLIndexBuilder builder = index;
+		if (builder == null) {
+			return -1;
+		}
+		index = null;
+		updateObserver();
+		if (!isWellFormed()) {
+			builder.discard();
+			return -1;
+		}
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(document, BasicFileAttributes.class);
 		} catch (IOException e) {
-			System.out.println("Error reading file: " + e.getMessage());
+			builder.discard();
+			throw e;
 		}
+		return builder.save(attributes.size(), attributes.lastModifiedTime().toMillis());
+	}
+
+	/**
+	 * Validates the document read from the given reader and prints the result.
+	 *
+	 * @param reader source of the document.
+	 * @throws IOException if reading fails.
+	 */
+	public void parse(Reader reader) throws IOException {
+		validator.getTokenizer().tokenize(reader);
+		validator.finish();
+	}
+
+	/**
+	 * Validates the document held in the given file by memory-mapping it and
+	 * scanning the raw UTF-8 bytes, then prints the result.
+	 *
+	 * @param channel channel open for reading.
+	 * @throws IOException if the file cannot be mapped.
+	 */
+	public void parseMapped(FileChannel channel) throws IOException {
+		validator.getTokenizer().tokenizeMapped(channel);
+		validator.finish();
+	}
+
+	/**
+	 * Validates the document read from the given channel as raw UTF-8 bytes and
+	 * prints the result.
+	 *
+	 * @param channel source of the document; it is not closed.
+	 * @throws IOException if reading fails.
+	 */
+	public void parse(ReadableByteChannel channel) throws IOException {
+		validator.getTokenizer().tokenize(channel);
+		validator.finish();
+	}
+
+	/**
+	 * Validates the document read from the given channel as raw UTF-8 bytes,
+	 * reading ahead on a separate I/O thread so that read stalls overlap with
+	 * scanning, and prints the result.
+	 *
+	 * @param channel source of the document; it is not closed.
+	 * @throws IOException if reading fails.
+	 * @see ReadAheadReader
+	 */
+	public void parsePipelined(ReadableByteChannel channel) throws IOException {
+		XMLTokenizer tokenizer = validator.getTokenizer();
+		try (ReadAheadReader reader = new ReadAheadReader(channel)) {
+			ByteBuffer buffer;
+			while (!tokenizer.isStopped() && (buffer = reader.next()) != null) {
+				tokenizer.feed(buffer);
+				reader.recycle(buffer);
+			}
+		}
+		validator.finish();
+	}
+
+	/**
+	 * Validates a gzip-compressed document read from the given stream. The
+	 * document is decompressed on a separate thread while it is validated, and
+	 * never stored whole; its encoding is detected as for
+	 * {@link #parseFile(FileChannel, boolean)}.
+	 *
+	 * @param compressed source of the gzip data; it is not closed.
+	 * @throws IOException if reading or decompression fails.
+	 */
+	public void parseCompressed(InputStream compressed) throws IOException {
+		// The read-ahead thread is the one that inflates
+		parseDetected(new BufferedInputStream(new GZIPInputStream(compressed, STREAM_BUFFER_SIZE),
+				STREAM_BUFFER_SIZE), true);
+	}
+
+	/**
+	 * Validates the document read from the given stream, such as an archive
+	 * entry, detecting its encoding as for {@link #parseFile(FileChannel, boolean)}.
+	 *
+	 * @param in source of the document; it is not closed.
+	 * @throws IOException if reading fails.
+	 */
+	public void parseStream(InputStream in) throws IOException {
+		parseDetected(new BufferedInputStream(in, STREAM_BUFFER_SIZE), false);
+	}
+
+	private void parseDetected(InputStream document, boolean pipelined) throws IOException {
+		Charset charset = XMLEncodingDetector.detect(document);
+		if (!XMLEncodingDetector.isByteScannable(charset)) {
+			parse(new InputStreamReader(document, charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE)));
+		} else if (pipelined) {
+			parsePipelined(Channels.newChannel(document));
+		} else {
+			parse(Channels.newChannel(document));
+		}
+	}
+
+	/**
+	 * Validates the document held in the given file and, in the same pass,
+	 * copies each element at the given path to the target as soon as its end
+	 * tag is read, followed by a newline. Subtrees off the path are skipped
+	 * without being compared or kept.
+	 *
+	 * @param channel channel open for reading at position 0; it is not closed.
+	 * @param path    names of the elements from the root down, each preceded by
+	 *                '/', such as <code>/XMLDATA/Submission/Category</code>.
+	 * @param target  destination of the elements; it is not closed.
+	 * @return the number of elements copied.
+	 * @throws IOException if the document is not UTF-8, or reading or writing
+	 *                     fails.
+	 */
+	public long extract(FileChannel channel, String path, WritableByteChannel target) throws IOException {
+		if (!XMLEncodingDetector.isByteScannable(XMLEncodingDetector.detect(channel))) {
+			throw new IOException("Only UTF-8 documents can be queried.");
+		}
+		extractor = new XMLPathExtractor(validator.getTokenizer(), path, channel, target);
+		updateObserver();
+		try {
+			parse((ReadableByteChannel) channel);
+			extractor.checkFailure();
+			return extractor.getFound();
+		} finally {
+			extractor = null;
+			updateObserver();
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the given file name is that of a
+	 * gzip-compressed document.
+	 *
+	 * @param name file name.
+	 * @return <code>true</code> if the name ends in <code>.gz</code>.
+	 */
+	public static boolean isCompressed(String name) {
+		return name.toLowerCase(Locale.ROOT).endsWith(".gz");
+	}
+
+	/**
+	 * Returns a stream that inflates the given gzip data on the thread reading
+	 * it, for {@link #parseStream(InputStream)}. Callers that already run on a
+	 * pool thread use this rather than {@link #parseCompressed(InputStream)},
+	 * whose extra read-ahead thread only adds a hand-off per document.
+	 *
+	 * @param compressed source of the gzip data.
+	 * @return the inflating stream.
+	 * @throws IOException if the gzip header cannot be read.
+	 */
+	static InputStream inflate(InputStream compressed) throws IOException {
+		return new GZIPInputStream(compressed, STREAM_BUFFER_SIZE);
+	}
+
+	/**
+	 * Returns <code>true</code> if the given file name is that of a ZIP or JAR
+	 * archive.
+	 *
+	 * @param name file name.
+	 * @return <code>true</code> if the name ends in <code>.zip</code> or
+	 *         <code>.jar</code>.
+	 */
+	public static boolean isArchive(String name) {
+		String lower = name.toLowerCase(Locale.ROOT);
+		return lower.endsWith(".zip") || lower.endsWith(".jar");
+	}
+
+	/**
+	 * Validates the document held in the given file, choosing how to read it
+	 * from its encoding. UTF-8 and ASCII documents are scanned as raw bytes,
+	 * decoding only tag names that are not ASCII; documents in any other
+	 * encoding detected by {@link XMLEncodingDetector} are decoded to chars.
+	 *
+	 * @param channel channel open for reading at position 0; it is not closed.
+	 * @param mapped  <code>true</code> to memory-map byte-scanned files.
+	 * @throws IOException if reading fails.
+	 */
+	public void parseFile(FileChannel channel, boolean mapped) throws IOException {
+		parseFile(channel, mapped, false);
+	}
+
+	/**
+	 * Validates the document held in the given file as
+	 * {@link #parseFile(FileChannel, boolean)} does, optionally reading
+	 * byte-scanned files ahead on a separate I/O thread.
+	 *
+	 * @param channel   channel open for reading at position 0; it is not closed.
+	 * @param mapped    <code>true</code> to memory-map byte-scanned files.
+	 * @param pipelined <code>true</code> to read byte-scanned files ahead.
+	 * @throws IOException if reading fails.
+	 * @see #parsePipelined(ReadableByteChannel)
+	 */
+	public void parseFile(FileChannel channel, boolean mapped, boolean pipelined) throws IOException {
+		Charset charset = XMLEncodingDetector.detect(channel);
+		if (!XMLEncodingDetector.isByteScannable(charset)) {
+			// Closing this reader would close the caller's channel
+			Reader reader = Channels.newReader(channel, charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE), -1);
+			parse(reader);
+		} else if (mapped) {
+			parseMapped(channel);
+		} else if (pipelined) {
+			parsePipelined(channel);
+		} else {
+			parse((ReadableByteChannel) channel);
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the document parsed so far produced no
+	 * errors. Only meaningful once a parse method has returned.
+	 *
+	 * @return <code>true</code> if the document is well formed.
+	 */
+	public boolean isWellFormed() {
+		return validator.isWellFormed();
 	}
 }
@@ -0,0 +1,148 @@
+package implementations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import utilities.XMLTagHandler;
+
+/**
+ * Copies the elements found at an absolute path such as
+ * <code>/XMLDATA/Submission/Category/Driver</code> out of a file while it is
+ * validated.
+ * <p>
+ * Only the open elements that lie on the path are compared with it; inside any
+ * other subtree the extractor just counts depth, so non-matching subtrees cost
+ * nothing beyond the scan. A matching element is never held in memory: once
+ * its end tag is read, its byte range is copied straight from the file to the
+ * target, followed by a newline.
+ */
+class XMLPathExtractor implements XMLTagHandler {
+
+	private static final ByteBuffer NEWLINE = ByteBuffer.wrap(new byte[] { '\n' });
+
+	private final XMLTokenizer tokenizer;
+	private final char[][] steps;
+	private final FileChannel source;
+	private final WritableByteChannel target;
+
+	private int depth = 0;
+	private int matched = 0; // leading open elements that match the path
+	private long start;
+	private long found = 0;
+	private IOException failure;
+
+	/**
+	 * Creates an extractor.
+	 *
+	 * @param tokenizer tokenizer scanning the source as bytes.
+	 * @param path      names of the elements from the root down, each preceded
+	 *                  by '/'.
+	 * @param source    the file being scanned.
+	 * @param target    destination of the matching elements.
+	 */
+	XMLPathExtractor(XMLTokenizer tokenizer, String path, FileChannel source, WritableByteChannel target) {
+		if (!path.startsWith("/") || path.length() == 1) {
+			throw new IllegalArgumentException("Path must start with '/' and name an element: " + path);
+		}
+		String[] names = path.substring(1).split("/", -1);
+		steps = new char[names.length][];
+		for (int i = 0; i < names.length; i++) {
+			steps[i] = names[i].toCharArray();
+		}
+		this.tokenizer = tokenizer;
+		this.source = source;
+		this.target = target;
+	}
+
+	@Override
+	public void startTag(char[] name, int length, boolean selfClosing) {
+		if (depth == matched && matched < steps.length && equals(steps[matched], name, length)) {
+			if (matched == steps.length - 1) {
+				if (selfClosing) {
+					copy(tokenizer.getTagOffset(), tokenizer.getOffset());
+					return;
+				}
+				start = tokenizer.getTagOffset();
+			}
+			if (!selfClosing) {
+				matched++;
+			}
+		}
+		if (!selfClosing) {
+			depth++;
+		}
+	}
+
+	@Override
+	public void endTag(char[] name, int length) {
+		// Closes the innermost element, as the validator does, whatever its name
+		if (depth == 0) {
+			return;
+		}
+		depth--;
+		if (depth < matched) {
+			if (matched == steps.length) {
+				copy(start, tokenizer.getOffset());
+			}
+			matched = depth;
+		}
+	}
+
+	/**
+	 * Returns the number of elements copied.
+	 *
+	 * @return the match count.
+	 */
+	long getFound() {
+		return found;
+	}
+
+	/**
+	 * Throws the error that stopped copying, if any.
+	 *
+	 * @throws IOException if the file could not be read or the target written.
+	 */
+	void checkFailure() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void copy(long from, long to) {
+		if (failure != null) {
+			return;
+		}
+		try {
+			while (from < to) {
+				long copied = source.transferTo(from, to - from, target);
+				if (copied <= 0) {
+					throw new IOException("File ended before the element did.");
+				}
+				from += copied;
+			}
+			ByteBuffer newline = NEWLINE.duplicate();
+			while (newline.hasRemaining()) {
+				target.write(newline);
+			}
+			found++;
+		} catch (IOException e) {
+			// Handlers cannot throw, so stop scanning and report it afterwards
+			failure = e;
+			tokenizer.stop();
+		}
+	}
+
+	private static boolean equals(char[] step, char[] name, int length) {
+		if (step.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (step[i] != name[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
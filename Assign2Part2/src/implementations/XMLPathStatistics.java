@@ -0,0 +1,305 @@
+package implementations;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+import utilities.XMLTagHandler;
+
+/**
+ * Gathers statistics about the element paths of a document in the same pass
+ * that validates it: how many elements sit at each path such as
+ * <code>/XMLDATA/Submission/Category</code>, their sizes and how many children
+ * they have, plus a histogram of element depths.
+ * <p>
+ * Paths are kept in a trie whose nodes are found by (parent node, tag ID)
+ * in an open-addressing table, so the memory used grows with the number of
+ * distinct paths, not with the size of the document. Sizes are in bytes when
+ * the document is scanned as bytes and in chars otherwise.
+ */
+public class XMLPathStatistics implements XMLTagHandler {
+
+	private static final int INITIAL_NODES = 64;
+	private static final int INITIAL_DEPTH = 32;
+
+	private final XMLTokenizer tokenizer;
+	private final XMLSymbolTable symbols = new XMLSymbolTable();
+
+	// The trie; node 0 stands above the root elements
+	private int[] tags = new int[INITIAL_NODES];
+	private int[] parents = new int[INITIAL_NODES];
+	private int[] firstChildren = new int[INITIAL_NODES];
+	private int[] lastChildren = new int[INITIAL_NODES];
+	private int[] nextSiblings = new int[INITIAL_NODES];
+	private long[] counts = new long[INITIAL_NODES];
+	private long[] totalSizes = new long[INITIAL_NODES];
+	private long[] maxSizes = new long[INITIAL_NODES];
+	private long[] totalChildren = new long[INITIAL_NODES];
+	private int nodes = 1;
+
+	// (parent, tag) to child node, open addressing with linear probing
+	private long[] keys = new long[INITIAL_NODES * 2];
+	private int[] values = new int[INITIAL_NODES * 2];
+
+	// The open elements: their node, start offset and children so far
+	private int[] openNodes = new int[INITIAL_DEPTH];
+	private long[] openStarts = new long[INITIAL_DEPTH];
+	private long[] openChildren = new long[INITIAL_DEPTH];
+	private int depth = 0;
+
+	private long[] depthCounts = new long[INITIAL_DEPTH];
+	private long elements = 0;
+
+	/**
+	 * Creates statistics reading tag positions from the given tokenizer.
+	 *
+	 * @param tokenizer tokenizer producing the tag events.
+	 */
+	XMLPathStatistics(XMLTokenizer tokenizer) {
+		this.tokenizer = tokenizer;
+		firstChildren[0] = -1;
+		tags[0] = -1;
+		Arrays.fill(values, -1);
+	}
+
+	@Override
+	public void startTag(char[] name, int length, boolean selfClosing) {
+		int parent = depth == 0 ? 0 : openNodes[depth - 1];
+		int node = child(parent, symbols.intern(name, 0, length));
+		if (depth > 0) {
+			openChildren[depth - 1]++;
+		}
+		if (depth == depthCounts.length) {
+			depthCounts = Arrays.copyOf(depthCounts, depth * 2);
+		}
+		depthCounts[depth]++;
+		elements++;
+
+		if (selfClosing) {
+			close(node, tokenizer.getOffset() - tokenizer.getTagOffset(), 0);
+			return;
+		}
+		if (depth == openNodes.length) {
+			openNodes = Arrays.copyOf(openNodes, depth * 2);
+			openStarts = Arrays.copyOf(openStarts, depth * 2);
+			openChildren = Arrays.copyOf(openChildren, depth * 2);
+		}
+		openNodes[depth] = node;
+		openStarts[depth] = tokenizer.getTagOffset();
+		openChildren[depth] = 0;
+		depth++;
+	}
+
+	@Override
+	public void endTag(char[] name, int length) {
+		// Closes the innermost element, as the validator does, whatever its name
+		if (depth > 0) {
+			depth--;
+			close(openNodes[depth], tokenizer.getOffset() - openStarts[depth], openChildren[depth]);
+		}
+	}
+
+	private void close(int node, long size, long children) {
+		counts[node]++;
+		totalSizes[node] += size;
+		maxSizes[node] = Math.max(maxSizes[node], size);
+		totalChildren[node] += children;
+	}
+
+	/**
+	 * Returns the number of elements seen.
+	 *
+	 * @return the element count.
+	 */
+	public long getElementCount() {
+		return elements;
+	}
+
+	/**
+	 * Returns the number of distinct element paths seen.
+	 *
+	 * @return the path count.
+	 */
+	public int getPathCount() {
+		return nodes - 1;
+	}
+
+	/**
+	 * Returns the depth of the deepest element; the root element has depth 0.
+	 *
+	 * @return the greatest depth, or -1 if there were no elements.
+	 */
+	public int getMaxDepth() {
+		int max = depthCounts.length - 1;
+		while (max >= 0 && depthCounts[max] == 0) {
+			max--;
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the number of elements at the given depth.
+	 *
+	 * @param depth depth of the elements; the root element has depth 0.
+	 * @return the element count at that depth.
+	 */
+	public long getDepthCount(int depth) {
+		return depth >= 0 && depth < depthCounts.length ? depthCounts[depth] : 0;
+	}
+
+	/**
+	 * Returns the number of complete elements at the given path.
+	 *
+	 * @param path names of the elements from the root down, each preceded by '/'.
+	 * @return the element count, 0 if the path was never seen.
+	 */
+	public long getCount(String path) {
+		int node = find(path);
+		return node < 0 ? 0 : counts[node];
+	}
+
+	/**
+	 * Returns the total size of the complete elements at the given path, from
+	 * their start tags to their end tags.
+	 *
+	 * @param path names of the elements from the root down, each preceded by '/'.
+	 * @return the total size, 0 if the path was never seen.
+	 */
+	public long getTotalSize(String path) {
+		int node = find(path);
+		return node < 0 ? 0 : totalSizes[node];
+	}
+
+	/**
+	 * Returns the average number of child elements of the complete elements at
+	 * the given path.
+	 *
+	 * @param path names of the elements from the root down, each preceded by '/'.
+	 * @return the average fan-out, 0 if the path was never seen.
+	 */
+	public double getAverageFanOut(String path) {
+		int node = find(path);
+		return node < 0 || counts[node] == 0 ? 0 : (double) totalChildren[node] / counts[node];
+	}
+
+	/**
+	 * Prints the statistics: totals, the depth histogram and one line per path
+	 * in the order the paths first appeared.
+	 *
+	 * @param out destination of the report.
+	 */
+	public void print(PrintStream out) {
+		out.println("Elements: " + elements + ", distinct paths: " + getPathCount() + ", max depth: "
+				+ getMaxDepth());
+		out.println("Depth histogram:");
+		for (int i = 0; i <= getMaxDepth(); i++) {
+			out.println(String.format(Locale.ROOT, "%6d %12d", i, depthCounts[i]));
+		}
+		out.println(String.format(Locale.ROOT, "%12s %12s %12s %8s  %s", "Count", "Avg size", "Max size",
+				"Fan-out", "Path"));
+		printChildren(out, 0, new StringBuilder());
+	}
+
+	private void printChildren(PrintStream out, int parent, StringBuilder path) {
+		for (int node = firstChildren[parent]; node >= 0; node = nextSiblings[node]) {
+			int length = path.length();
+			path.append('/').append(symbols.nameOf(tags[node]));
+			long count = counts[node];
+			out.println(String.format(Locale.ROOT, "%12d %12.1f %12d %8.2f  %s", count,
+					count == 0 ? 0.0 : (double) totalSizes[node] / count, maxSizes[node],
+					count == 0 ? 0.0 : (double) totalChildren[node] / count, path));
+			printChildren(out, node, path);
+			path.setLength(length);
+		}
+	}
+
+	// The trie node under the given parent for the given tag, added if new
+	private int child(int parent, int tag) {
+		long key = (long) parent << 32 | tag;
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (values[slot] >= 0) {
+			if (keys[slot] == key) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		int node = nodes++;
+		if (node == tags.length) {
+			growNodes();
+		}
+		tags[node] = tag;
+		parents[node] = parent;
+		firstChildren[node] = -1;
+		nextSiblings[node] = -1;
+		if (firstChildren[parent] < 0) {
+			firstChildren[parent] = node;
+		} else {
+			nextSiblings[lastChildren[parent]] = node;
+		}
+		lastChildren[parent] = node;
+
+		keys[slot] = key;
+		values[slot] = node;
+		if (nodes * 2 > keys.length) {
+			rehash();
+		}
+		return node;
+	}
+
+	private int find(String path) {
+		if (!path.startsWith("/")) {
+			throw new IllegalArgumentException("Path must start with '/': " + path);
+		}
+		int node = 0;
+		for (String step : path.substring(1).split("/", -1)) {
+			int next = -1;
+			for (int child = firstChildren[node]; child >= 0; child = nextSiblings[child]) {
+				if (symbols.nameOf(tags[child]).equals(step)) {
+					next = child;
+					break;
+				}
+			}
+			if (next < 0) {
+				return -1;
+			}
+			node = next;
+		}
+		return node;
+	}
+
+	private void growNodes() {
+		int capacity = tags.length * 2;
+		tags = Arrays.copyOf(tags, capacity);
+		parents = Arrays.copyOf(parents, capacity);
+		firstChildren = Arrays.copyOf(firstChildren, capacity);
+		lastChildren = Arrays.copyOf(lastChildren, capacity);
+		nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+		counts = Arrays.copyOf(counts, capacity);
+		totalSizes = Arrays.copyOf(totalSizes, capacity);
+		maxSizes = Arrays.copyOf(maxSizes, capacity);
+		totalChildren = Arrays.copyOf(totalChildren, capacity);
+	}
+
+	private void rehash() {
+		keys = new long[keys.length * 2];
+		values = new int[keys.length];
+		Arrays.fill(values, -1);
+		int mask = keys.length - 1;
+		for (int node = 1; node < nodes; node++) {
+			long key = (long) parents[node] << 32 | tags[node];
+			int slot = hash(key) & mask;
+			while (values[slot] >= 0) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			values[slot] = node;
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
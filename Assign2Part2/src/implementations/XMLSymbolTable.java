@@ -0,0 +1,176 @@
+package implementations;
+
+/**
+ * Maps tag names to small integer IDs.
+ * <p>
+ * Names are looked up directly from a region of a char buffer: the hash is
+ * computed over the region and candidates are compared in place, so looking up
+ * a name that has been seen before allocates nothing. A String is created only
+ * the first time a name is seen. IDs are assigned densely from 0 in order of
+ * first appearance.
+ */
+public class XMLSymbolTable {
+
+	private static final int INITIAL_CAPACITY = 64; // must be a power of two
+
+	private int[] slots; // ID + 1 of the name in each slot, 0 when empty
+	private String[] names;
+	private int[] hashes;
+	private int size;
+
+	public XMLSymbolTable() {
+		slots = new int[INITIAL_CAPACITY];
+		names = new String[INITIAL_CAPACITY / 2];
+		hashes = new int[INITIAL_CAPACITY / 2];
+		size = 0;
+	}
+
+	/**
+	 * Returns the ID of the name held in the given region, adding the name if it
+	 * has not been seen before.
+	 *
+	 * @param chars  buffer holding the name.
+	 * @param offset index of the first character of the name.
+	 * @param length number of characters in the name.
+	 * @return the ID of the name.
+	 */
+	public int intern(char[] chars, int offset, int length) {
+		int hash = hash(chars, offset, length);
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+
+		while (slots[slot] != 0) {
+			int id = slots[slot] - 1;
+			if (hashes[id] == hash && equals(names[id], chars, offset, length)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		return add(new String(chars, offset, length), hash, slot);
+	}
+
+	/**
+	 * Returns the ID of the given name, adding the name if it has not been seen
+	 * before.
+	 *
+	 * @param name the name to look up.
+	 * @return the ID of the name.
+	 */
+	public int intern(String name) {
+		char[] chars = name.toCharArray();
+		return intern(chars, 0, chars.length);
+	}
+
+	/**
+	 * Returns the ID of the given name without adding it.
+	 *
+	 * @param name the name to look up.
+	 * @return the ID of the name, or -1 if it has not been seen.
+	 */
+	public int lookup(String name) {
+		char[] chars = name.toCharArray();
+		return lookup(chars, 0, chars.length);
+	}
+
+	/**
+	 * Returns the ID of the name held in the given region without adding it.
+	 *
+	 * @param chars  buffer holding the name.
+	 * @param offset index of the first character of the name.
+	 * @param length number of characters in the name.
+	 * @return the ID of the name, or -1 if it has not been seen.
+	 */
+	public int lookup(char[] chars, int offset, int length) {
+		int hash = hash(chars, offset, length);
+		int mask = slots.length - 1;
+		for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			int id = slots[slot] - 1;
+			if (hashes[id] == hash && equals(names[id], chars, offset, length)) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the name with the given ID.
+	 *
+	 * @param id an ID returned by {@link #intern(char[], int, int)}.
+	 * @return the name.
+	 * @throws IndexOutOfBoundsException if no name has the ID.
+	 */
+	public String nameOf(int id) throws IndexOutOfBoundsException {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("Invalid symbol ID.");
+		}
+		return names[id];
+	}
+
+	/**
+	 * Returns the number of distinct names seen.
+	 *
+	 * @return the number of IDs assigned.
+	 */
+	public int size() {
+		return size;
+	}
+
+	private int add(String name, int hash, int slot) {
+		int id = size++;
+		if (id == names.length) {
+			names = copyOf(names, names.length * 2);
+			int[] largerHashes = new int[hashes.length * 2];
+			System.arraycopy(hashes, 0, largerHashes, 0, id);
+			hashes = largerHashes;
+		}
+		names[id] = name;
+		hashes[id] = hash;
+		slots[slot] = id + 1;
+
+		// Keep the load factor at or below one half
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		return id;
+	}
+
+	private void rehash(int capacity) {
+		int[] larger = new int[capacity];
+		int mask = capacity - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = hashes[id] & mask;
+			while (larger[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			larger[slot] = id + 1;
+		}
+		slots = larger;
+	}
+
+	private static String[] copyOf(String[] array, int length) {
+		String[] copy = new String[length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+
+	private static int hash(char[] chars, int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean equals(String name, char[] chars, int offset, int length) {
+		if (name.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (name.charAt(i) != chars[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
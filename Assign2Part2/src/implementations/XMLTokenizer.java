@@ -0,0 +1,1201 @@
+package implementations;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import utilities.Diagnostic;
+import utilities.XMLTagHandler;
+
+/**
+ * A streaming XML tokenizer driven by an explicit state machine.
+ * <p>
+ * Input is scanned exactly once, one buffer at a time. The lexer state is kept
+ * in fields, so a tag, comment or quoted attribute value may span any number of
+ * buffer refills (and lines). Tag names are collected into a single reusable
+ * buffer and handed to an {@link XMLTagHandler}, so no String is created per
+ * tag.
+ * <p>
+ * Input may be supplied either as characters or as raw UTF-8 bytes. In byte
+ * mode markup is recognised directly on the ASCII delimiters and only tag names
+ * are decoded; a single tokenizer must not mix the two.
+ * <p>
+ * Attributes are checked as they are read: each needs a quoted value, a value
+ * may not contain '&lt;', and no name may appear twice in one tag. Problems are
+ * passed to
+ * {@link XMLTagHandler#attributeError(Diagnostic.Code, char[], int, char[], int)}
+ * before the tag itself. When namespace aware, the values of namespace
+ * declarations are kept as well, and the attributes of a start tag can be read
+ * through {@link #getAttributes()} while the handler is told of the tag.
+ */
+public class XMLTokenizer {
+
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/** Largest region mapped at once; files above this are mapped in windows. */
+	public static final long MAP_WINDOW_SIZE = 1L << 30;
+
+	/** Bytes of a mapped window scanned between checks for {@link #cancel()}. */
+	public static final int CANCEL_SLICE_SIZE = 1 << 20;
+
+	// Lexer states
+	private static final int TEXT = 0;
+	private static final int TAG_OPEN = 1; // after '<'
+	private static final int START_NAME = 2;
+	private static final int END_NAME = 3;
+	private static final int END_TRAIL = 4; // whitespace after an end tag name
+	private static final int ATTRIBUTES = 5; // inside a start tag, before an attribute name
+	private static final int DOUBLE_QUOTED = 6;
+	private static final int SINGLE_QUOTED = 7;
+	private static final int EMPTY_SLASH = 8; // '/' seen inside a start tag
+	private static final int PI = 9;
+	private static final int PI_QUESTION = 10;
+	private static final int BANG = 11; // after "<!"
+	private static final int BANG_DASH = 12; // after "<!-"
+	private static final int COMMENT = 13;
+	private static final int COMMENT_DASH = 14;
+	private static final int COMMENT_DASH_DASH = 15;
+	private static final int CDATA_OPEN = 16; // matching "CDATA[" after "<!["
+	private static final int CDATA = 17;
+	private static final int CDATA_BRACKET = 18;
+	private static final int CDATA_BRACKET_BRACKET = 19;
+	private static final int DECLARATION = 20; // <!DOCTYPE ...> and friends
+	private static final int ATTRIBUTE_NAME = 21;
+	private static final int AFTER_ATTRIBUTE_NAME = 22; // whitespace after an attribute name
+	private static final int BEFORE_VALUE = 23; // after '='
+	private static final int UNQUOTED = 24; // unquoted value, skipped after an error
+	private static final int UNQUOTED_SLASH = 25; // '/' in an unquoted value, maybe ending the tag
+	private static final int AFTER_VALUE = 26; // after the closing quote
+	private static final int KEPT_DOUBLE_QUOTED = 27; // a namespace declaration value, kept
+	private static final int KEPT_SINGLE_QUOTED = 28;
+
+	/**
+	 * Longest tag name kept in full. Longer names keep this many units followed
+	 * by a hash of the rest, so memory stays bounded whatever the input.
+	 */
+	public static final int MAX_NAME_LENGTH = 4096;
+
+	private static final String NAME_OVERFLOW_MARK = "\u2026#";
+
+	// A cut name with its mark and the 16 hex digits of its hash
+	private static final int MAX_MARKED_NAME_LENGTH = MAX_NAME_LENGTH + NAME_OVERFLOW_MARK.length() + 16;
+
+	// SWAR constants: a byte value repeated in each of the eight bytes of a long
+	private static final long ONE_BYTES = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	private static final long LESS_THAN_BYTES = ONE_BYTES * '<';
+	private static final long DOUBLE_QUOTE_BYTES = ONE_BYTES * '"';
+	private static final long SINGLE_QUOTE_BYTES = ONE_BYTES * '\'';
+	private static final long DASH_BYTES = ONE_BYTES * '-';
+	private static final long BRACKET_BYTES = ONE_BYTES * ']';
+	private static final long QUESTION_BYTES = ONE_BYTES * '?';
+	private static final long NEWLINE_BYTES = ONE_BYTES * '\n';
+	private static final long CARRIAGE_RETURN_BYTES = ONE_BYTES * '\r';
+
+	private static final char[] CDATA_KEYWORD = "[CDATA[".toCharArray();
+
+	private final XMLTagHandler handler;
+	private final char[] buffer;
+	private ByteBuffer byteBuffer;
+
+	private char[] name = new char[32];
+	private int nameLength;
+	private boolean nameHasHighBytes; // name holds undecoded UTF-8 bytes
+	private boolean nameOverflowed; // name is longer than MAX_NAME_LENGTH
+	private long nameOverflowHash; // hash of the units past MAX_NAME_LENGTH
+	private boolean byteMode;
+
+	private final XMLAttributeSet attributes = new XMLAttributeSet();
+	private boolean valueReported; // the current attribute value has been reported
+	private boolean namespaceAware;
+	private boolean verdictOnly; // attribute errors are passed without names
+
+	private int state = TEXT;
+	private boolean stopped;
+	private volatile boolean cancelled; // stop() from another thread
+	private int keywordIndex;
+	private int declarationDepth;
+
+	private long line = 1;
+	private long tagLine;
+	private long position; // offset of the next unit (byte or char) to be fed
+	private long lineStart; // offset of the first unit of the current line
+	private long carriageReturn = -2; // offset of the last '\r', to see CRLF as one line end
+	private long tagOffset;
+	private long tagLineStart;
+
+	/**
+	 * Creates a tokenizer that reports tags to the given handler.
+	 *
+	 * @param handler receiver of tag events.
+	 */
+	public XMLTokenizer(XMLTagHandler handler) {
+		this(handler, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a tokenizer with a read buffer of the given size.
+	 *
+	 * @param handler    receiver of tag events.
+	 * @param bufferSize number of characters read per refill.
+	 */
+	public XMLTokenizer(XMLTagHandler handler, int bufferSize) {
+		if (handler == null) {
+			throw new NullPointerException("Handler cannot be null.");
+		}
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size must be positive.");
+		}
+		this.handler = handler;
+		this.buffer = new char[bufferSize];
+	}
+
+	/**
+	 * Reads the whole of the given reader through the state machine.
+	 *
+	 * @param reader source of characters; it is not closed.
+	 * @throws IOException if reading fails.
+	 */
+	public void tokenize(Reader reader) throws IOException {
+		int read;
+		while (!stopped && (read = reader.read(buffer, 0, buffer.length)) != -1) {
+			feed(buffer, 0, read);
+		}
+	}
+
+	/**
+	 * Reads the whole of the given channel through the state machine as raw
+	 * UTF-8 bytes, using a read buffer of the size given at construction.
+	 *
+	 * @param channel source of bytes; it is not closed.
+	 * @throws IOException if reading fails.
+	 */
+	public void tokenize(ReadableByteChannel channel) throws IOException {
+		if (byteBuffer == null) {
+			byteBuffer = ByteBuffer.allocate(buffer.length);
+		}
+		byteBuffer.clear();
+		while (!stopped && channel.read(byteBuffer) != -1) {
+			byteBuffer.flip();
+			feed(byteBuffer);
+			byteBuffer.clear();
+		}
+	}
+
+	/**
+	 * Reads the whole of the given file channel through the state machine by
+	 * memory-mapping it, one window of at most {@link #MAP_WINDOW_SIZE} bytes at a
+	 * time. The bytes are scanned without charset decoding.
+	 *
+	 * @param channel open channel positioned anywhere; it is not closed.
+	 * @throws IOException if mapping fails.
+	 */
+	public void tokenizeMapped(FileChannel channel) throws IOException {
+		tokenizeMapped(channel, 0, channel.size());
+	}
+
+	/**
+	 * Reads a byte range of the given file channel through the state machine by
+	 * memory-mapping it in windows of at most {@link #MAP_WINDOW_SIZE} bytes.
+	 *
+	 * @param channel  open channel; it is not closed.
+	 * @param position offset of the first byte to scan.
+	 * @param length   number of bytes to scan.
+	 * @throws IOException if mapping fails.
+	 */
+	public void tokenizeMapped(FileChannel channel, long position, long length) throws IOException {
+		long end = position + length;
+		for (long start = position; start < end && !isCancelled(); start += MAP_WINDOW_SIZE) {
+			int windowSize = (int) Math.min(MAP_WINDOW_SIZE, end - start);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, windowSize);
+			// Fed in slices, so that cancel() is noticed without a check per byte
+			for (int slice = 0; slice < windowSize && !isCancelled(); slice += CANCEL_SLICE_SIZE) {
+				window.limit((int) Math.min((long) slice + CANCEL_SLICE_SIZE, windowSize));
+				feed(window);
+			}
+		}
+	}
+
+	/**
+	 * Runs the remaining bytes of a buffer through the state machine. The bytes
+	 * are taken to be UTF-8 (or any ASCII-compatible encoding of the markup);
+	 * the buffer's position is advanced to its limit, or to just past the tag
+	 * that caused scanning to stop.
+	 *
+	 * @param bytes bytes to scan.
+	 */
+	public void feed(ByteBuffer bytes) {
+		int end = bytes.limit();
+		int i = bytes.position();
+		long base = position - i; // offset of index 0
+		byteMode = true;
+
+		boolean bigEndian = bytes.order() == ByteOrder.BIG_ENDIAN;
+
+		while (i < end && !stopped) {
+			long delimiter = delimiterOf(state);
+			if (delimiter != 0) {
+				// Skip everything up to the only byte that can change the state
+				if (state == DOUBLE_QUOTED || state == SINGLE_QUOTED) {
+					i = skipQuoted(bytes, i, end, delimiter, bigEndian, base);
+				} else {
+					i = skip(bytes, i, end, delimiter, bigEndian, base);
+				}
+				if (i == end) {
+					break;
+				}
+				if (state == TEXT) {
+					markTag(base + i);
+					i++;
+					continue;
+				}
+			}
+
+			int b = bytes.get(i) & 0xFF;
+			if (b <= '\r') {
+				lineBreak((char) b, base + i);
+			}
+			i++;
+			position = base + i; // so a handler sees where its tag ends
+			consume((char) b);
+		}
+		position = base + i;
+		bytes.position(i);
+	}
+
+	/**
+	 * Returns the delimiter byte repeated in every byte of a long, for the states
+	 * that ignore every byte but that one; 0 for the other states.
+	 */
+	private static long delimiterOf(int state) {
+		switch (state) {
+		case TEXT:
+			return LESS_THAN_BYTES;
+		case DOUBLE_QUOTED:
+			return DOUBLE_QUOTE_BYTES;
+		case SINGLE_QUOTED:
+			return SINGLE_QUOTE_BYTES;
+		case COMMENT:
+			return DASH_BYTES;
+		case CDATA:
+			return BRACKET_BYTES;
+		case PI:
+			return QUESTION_BYTES;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns the index of the first byte at or after i equal to the delimiter,
+	 * or end if there is none, counting the line ends passed on the way. Bytes
+	 * are examined eight at a time: the SWAR test below marks the high bit of
+	 * every zero byte of x, and the lowest marked byte is always a real match
+	 * (a borrow can only mark bytes above it), which is the one wanted once the
+	 * word is read least significant byte first.
+	 */
+	private int skip(ByteBuffer bytes, int i, int end, long delimiter, boolean bigEndian, long base) {
+		while (i + 8 <= end) {
+			long word = bytes.getLong(i);
+			if (bigEndian) {
+				word = Long.reverseBytes(word);
+			}
+			long found = zeroBytes(word ^ delimiter) | zeroBytes(word ^ NEWLINE_BYTES)
+					| zeroBytes(word ^ CARRIAGE_RETURN_BYTES);
+			if (found == 0) {
+				i += 8;
+				continue;
+			}
+			i += Long.numberOfTrailingZeros(found) >>> 3;
+			byte b = bytes.get(i);
+			if (b != (byte) delimiter) {
+				lineBreak((char) b, base + i);
+				i++;
+				continue;
+			}
+			return i;
+		}
+		for (; i < end; i++) {
+			byte b = bytes.get(i);
+			if (b == (byte) delimiter) {
+				return i;
+			}
+			if (b <= '\r' && b >= 0) {
+				lineBreak((char) b, base + i);
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Does the same as {@link #skip} inside a quoted attribute value, which also
+	 * stops at '&lt;' as values may not contain it. Kept apart so the loop for
+	 * character data does not pay for the extra test.
+	 */
+	private int skipQuoted(ByteBuffer bytes, int i, int end, long delimiter, boolean bigEndian, long base) {
+		while (i + 8 <= end) {
+			long word = bytes.getLong(i);
+			if (bigEndian) {
+				word = Long.reverseBytes(word);
+			}
+			long found = zeroBytes(word ^ delimiter) | zeroBytes(word ^ LESS_THAN_BYTES)
+					| zeroBytes(word ^ NEWLINE_BYTES) | zeroBytes(word ^ CARRIAGE_RETURN_BYTES);
+			if (found == 0) {
+				i += 8;
+				continue;
+			}
+			i += Long.numberOfTrailingZeros(found) >>> 3;
+			byte b = bytes.get(i);
+			if (b != (byte) delimiter && b != '<') {
+				lineBreak((char) b, base + i);
+				i++;
+				continue;
+			}
+			return i;
+		}
+		for (; i < end; i++) {
+			byte b = bytes.get(i);
+			if (b == (byte) delimiter || b == '<') {
+				return i;
+			}
+			if (b <= '\r' && b >= 0) {
+				lineBreak((char) b, base + i);
+			}
+		}
+		return end;
+	}
+
+	private static long zeroBytes(long x) {
+		return (x - ONE_BYTES) & ~x & HIGH_BITS;
+	}
+
+	/**
+	 * Runs a block of characters through the state machine. The block may end in
+	 * the middle of any construct; scanning resumes there on the next call.
+	 *
+	 * @param chars  characters to scan.
+	 * @param offset index of the first character.
+	 * @param length number of characters to scan.
+	 */
+	public void feed(char[] chars, int offset, int length) {
+		int end = offset + length;
+		int i = offset;
+		long base = position - offset; // offset of index 0
+
+		while (i < end && !stopped) {
+			if (state == TEXT) {
+				// Fast path: skip character data up to the next markup
+				while (i < end) {
+					char c = chars[i];
+					if (c == '<') {
+						break;
+					}
+					if (c <= '\r') {
+						lineBreak(c, base + i);
+					}
+					i++;
+				}
+				if (i == end) {
+					break;
+				}
+				markTag(base + i);
+				i++;
+				continue;
+			}
+
+			char c = chars[i];
+			if (c <= '\r') {
+				lineBreak(c, base + i);
+			}
+			i++;
+			position = base + i;
+			consume(c);
+		}
+		position = base + i;
+	}
+
+	/**
+	 * Counts a line end at the given offset. '\n', '\r' and "\r\n" each end a
+	 * line, as for {@link java.io.BufferedReader#readLine()}.
+	 */
+	private void lineBreak(char c, long offset) {
+		if (c == '\n') {
+			if (offset - 1 != carriageReturn) {
+				line++;
+			}
+		} else if (c == '\r') {
+			line++;
+			carriageReturn = offset;
+		} else {
+			return;
+		}
+		lineStart = offset + 1;
+	}
+
+	private void markTag(long offset) {
+		tagLine = line;
+		tagOffset = offset;
+		tagLineStart = lineStart;
+		state = TAG_OPEN;
+	}
+
+	/**
+	 * Stops scanning. The tokenizer returns from the current feed as soon as the
+	 * handler call in progress returns, ignores any further input, and the bulk
+	 * read methods stop reading.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Stops a scan by {@link #tokenizeMapped(FileChannel, long, long)} running on
+	 * another thread. It returns within {@link #CANCEL_SLICE_SIZE} bytes, and
+	 * does nothing if it has not started yet.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	private boolean isCancelled() {
+		if (cancelled) {
+			stopped = true;
+		}
+		return stopped;
+	}
+
+	/**
+	 * Returns <code>true</code> if {@link #stop()} has been called.
+	 *
+	 * @return <code>true</code> if scanning has been stopped.
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Returns <code>true</code> if the input has been fed as bytes, so that
+	 * offsets count bytes rather than chars.
+	 *
+	 * @return <code>true</code> in byte mode.
+	 */
+	public boolean isByteMode() {
+		return byteMode;
+	}
+
+	/**
+	 * Passes attribute errors to the handler without decoding or copying the
+	 * attribute name, for a handler that builds no messages.
+	 */
+	void setVerdictOnly(boolean verdictOnly) {
+		this.verdictOnly = verdictOnly;
+	}
+
+	/**
+	 * Keeps the values of namespace declarations, for a handler that reads them
+	 * through {@link #getAttributes()}.
+	 */
+	void setNamespaceAware(boolean namespaceAware) {
+		this.namespaceAware = namespaceAware;
+	}
+
+	/**
+	 * Returns the attributes of the start tag being read. While the handler is
+	 * told of a start tag they hold its attributes, decoded, with the values of
+	 * namespace declarations if namespace aware.
+	 */
+	XMLAttributeSet getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Returns <code>true</code> if the input seen so far ends inside markup (an
+	 * unterminated tag, comment, CDATA section or declaration).
+	 *
+	 * @return <code>true</code> if the tokenizer is not in character data.
+	 */
+	public boolean isInMarkup() {
+		return state != TEXT;
+	}
+
+	/**
+	 * Returns the line on which the most recent tag started.
+	 *
+	 * @return 1-based line number of the last '&lt;'.
+	 */
+	public long getTagLine() {
+		return tagLine;
+	}
+
+	/**
+	 * Returns the column at which the most recent tag started. In byte mode
+	 * columns count bytes rather than characters.
+	 *
+	 * @return 1-based column of the last '&lt;'.
+	 */
+	public long getTagColumn() {
+		return tagOffset - tagLineStart + 1;
+	}
+
+	/**
+	 * Returns the offset at which the most recent tag started: a byte offset in
+	 * byte mode, a char offset otherwise.
+	 *
+	 * @return 0-based offset of the last '&lt;'.
+	 */
+	public long getTagOffset() {
+		return tagOffset;
+	}
+
+	/**
+	 * Returns the offset of the next unit to be fed. During a tag event this is
+	 * the offset just past the tag's closing '&gt;'.
+	 *
+	 * @return number of units consumed, plus any offset set through
+	 *         {@link #setOffset(long)}.
+	 */
+	public long getOffset() {
+		return position;
+	}
+
+	/**
+	 * Returns the offset at which the current line starts.
+	 *
+	 * @return 0-based offset of the first unit of the current line.
+	 */
+	public long getLineStart() {
+		return lineStart;
+	}
+
+	/**
+	 * Returns the current line of the scanner.
+	 *
+	 * @return 1-based line number.
+	 */
+	public long getLine() {
+		return line;
+	}
+
+	/**
+	 * Renumbers the current line, for input that continues a document from
+	 * somewhere other than its start. The start line of a tag in progress is
+	 * shifted by the same amount.
+	 *
+	 * @param line 1-based line number of the next character.
+	 */
+	public void setLine(long line) {
+		tagLine += line - this.line;
+		this.line = line;
+	}
+
+	/**
+	 * Renumbers offsets so that the next unit fed has the given offset. The
+	 * offsets of the current line and of a tag in progress are shifted by the
+	 * same amount.
+	 *
+	 * @param offset 0-based offset of the next unit.
+	 */
+	public void setOffset(long offset) {
+		long delta = offset - position;
+		position += delta;
+		lineStart += delta;
+		carriageReturn += delta;
+		tagOffset += delta;
+		tagLineStart += delta;
+	}
+
+	/**
+	 * Sets the offset at which the current line started, for input that
+	 * continues a line begun before the first unit this tokenizer saw.
+	 *
+	 * @param offset 0-based offset of the first unit of the current line.
+	 */
+	public void setLineStart(long offset) {
+		if (tagLineStart == lineStart) {
+			tagLineStart = offset;
+		}
+		lineStart = offset;
+	}
+
+	/**
+	 * Copies the complete lexer state (including any partially read tag name and
+	 * the current position) of another tokenizer, so that this tokenizer continues
+	 * the input exactly where the other one stopped.
+	 *
+	 * @param other tokenizer whose state is copied.
+	 */
+	public void copyState(XMLTokenizer other) {
+		if (name.length < other.nameLength) {
+			name = new char[other.name.length];
+		}
+		System.arraycopy(other.name, 0, name, 0, other.nameLength);
+		nameLength = other.nameLength;
+		nameHasHighBytes = other.nameHasHighBytes;
+		nameOverflowed = other.nameOverflowed;
+		nameOverflowHash = other.nameOverflowHash;
+		byteMode = other.byteMode;
+		state = other.state;
+		keywordIndex = other.keywordIndex;
+		declarationDepth = other.declarationDepth;
+		line = other.line;
+		tagLine = other.tagLine;
+		position = other.position;
+		lineStart = other.lineStart;
+		carriageReturn = other.carriageReturn;
+		tagOffset = other.tagOffset;
+		tagLineStart = other.tagLineStart;
+		attributes.copyState(other.attributes);
+		valueReported = other.valueReported;
+	}
+
+	/**
+	 * Writes the complete lexer state, as copied by
+	 * {@link #copyState(XMLTokenizer)}, so that a later run can continue the
+	 * input with {@link #readState(DataInput)}.
+	 *
+	 * @param out destination of the state.
+	 * @throws IOException if writing fails.
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeBoolean(byteMode);
+		out.writeInt(state);
+		out.writeInt(keywordIndex);
+		out.writeInt(declarationDepth);
+		out.writeBoolean(nameHasHighBytes);
+		out.writeBoolean(nameOverflowed);
+		out.writeLong(nameOverflowHash);
+		out.writeInt(nameLength);
+		for (int i = 0; i < nameLength; i++) {
+			out.writeChar(name[i]);
+		}
+		out.writeLong(line);
+		out.writeLong(tagLine);
+		out.writeLong(position);
+		out.writeLong(lineStart);
+		out.writeLong(carriageReturn);
+		out.writeLong(tagOffset);
+		out.writeLong(tagLineStart);
+		attributes.writeState(out);
+		out.writeBoolean(valueReported);
+	}
+
+	/**
+	 * Restores a lexer state written by {@link #writeState(DataOutput)}.
+	 *
+	 * @param in source of the state.
+	 * @throws IOException if reading fails or the state is not valid.
+	 */
+	public void readState(DataInput in) throws IOException {
+		byteMode = in.readBoolean();
+		state = in.readInt();
+		keywordIndex = in.readInt();
+		declarationDepth = in.readInt();
+		nameHasHighBytes = in.readBoolean();
+		nameOverflowed = in.readBoolean();
+		nameOverflowHash = in.readLong();
+		int length = in.readInt();
+		// A name still being read is cut at MAX_NAME_LENGTH; a finished one may carry its mark
+		if (state < TEXT || state > KEPT_SINGLE_QUOTED || length < 0 || length > MAX_MARKED_NAME_LENGTH
+				|| nameOverflowed && length != MAX_NAME_LENGTH || keywordIndex < 0
+				|| keywordIndex > CDATA_KEYWORD.length) {
+			throw new IOException("Invalid tokenizer state");
+		}
+		if (name.length < length) {
+			name = new char[length];
+		}
+		for (int i = 0; i < length; i++) {
+			name[i] = in.readChar();
+		}
+		nameLength = length;
+		line = in.readLong();
+		tagLine = in.readLong();
+		position = in.readLong();
+		lineStart = in.readLong();
+		carriageReturn = in.readLong();
+		tagOffset = in.readLong();
+		tagLineStart = in.readLong();
+		attributes.readState(in);
+		valueReported = in.readBoolean();
+	}
+
+	private void consume(char c) {
+		switch (state) {
+		case TAG_OPEN:
+			if (c == '/') {
+				clearName();
+				state = END_NAME;
+			} else if (c == '?') {
+				state = PI;
+			} else if (c == '!') {
+				state = BANG;
+			} else if (c == '>') {
+				clearName();
+				emitStart(false);
+			} else if (!isWhitespace(c)) {
+				clearName();
+				appendName(c);
+				state = START_NAME;
+			}
+			break;
+
+		case START_NAME:
+			if (c == '>') {
+				emitStart(false);
+			} else if (c == '/') {
+				state = EMPTY_SLASH;
+			} else if (isWhitespace(c)) {
+				state = ATTRIBUTES;
+			} else {
+				appendName(c);
+			}
+			break;
+
+		case ATTRIBUTES:
+			if (c == '>') {
+				emitStart(false);
+			} else if (c == '/') {
+				state = EMPTY_SLASH;
+			} else if (c == '=' || c == '"' || c == '\'' || c == '<') {
+				attributeError(Diagnostic.Code.MALFORMED_ATTRIBUTE);
+				skipValue(c);
+			} else if (!isWhitespace(c)) {
+				attributes.startName();
+				attributes.append(c);
+				state = ATTRIBUTE_NAME;
+			}
+			break;
+
+		case ATTRIBUTE_NAME:
+			if (c == '=') {
+				addAttribute();
+				state = BEFORE_VALUE;
+			} else if (isWhitespace(c)) {
+				state = AFTER_ATTRIBUTE_NAME;
+			} else if (c == '>' || c == '/' || c == '"' || c == '\'' || c == '<') {
+				addAttribute();
+				attributeError(Diagnostic.Code.MISSING_ATTRIBUTE_VALUE);
+				skipValue(c);
+			} else {
+				attributes.append(c);
+			}
+			break;
+
+		case AFTER_ATTRIBUTE_NAME:
+			if (c == '=') {
+				addAttribute();
+				state = BEFORE_VALUE;
+			} else if (!isWhitespace(c)) {
+				addAttribute();
+				attributeError(Diagnostic.Code.MISSING_ATTRIBUTE_VALUE);
+				skipValue(c);
+			}
+			break;
+
+		case BEFORE_VALUE:
+			if ((c == '"' || c == '\'') && namespaceAware && attributes.isNamespaceDeclaration()) {
+				attributes.keepValue();
+				valueReported = false;
+				state = c == '"' ? KEPT_DOUBLE_QUOTED : KEPT_SINGLE_QUOTED;
+			} else if (c == '"' || c == '\'') {
+				skipValue(c);
+			} else if (c == '>') {
+				attributeError(Diagnostic.Code.MISSING_ATTRIBUTE_VALUE);
+				emitStart(false);
+			} else if (!isWhitespace(c)) {
+				attributeError(Diagnostic.Code.UNQUOTED_ATTRIBUTE_VALUE);
+				state = c == '/' ? UNQUOTED_SLASH : UNQUOTED;
+			}
+			break;
+
+		case DOUBLE_QUOTED:
+			if (c == '"') {
+				state = AFTER_VALUE;
+			} else if (c == '<') {
+				valueError();
+			}
+			break;
+
+		case SINGLE_QUOTED:
+			if (c == '\'') {
+				state = AFTER_VALUE;
+			} else if (c == '<') {
+				valueError();
+			}
+			break;
+
+		case KEPT_DOUBLE_QUOTED:
+		case KEPT_SINGLE_QUOTED:
+			if (c == (state == KEPT_DOUBLE_QUOTED ? '"' : '\'')) {
+				state = AFTER_VALUE;
+			} else {
+				if (c == '<') {
+					valueError();
+				}
+				attributes.appendValue(c);
+			}
+			break;
+
+		case AFTER_VALUE:
+			if (isWhitespace(c)) {
+				state = ATTRIBUTES;
+			} else if (c == '>') {
+				emitStart(false);
+			} else if (c == '/') {
+				state = EMPTY_SLASH;
+			} else {
+				// Attributes must be separated by whitespace
+				attributeError(Diagnostic.Code.MALFORMED_ATTRIBUTE);
+				state = ATTRIBUTES;
+				consume(c);
+			}
+			break;
+
+		case UNQUOTED:
+			if (isWhitespace(c)) {
+				state = ATTRIBUTES;
+			} else if (c == '>') {
+				emitStart(false);
+			} else if (c == '/') {
+				state = UNQUOTED_SLASH;
+			}
+			break;
+
+		case UNQUOTED_SLASH:
+			if (c == '>') {
+				emitStart(true);
+			} else if (isWhitespace(c)) {
+				state = ATTRIBUTES;
+			} else if (c != '/') {
+				state = UNQUOTED;
+			}
+			break;
+
+		case EMPTY_SLASH:
+			if (c == '>') {
+				emitStart(true);
+			} else {
+				attributeError(Diagnostic.Code.MALFORMED_ATTRIBUTE);
+				state = ATTRIBUTES;
+				consume(c);
+			}
+			break;
+
+		case END_NAME:
+			if (c == '>') {
+				emitEnd();
+			} else if (isWhitespace(c)) {
+				if (nameLength > 0) {
+					state = END_TRAIL;
+				}
+			} else {
+				appendName(c);
+			}
+			break;
+
+		case END_TRAIL:
+			if (c == '>') {
+				emitEnd();
+			}
+			break;
+
+		case PI:
+			if (c == '?') {
+				state = PI_QUESTION;
+			}
+			break;
+
+		case PI_QUESTION:
+			if (c == '>') {
+				state = TEXT;
+			} else if (c != '?') {
+				state = PI;
+			}
+			break;
+
+		case BANG:
+			if (c == '-') {
+				state = BANG_DASH;
+			} else if (c == '[') {
+				keywordIndex = 1;
+				state = CDATA_OPEN;
+			} else {
+				declarationDepth = 0;
+				state = DECLARATION;
+				consume(c);
+			}
+			break;
+
+		case BANG_DASH:
+			if (c == '-') {
+				state = COMMENT;
+			} else {
+				declarationDepth = 0;
+				state = DECLARATION;
+				consume(c);
+			}
+			break;
+
+		case COMMENT:
+			if (c == '-') {
+				state = COMMENT_DASH;
+			}
+			break;
+
+		case COMMENT_DASH:
+			state = c == '-' ? COMMENT_DASH_DASH : COMMENT;
+			break;
+
+		case COMMENT_DASH_DASH:
+			if (c == '>') {
+				state = TEXT;
+			} else if (c != '-') {
+				state = COMMENT;
+			}
+			break;
+
+		case CDATA_OPEN:
+			if (c == CDATA_KEYWORD[keywordIndex]) {
+				keywordIndex++;
+				if (keywordIndex == CDATA_KEYWORD.length) {
+					state = CDATA;
+				}
+			} else {
+				declarationDepth = 1; // the '[' already consumed
+				state = DECLARATION;
+				consume(c);
+			}
+			break;
+
+		case CDATA:
+			if (c == ']') {
+				state = CDATA_BRACKET;
+			}
+			break;
+
+		case CDATA_BRACKET:
+			state = c == ']' ? CDATA_BRACKET_BRACKET : CDATA;
+			break;
+
+		case CDATA_BRACKET_BRACKET:
+			if (c == '>') {
+				state = TEXT;
+			} else if (c != ']') {
+				state = CDATA;
+			}
+			break;
+
+		case DECLARATION:
+			// Internal DTD subsets are bracketed and may contain '>'
+			if (c == '[') {
+				declarationDepth++;
+			} else if (c == ']') {
+				declarationDepth--;
+			} else if (c == '>' && declarationDepth <= 0) {
+				state = TEXT;
+			}
+			break;
+
+		default:
+			throw new IllegalStateException("Unknown lexer state " + state);
+		}
+	}
+
+	private void emitStart(boolean selfClosing) {
+		state = TEXT;
+		decodeName();
+		markOverflow();
+		if (namespaceAware && byteMode) {
+			attributes.decode();
+		}
+		handler.startTag(name, nameLength, selfClosing);
+		attributes.clear();
+	}
+
+	private void addAttribute() {
+		if (!attributes.add()) {
+			attributeError(Diagnostic.Code.DUPLICATE_ATTRIBUTE);
+		}
+	}
+
+	/**
+	 * Carries on after an attribute error at the given char: a quote starts a
+	 * value, which is skipped, and anything else is read between attributes.
+	 */
+	private void skipValue(char c) {
+		if (c == '"') {
+			valueReported = false;
+			state = DOUBLE_QUOTED;
+		} else if (c == '\'') {
+			valueReported = false;
+			state = SINGLE_QUOTED;
+		} else if (c == '=') {
+			state = BEFORE_VALUE;
+		} else {
+			state = ATTRIBUTES;
+			if (c != '<') {
+				consume(c);
+			}
+		}
+	}
+
+	// Reports a '<' in a quoted value once, as the quote is most likely unclosed
+	private void valueError() {
+		if (!valueReported) {
+			valueReported = true;
+			attributeError(Diagnostic.Code.UNTERMINATED_ATTRIBUTE_VALUE);
+		}
+	}
+
+	/**
+	 * Reports a problem with the attributes of the start tag being read, naming
+	 * the last attribute read. This is the error path, so the names are decoded
+	 * here rather than as they are read.
+	 */
+	private void attributeError(Diagnostic.Code code) {
+		if (verdictOnly) {
+			handler.attributeError(code, name, 0, null, 0);
+			return;
+		}
+		decodeName();
+		markOverflow();
+		int offset = attributes.getNameOffset();
+		char[] attribute = Arrays.copyOfRange(attributes.getName(), offset, offset + attributes.getNameLength());
+		int length = byteMode ? decode(attribute, 0, attribute.length) : attribute.length;
+		handler.attributeError(code, name, nameLength, attribute, length);
+	}
+
+	/**
+	 * Reports an attribute value left open at the end of the input, unless a
+	 * '&lt;' in it was already reported. Called once no more input will be fed.
+	 */
+	public void finish() {
+		if (!stopped && (state == DOUBLE_QUOTED || state == SINGLE_QUOTED || state == KEPT_DOUBLE_QUOTED
+				|| state == KEPT_SINGLE_QUOTED)) {
+			valueError();
+		}
+	}
+
+	private void emitEnd() {
+		state = TEXT;
+		decodeName();
+		markOverflow();
+		handler.endTag(name, nameLength);
+	}
+
+	/**
+	 * Decodes a name collected in byte mode from UTF-8 in place. Decoding never
+	 * produces more chars than there were bytes, so the write index cannot
+	 * overtake the read index.
+	 */
+	private void decodeName() {
+		if (!nameHasHighBytes) {
+			return;
+		}
+		nameHasHighBytes = false;
+		nameLength = decode(name, 0, nameLength);
+	}
+
+	/**
+	 * Decodes the UTF-8 bytes held one per char in a region of a buffer, in
+	 * place, and returns the number of chars they decode to.
+	 */
+	static int decode(char[] name, int offset, int length) {
+		int nameLength = offset + length;
+		int out = offset;
+		int i = offset;
+		while (i < nameLength) {
+			int b = name[i];
+			int extra;
+			int codePoint;
+			if (b < 0x80) {
+				name[out++] = (char) b;
+				i++;
+				continue;
+			} else if (b >= 0xF0 && b < 0xF8) {
+				extra = 3;
+				codePoint = b & 0x07;
+			} else if (b >= 0xE0) {
+				extra = 2;
+				codePoint = b & 0x0F;
+			} else if (b >= 0xC0) {
+				extra = 1;
+				codePoint = b & 0x1F;
+			} else {
+				extra = -1;
+				codePoint = 0;
+			}
+
+			i++;
+			for (int k = 0; k < extra; k++) {
+				if (i >= nameLength || (name[i] & 0xC0) != 0x80) {
+					extra = -1;
+					break;
+				}
+				codePoint = (codePoint << 6) | (name[i++] & 0x3F);
+			}
+
+			if (extra < 0 || codePoint > Character.MAX_CODE_POINT) {
+				name[out++] = '\uFFFD';
+			} else if (Character.isSupplementaryCodePoint(codePoint)) {
+				name[out++] = Character.highSurrogate(codePoint);
+				name[out++] = Character.lowSurrogate(codePoint);
+			} else {
+				name[out++] = (char) codePoint;
+			}
+		}
+		return out - offset;
+	}
+
+	private void clearName() {
+		nameLength = 0;
+		nameHasHighBytes = false;
+		nameOverflowed = false;
+		nameOverflowHash = 0;
+	}
+
+	private void appendName(char c) {
+		if (nameLength == MAX_NAME_LENGTH) {
+			nameOverflowed = true;
+			nameOverflowHash = (nameOverflowHash ^ c) * 0x100000001b3L;
+			return;
+		}
+		if (nameLength == name.length) {
+			char[] larger = new char[Math.min(name.length * 2, MAX_MARKED_NAME_LENGTH)];
+			System.arraycopy(name, 0, larger, 0, nameLength);
+			name = larger;
+		}
+		name[nameLength++] = c;
+		if (byteMode && c >= 0x80) {
+			nameHasHighBytes = true;
+		}
+	}
+
+	// Appends the overflow mark and hash to a name cut at MAX_NAME_LENGTH
+	private void markOverflow() {
+		if (!nameOverflowed) {
+			return;
+		}
+		nameOverflowed = false;
+		if (name.length < MAX_MARKED_NAME_LENGTH) {
+			char[] larger = new char[MAX_MARKED_NAME_LENGTH];
+			System.arraycopy(name, 0, larger, 0, nameLength);
+			name = larger;
+		}
+		NAME_OVERFLOW_MARK.getChars(0, NAME_OVERFLOW_MARK.length(), name, nameLength);
+		nameLength += NAME_OVERFLOW_MARK.length();
+		for (int shift = 60; shift >= 0; shift -= 4) {
+			name[nameLength++] = Character.forDigit((int) (nameOverflowHash >>> shift) & 0xF, 16);
+		}
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+}
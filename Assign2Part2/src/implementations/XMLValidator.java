@@ -0,0 +1,493 @@
+package implementations;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import utilities.Diagnostic;
+import utilities.DiagnosticSink;
+import utilities.XMLTagHandler;
+
+/**
+ * An embeddable, push-style XML well-formedness validator.
+ * <p>
+ * Input is handed over in pieces as it becomes available, through
+ * {@link #feed(ByteBuffer)} or {@link #feed(char[], int, int)}, and
+ * {@link #finish()} is called once the document is complete. The lexer state
+ * and the tag stack are kept between calls, so a piece may end anywhere, and a
+ * caller can stop reading as soon as {@link #isWellFormed()} turns false.
+ * Bytes are read as UTF-8; a validator must be fed either bytes or chars, not
+ * both. Problems are delivered as {@link Diagnostic}s to a
+ * {@link DiagnosticSink}. Optional {@link ContentRules} also check which
+ * children each element may contain, and namespace-aware validation checks
+ * that every prefix used is bound.
+ */
+public class XMLValidator implements XMLTagHandler {
+
+	private final XMLSymbolTable symbols = new XMLSymbolTable();
+	private final MyIntStack stack = new MyIntStack();
+	private final XMLTokenizer tokenizer = new XMLTokenizer(this);
+	private static final int XMLNS_LENGTH = "xmlns".length();
+
+	private final DiagnosticSink sink;
+	private XMLTagHandler observer = null;
+
+	// With content rules, the automaton state of each open element, -1 if unchecked
+	private ContentRules rules = null;
+	private final MyIntStack states = new MyIntStack();
+	private int[] ruleSymbols = new int[0]; // tag ID to rule symbol + 1, 0 if not looked up yet
+
+	private XMLNamespaceStack namespaces = null; // null unless namespace aware
+
+	private boolean hasRoot = false;
+	private boolean rootClosed = false;
+	private boolean finished = false;
+	private boolean verdictOnly = false;
+	private long stopAfter = Long.MAX_VALUE;
+	private long errors = 0;
+
+	/**
+	 * Creates a validator that prints its messages to the given stream through a
+	 * {@link BufferedDiagnosticSink}.
+	 *
+	 * @param out destination of the validation messages.
+	 */
+	public XMLValidator(PrintStream out) {
+		this(new BufferedDiagnosticSink(out));
+	}
+
+	/**
+	 * Creates a validator that delivers its diagnostics to the given sink.
+	 *
+	 * @param sink receiver of the diagnostics.
+	 */
+	public XMLValidator(DiagnosticSink sink) {
+		this(sink, new MyStack<String>(), false, false, 0);
+	}
+
+	/**
+	 * Creates a validator that continues a document part way through, with the
+	 * given open tags, root state and number of errors already reported.
+	 */
+	XMLValidator(DiagnosticSink sink, MyStack<String> openTags, boolean hasRoot, boolean rootClosed, long errors) {
+		if (sink == null) {
+			throw new NullPointerException("Sink cannot be null.");
+		}
+		this.sink = sink;
+		// MyStack.toArray lists the top first
+		Object[] open = openTags.toArray();
+		for (int i = open.length - 1; i >= 0; i--) {
+			stack.push(symbols.intern((String) open[i]));
+		}
+		this.hasRoot = hasRoot;
+		this.rootClosed = rootClosed;
+		this.errors = errors;
+	}
+
+	/**
+	 * Stops validating once the given number of errors has been found. Any
+	 * further input is ignored, and the verdict is given without listing the
+	 * tags that were still open. A limit of 1 rejects a document at its first
+	 * error.
+	 *
+	 * @param errors number of errors after which to stop.
+	 * @throws IllegalArgumentException if the limit is not positive.
+	 */
+	public void setStopAfter(long errors) throws IllegalArgumentException {
+		if (errors <= 0) {
+			throw new IllegalArgumentException("Error limit must be positive.");
+		}
+		stopAfter = errors;
+	}
+
+	/**
+	 * Selects verdict-only validation: the first error stops validation and no
+	 * diagnostic is built or delivered; the sink only receives the verdict.
+	 *
+	 * @param verdictOnly <code>true</code> to compute only the verdict.
+	 */
+	public void setVerdictOnly(boolean verdictOnly) {
+		this.verdictOnly = verdictOnly;
+		tokenizer.setVerdictOnly(verdictOnly);
+	}
+
+	/**
+	 * Checks the children of each element against the given rules as well as
+	 * the nesting of the tags. Elements already open are not checked.
+	 *
+	 * @param rules the content rules, or <code>null</code> to check only nesting.
+	 */
+	public void setContentRules(ContentRules rules) {
+		this.rules = rules;
+		ruleSymbols = new int[0];
+		resetStates();
+	}
+
+	/**
+	 * Selects namespace-aware validation: the prefix of each element and
+	 * attribute name must be bound by an <code>xmlns:</code> declaration in
+	 * scope, and no two attributes of a tag may have the same namespace and
+	 * local name. End tags must still repeat the start tag's name exactly.
+	 * Must be set before any input is fed.
+	 *
+	 * @param namespaceAware <code>true</code> to check namespace prefixes.
+	 */
+	public void setNamespaceAware(boolean namespaceAware) {
+		namespaces = namespaceAware ? new XMLNamespaceStack() : null;
+		tokenizer.setNamespaceAware(namespaceAware);
+	}
+
+	/**
+	 * Validates the next piece of a document, read as UTF-8 without detecting
+	 * its encoding. The buffer's position is advanced to its limit, or only to
+	 * where validation stopped if an error limit or verdict-only validation
+	 * stopped it; from then on input is ignored and the position left as it is.
+	 *
+	 * @param bytes the next bytes of the document.
+	 * @return <code>true</code> if no error has been found so far; tags left
+	 *         open are only reported by {@link #finish()}.
+	 * @throws IllegalStateException if {@link #finish()} has been called.
+	 */
+	public boolean feed(ByteBuffer bytes) throws IllegalStateException {
+		checkNotFinished();
+		tokenizer.feed(bytes);
+		return errors == 0;
+	}
+
+	/**
+	 * Validates the next piece of a document given as characters. Once an error
+	 * limit or verdict-only validation has stopped validation, the characters
+	 * are ignored.
+	 *
+	 * @param chars  buffer holding the next characters of the document.
+	 * @param offset index of the first character.
+	 * @param length number of characters.
+	 * @return <code>true</code> if no error has been found so far; tags left
+	 *         open are only reported by {@link #finish()}.
+	 * @throws IllegalStateException if {@link #finish()} has been called.
+	 */
+	public boolean feed(char[] chars, int offset, int length) throws IllegalStateException {
+		checkNotFinished();
+		tokenizer.feed(chars, offset, length);
+		return errors == 0;
+	}
+
+	/**
+	 * Signals the end of the document, reports any tags left open and prints the
+	 * final verdict.
+	 *
+	 * @return <code>true</code> if the document is well formed.
+	 * @throws IllegalStateException if called more than once.
+	 */
+	public boolean finish() throws IllegalStateException {
+		checkNotFinished();
+		finished = true;
+		if (tokenizer.isStopped()) {
+			sink.finish(false);
+		} else {
+			report();
+		}
+		return errors == 0;
+	}
+
+	/**
+	 * Returns <code>true</code> if no error has been found so far. Once
+	 * {@link #finish()} has returned this is the verdict for the whole document.
+	 *
+	 * @return <code>true</code> if the input seen so far is well formed.
+	 */
+	public boolean isWellFormed() {
+		return errors == 0;
+	}
+
+	/**
+	 * Returns the number of errors found so far.
+	 *
+	 * @return the error count.
+	 */
+	public long getErrorCount() {
+		return errors;
+	}
+
+	/**
+	 * Writes everything needed to continue validating the input seen so far:
+	 * the lexer state, the open tags, the root state and the error count. Must
+	 * be called before {@link #finish()}.
+	 *
+	 * @param out destination of the checkpoint.
+	 * @throws IOException if writing fails.
+	 */
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		checkNotFinished();
+		tokenizer.writeState(out);
+		out.writeBoolean(hasRoot);
+		out.writeBoolean(rootClosed);
+		out.writeLong(errors);
+		out.writeInt(stack.size());
+		for (int i = 0; i < stack.size(); i++) {
+			out.writeUTF(symbols.nameOf(stack.get(i)));
+		}
+		out.writeBoolean(namespaces != null);
+		if (namespaces != null) {
+			namespaces.writeState(out);
+		}
+	}
+
+	/**
+	 * Restores a checkpoint written by {@link #writeCheckpoint(DataOutput)}, so
+	 * that the next input fed continues the checkpointed document. Must be
+	 * called before any input is fed.
+	 *
+	 * @param in source of the checkpoint.
+	 * @throws IOException if reading fails or the checkpoint is not valid.
+	 */
+	public void readCheckpoint(DataInput in) throws IOException {
+		checkNotFinished();
+		tokenizer.readState(in);
+		hasRoot = in.readBoolean();
+		rootClosed = in.readBoolean();
+		errors = in.readLong();
+		int depth = in.readInt();
+		if (depth < 0 || errors < 0) {
+			throw new IOException("Invalid checkpoint");
+		}
+		stack.clear();
+		for (int i = 0; i < depth; i++) {
+			stack.push(symbols.intern(in.readUTF()));
+		}
+		setNamespaceAware(in.readBoolean());
+		if (namespaces != null) {
+			namespaces.readState(in);
+		}
+		resetStates();
+	}
+
+	/**
+	 * Passes every tag to the given handler as well, before it is validated,
+	 * for callers that record the structure of the document.
+	 */
+	void setObserver(XMLTagHandler observer) {
+		this.observer = observer;
+	}
+
+	/**
+	 * Returns the tokenizer feeding this validator, for callers that drive it
+	 * from a whole channel or reader at once.
+	 */
+	XMLTokenizer getTokenizer() {
+		return tokenizer;
+	}
+
+	private void resetStates() {
+		states.clear();
+		if (rules != null) {
+			for (int i = 0; i < stack.size(); i++) {
+				states.push(-1);
+			}
+		}
+	}
+
+	private void checkNotFinished() {
+		if (finished) {
+			throw new IllegalStateException("Validator has already finished.");
+		}
+	}
+
+	private void report() {
+		tokenizer.finish();
+		if (!hasRoot) {
+			error(Diagnostic.Code.MISSING_ROOT, 0, 0, 0, null, null);
+		} else {
+			while (!stack.isEmpty() && !tokenizer.isStopped()) {
+				error(Diagnostic.Code.UNCLOSED_TAG, 0, 0, 0, null, symbols.nameOf(stack.pop()));
+			}
+		}
+		sink.finish(errors == 0);
+	}
+
+	@Override
+	public void startTag(char[] name, int length, boolean selfClosing) {
+		if (observer != null) {
+			observer.startTag(name, length, selfClosing);
+		}
+		if (namespaces != null) {
+			checkNamespaces(name, length, selfClosing);
+		}
+		if (rules != null) {
+			startContent(symbols.intern(name, 0, length), selfClosing);
+			return;
+		}
+		// Self-closing tags never affect nesting
+		if (selfClosing) {
+			return;
+		}
+		open(symbols.intern(name, 0, length));
+	}
+
+	/**
+	 * Opens the scope of a start tag, binds the prefixes it declares and checks
+	 * the prefixes it uses, which may be declared by the tag itself.
+	 */
+	private void checkNamespaces(char[] name, int length, boolean selfClosing) {
+		XMLAttributeSet attributes = tokenizer.getAttributes();
+		char[] chars = attributes.getName();
+		namespaces.startElement();
+		for (int i = 0; i < attributes.size(); i++) {
+			int valueLength = attributes.getValueLength(i);
+			if (valueLength >= 0) {
+				int offset = attributes.getNameOffset(i);
+				int prefixLength = attributes.getNameLength(i) - XMLNS_LENGTH;
+				// "xmlns" sets the default namespace, "xmlns:p" binds p
+				namespaces.declare(chars, offset + XMLNS_LENGTH + 1, Math.max(prefixLength - 1, 0), chars,
+						attributes.getValueOffset(i), valueLength);
+			}
+		}
+
+		int colon = indexOfColon(name, 0, length);
+		if (colon >= 0 && namespaces.resolve(name, 0, colon) < 0) {
+			nameError(Diagnostic.Code.UNBOUND_PREFIX, null, 0, name, 0, length);
+		}
+		for (int i = 0; i < attributes.size(); i++) {
+			int offset = attributes.getNameOffset(i);
+			int nameLength = attributes.getNameLength(i);
+			colon = indexOfColon(chars, offset, nameLength);
+			if (colon < 0 || attributes.getValueLength(i) >= 0) {
+				continue; // unprefixed attributes are in no namespace
+			}
+			int uri = namespaces.resolve(chars, offset, colon - offset);
+			if (uri < 0) {
+				nameError(Diagnostic.Code.UNBOUND_PREFIX, name, length, chars, offset, nameLength);
+			} else if (!namespaces.addAttribute(uri, chars, colon + 1, offset + nameLength - colon - 1)) {
+				nameError(Diagnostic.Code.DUPLICATE_ATTRIBUTE, name, length, chars, offset, nameLength);
+			}
+		}
+		if (selfClosing) {
+			namespaces.endElement();
+		}
+	}
+
+	private static int indexOfColon(char[] chars, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			if (chars[i] == ':') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void open(int tag) {
+		if (!hasRoot) {
+			hasRoot = true;
+		}
+		if (rootClosed) {
+			tagError(Diagnostic.Code.CONTENT_AFTER_ROOT, null, null);
+		}
+		stack.push(tag);
+	}
+
+	// Advances the parent's automaton by the new child and starts the child's
+	private void startContent(int tag, boolean selfClosing) {
+		int symbol = ruleSymbol(tag);
+		if (!states.isEmpty()) {
+			int state = states.pop();
+			if (state >= 0) {
+				int parent = stack.peek();
+				state = rules.modelOf(ruleSymbol(parent)).next(state, symbol);
+				if (state < 0) {
+					tagError(Diagnostic.Code.INVALID_CHILD, symbols.nameOf(parent), symbols.nameOf(tag));
+				}
+			}
+			states.push(state);
+		}
+
+		ContentRules.Model model = rules.modelOf(symbol);
+		if (selfClosing) {
+			if (model != null && !model.accepts(0)) {
+				tagError(Diagnostic.Code.INCOMPLETE_CONTENT, null, symbols.nameOf(tag));
+			}
+			return;
+		}
+		open(tag);
+		states.push(model == null ? -1 : 0);
+	}
+
+	private int ruleSymbol(int tag) {
+		if (tag >= ruleSymbols.length) {
+			ruleSymbols = Arrays.copyOf(ruleSymbols, Math.max(tag + 1, ruleSymbols.length * 2));
+		}
+		if (ruleSymbols[tag] == 0) {
+			ruleSymbols[tag] = rules.symbolOf(symbols.nameOf(tag)) + 1;
+		}
+		return ruleSymbols[tag] - 1;
+	}
+
+	@Override
+	public void endTag(char[] name, int length) {
+		if (observer != null) {
+			observer.endTag(name, length);
+		}
+		if (namespaces != null) {
+			namespaces.endElement();
+		}
+		int closeTag = symbols.intern(name, 0, length);
+		if (stack.isEmpty()) {
+			tagError(Diagnostic.Code.UNEXPECTED_CLOSING_TAG, null, symbols.nameOf(closeTag));
+		} else {
+			int openTag = stack.pop();
+			int state = rules != null ? states.pop() : -1;
+			if (openTag != closeTag) {
+				tagError(Diagnostic.Code.MISMATCHED_TAG, symbols.nameOf(openTag), symbols.nameOf(closeTag));
+			} else if (state >= 0 && !rules.modelOf(ruleSymbol(openTag)).accepts(state)) {
+				tagError(Diagnostic.Code.INCOMPLETE_CONTENT, null, symbols.nameOf(closeTag));
+			}
+		}
+		if (stack.isEmpty()) {
+			rootClosed = true;
+		}
+	}
+
+	@Override
+	public void attributeError(Diagnostic.Code code, char[] tag, int tagLength, char[] attribute, int attributeLength) {
+		if (verdictOnly) {
+			error(code, 0, 0, 0, null, null);
+			return;
+		}
+		String tagName = new String(tag, 0, tagLength);
+		String attributeName = code == Diagnostic.Code.MALFORMED_ATTRIBUTE ? null
+				: new String(attribute, 0, attributeLength);
+		if (finished) {
+			// A value left open when the input ended, reported with the open tags
+			error(code, 0, 0, 0, tagName, attributeName);
+		} else {
+			tagError(code, tagName, attributeName);
+		}
+	}
+
+	// Reports an error naming a tag (or none) and a name, built only for a message
+	private void nameError(Diagnostic.Code code, char[] tag, int tagLength, char[] chars, int offset, int length) {
+		if (verdictOnly) {
+			error(code, 0, 0, 0, null, null);
+			return;
+		}
+		tagError(code, tag == null ? null : new String(tag, 0, tagLength), new String(chars, offset, length));
+	}
+
+	private void tagError(Diagnostic.Code code, String expected, String actual) {
+		error(code, tokenizer.getTagLine(), tokenizer.getTagColumn(), tokenizer.getTagOffset(), expected, actual);
+	}
+
+	private void error(Diagnostic.Code code, long line, long column, long offset, String expected, String actual) {
+		errors++;
+		if (verdictOnly) {
+			tokenizer.stop();
+			return;
+		}
+		sink.report(new Diagnostic(code, line, column, offset, expected, actual));
+		if (errors >= stopAfter) {
+			tokenizer.stop();
+		}
+	}
+}
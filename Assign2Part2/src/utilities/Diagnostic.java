@@ -0,0 +1,125 @@
+package utilities;
+
+/**
+ * A single problem found while validating an XML document, with its position
+ * and the tag names involved. Positions that do not apply (for example the line
+ * of a missing root tag) are zero.
+ */
+public class Diagnostic {
+
+	/**
+	 * The kinds of problem a validator can report.
+	 */
+	public enum Code {
+		MISMATCHED_TAG, UNEXPECTED_CLOSING_TAG, CONTENT_AFTER_ROOT, UNCLOSED_TAG, MISSING_ROOT,
+		INVALID_CHILD, INCOMPLETE_CONTENT, DUPLICATE_ATTRIBUTE, MISSING_ATTRIBUTE_VALUE, UNQUOTED_ATTRIBUTE_VALUE,
+		UNTERMINATED_ATTRIBUTE_VALUE, MALFORMED_ATTRIBUTE, UNBOUND_PREFIX
+	}
+
+	private final Code code;
+	private final long line;
+	private final long column;
+	private final long offset;
+	private final String expected;
+	private final String actual;
+
+	/**
+	 * Creates a diagnostic.
+	 *
+	 * @param code     the kind of problem.
+	 * @param line     1-based line of the offending tag, or 0.
+	 * @param column   1-based column of the offending tag, or 0.
+	 * @param offset   0-based byte (or char) offset of the offending tag.
+	 * @param expected the tag name that was expected, the parent of a child
+	 *                 that is not allowed or the tag of a bad attribute, or
+	 *                 <code>null</code> (also for an element whose prefix is
+	 *                 not bound).
+	 * @param actual   the tag or attribute name that was found, or
+	 *                 <code>null</code>.
+	 */
+	public Diagnostic(Code code, long line, long column, long offset, String expected, String actual) {
+		if (code == null) {
+			throw new NullPointerException("Code cannot be null.");
+		}
+		this.code = code;
+		this.line = line;
+		this.column = column;
+		this.offset = offset;
+		this.expected = expected;
+		this.actual = actual;
+	}
+
+	public Code getCode() {
+		return code;
+	}
+
+	public long getLine() {
+		return line;
+	}
+
+	public long getColumn() {
+		return column;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public String getExpected() {
+		return expected;
+	}
+
+	public String getActual() {
+		return actual;
+	}
+
+	/**
+	 * Returns the description of the problem without its position.
+	 *
+	 * @return the message text.
+	 */
+	public String getMessage() {
+		switch (code) {
+		case MISMATCHED_TAG:
+			return "Mismatched tag </" + actual + ">, expected </" + expected + ">";
+		case UNEXPECTED_CLOSING_TAG:
+			return "Unexpected closing tag </" + actual + ">";
+		case CONTENT_AFTER_ROOT:
+			return "Content after root tag closed.";
+		case UNCLOSED_TAG:
+			return "Unclosed tag: <" + actual + ">";
+		case INVALID_CHILD:
+			return "Element <" + actual + "> not allowed in <" + expected + ">";
+		case INCOMPLETE_CONTENT:
+			return "Content of <" + actual + "> is incomplete";
+		case DUPLICATE_ATTRIBUTE:
+			return "Duplicate attribute " + actual + " in <" + expected + ">";
+		case MISSING_ATTRIBUTE_VALUE:
+			return "Attribute " + actual + " in <" + expected + "> has no value";
+		case UNQUOTED_ATTRIBUTE_VALUE:
+			return "Value of attribute " + actual + " in <" + expected + "> is not quoted";
+		case UNTERMINATED_ATTRIBUTE_VALUE:
+			return "Value of attribute " + actual + " in <" + expected + "> is not terminated";
+		case MALFORMED_ATTRIBUTE:
+			return "Malformed attributes in <" + expected + ">";
+		case UNBOUND_PREFIX:
+			return expected == null ? "Namespace prefix of <" + actual + "> is not bound"
+					: "Namespace prefix of attribute " + actual + " in <" + expected + "> is not bound";
+		case MISSING_ROOT:
+			return "Missing root tag";
+		default:
+			throw new IllegalStateException("No message for diagnostic code " + code + ".");
+		}
+	}
+
+	/**
+	 * Returns the message prefixed with its line, in the form printed by the
+	 * XMLParser.
+	 *
+	 * @return the message text.
+	 */
+	@Override
+	public String toString() {
+		return line > 0 ? "Line " + line + ": " + getMessage() : getMessage();
+	}
+}
@@ -0,0 +1,20 @@
+package utilities;
+
+/**
+ * Receives the diagnostics produced while validating an XML document.
+ */
+public interface DiagnosticSink {
+	/**
+	 * Called for each problem, in document order.
+	 *
+	 * @param diagnostic the problem found.
+	 */
+	public void report(Diagnostic diagnostic);
+
+	/**
+	 * Called once the whole document has been validated.
+	 *
+	 * @param wellFormed <code>true</code> if no problem was reported.
+	 */
+	public void finish(boolean wellFormed);
+}
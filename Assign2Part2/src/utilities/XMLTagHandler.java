@@ -0,0 +1,43 @@
+package utilities;
+
+/**
+ * Receives the tag events produced by a streaming XML tokenizer. Tag names are
+ * delivered as a region of a buffer owned by the tokenizer; the buffer is
+ * reused for the next tag, so implementors that need to keep a name must copy
+ * it before returning.
+ */
+public interface XMLTagHandler {
+	/**
+	 * Called when a start tag (or an empty-element tag) has been read.
+	 *
+	 * @param name        buffer holding the tag name.
+	 * @param length      number of characters of the name held in the buffer.
+	 * @param selfClosing <code>true</code> if the tag was written as
+	 *                    <code>&lt;name/&gt;</code>.
+	 */
+	public void startTag(char[] name, int length, boolean selfClosing);
+
+	/**
+	 * Called when an end tag has been read.
+	 *
+	 * @param name   buffer holding the tag name.
+	 * @param length number of characters of the name held in the buffer.
+	 */
+	public void endTag(char[] name, int length);
+
+	/**
+	 * Called when the attributes of a start tag are not well formed, before
+	 * {@link #startTag(char[], int, boolean)} is called for the tag. Handlers
+	 * that only follow the structure of a document can ignore it.
+	 *
+	 * @param code            the kind of problem.
+	 * @param tag             buffer holding the name of the tag.
+	 * @param tagLength       number of characters of the tag name.
+	 * @param attribute       buffer holding the name of the attribute involved.
+	 * @param attributeLength number of characters of the attribute name.
+	 */
+	public default void attributeError(Diagnostic.Code code, char[] tag, int tagLength, char[] attribute,
+			int attributeLength) {
+		// Not needed
+	}
+}
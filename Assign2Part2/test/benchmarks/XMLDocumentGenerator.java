@@ -0,0 +1,254 @@
+package test.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Class Description:
+ * Writes synthetic XML documents of a chosen shape and approximate size, from
+ * a few kilobytes to many gigabytes, for the parser benchmarks. The same shape,
+ * size and seed always give the same document.
+ */
+
+public class XMLDocumentGenerator
+{
+	/**
+	 * The layouts that stress different parts of the parser.
+	 */
+	public enum Shape
+	{
+		/** Elements nested a thousand deep. */
+		DEEP,
+		/** Many short sibling elements under the root. */
+		WIDE,
+		/** Elements carrying long quoted attribute values. */
+		LONG_ATTRIBUTES,
+		/** Mostly comments and CDATA sections containing tag-like text. */
+		COMMENTS,
+		/** Sibling elements with frequent mismatched and stray end tags. */
+		ERRORS,
+		/** Nested records with no line breaks at all. */
+		MINIFIED
+	}
+
+	// Attributes
+	private static final int DEPTH = 1000;
+	private static final int FLUSH_SIZE = 64 * 1024;
+
+	private final Shape shape;
+	private final Random random;
+	private final StringBuilder text = new StringBuilder();
+	private long tags;
+
+	/**
+	 * Creates a generator of documents of the given shape.
+	 * @param shape layout of the documents.
+	 * @param seed seed of the random choices made while generating.
+	 */
+	public XMLDocumentGenerator( Shape shape, long seed )
+	{
+		this.shape = shape;
+		this.random = new Random( seed );
+	}
+
+	/**
+	 * Writes a document of at least the given size. The document is complete:
+	 * the root element is closed after the last record.
+	 * @param out destination of the document; it is not closed.
+	 * @param size number of bytes to write, before the last record is closed.
+	 * @return the number of tags written, counting a self-closing tag once.
+	 * @throws IOException if writing fails.
+	 */
+	public long generate( OutputStream out, long size ) throws IOException
+	{
+		tags = 0;
+		long written = 0;
+		text.setLength( 0 );
+		start( "doc", "" );
+		newline();
+		for ( long record = 0; written + text.length() < size; record++ )
+		{
+			record( record );
+			if ( text.length() >= FLUSH_SIZE )
+			{
+				written += flush( out );
+			}
+		}
+		end( "doc" );
+		newline();
+		flush( out );
+		return tags;
+	}
+
+	private void record( long index )
+	{
+		switch ( shape )
+		{
+		case DEEP:
+			for ( int i = 0; i < DEPTH; i++ )
+			{
+				start( "n", "" );
+			}
+			text.append( "leaf " ).append( index );
+			for ( int i = 0; i < DEPTH; i++ )
+			{
+				end( "n" );
+			}
+			newline();
+			break;
+		case WIDE:
+			start( "item", " id=\"" + index + "\"" );
+			text.append( "value " ).append( random.nextInt( 1000 ) );
+			end( "item" );
+			newline();
+			break;
+		case LONG_ATTRIBUTES:
+			text.append( "<item a=\"" );
+			letters( 2048 );
+			text.append( "\" b='" );
+			letters( 2048 );
+			text.append( "'/>" );
+			tags++;
+			newline();
+			break;
+		case COMMENTS:
+			text.append( "<!-- " );
+			fakeMarkup( 40 );
+			text.append( " -->" );
+			newline();
+			text.append( "<![CDATA[" );
+			fakeMarkup( 40 );
+			text.append( "]]>" );
+			newline();
+			start( "item", "" );
+			end( "item" );
+			newline();
+			break;
+		case ERRORS:
+			start( "item", "" );
+			text.append( "value" );
+			int roll = random.nextInt( 10 );
+			end( roll == 0 ? "wrong" : "item" );
+			if ( roll == 1 )
+			{
+				end( "stray" );
+			}
+			newline();
+			break;
+		case MINIFIED:
+			start( "record", " id=\"" + index + "\"" );
+			start( "name", "" );
+			text.append( "name " ).append( index );
+			end( "name" );
+			text.append( "<flag/>" );
+			tags++;
+			start( "value", "" );
+			text.append( random.nextInt() );
+			end( "value" );
+			end( "record" );
+			break;
+		default:
+			throw new IllegalStateException( "Unknown shape " + shape );
+		}
+	}
+
+	private void start( String name, String attributes )
+	{
+		text.append( '<' ).append( name ).append( attributes ).append( '>' );
+		tags++;
+	}
+
+	private void end( String name )
+	{
+		text.append( "</" ).append( name ).append( '>' );
+		tags++;
+	}
+
+	private void newline()
+	{
+		if ( shape != Shape.MINIFIED )
+		{
+			text.append( '\n' );
+		}
+	}
+
+	private void letters( int count )
+	{
+		for ( int i = 0; i < count; i++ )
+		{
+			text.append( (char) ('a' + random.nextInt( 26 )) );
+		}
+	}
+
+	private void fakeMarkup( int count )
+	{
+		for ( int i = 0; i < count; i++ )
+		{
+			text.append( random.nextBoolean() ? "<x>" : "</y> " );
+		}
+	}
+
+	private long flush( OutputStream out ) throws IOException
+	{
+		byte[] bytes = text.toString().getBytes( StandardCharsets.UTF_8 );
+		out.write( bytes );
+		text.setLength( 0 );
+		return bytes.length;
+	}
+
+	/**
+	 * Parses a size such as <code>512</code>, <code>64K</code>,
+	 * <code>16M</code> or <code>2G</code>.
+	 * @param size the size, with an optional binary unit.
+	 * @return the size in bytes.
+	 * @throws NumberFormatException if the size cannot be parsed.
+	 */
+	public static long parseSize( String size ) throws NumberFormatException
+	{
+		String value = size.trim().toUpperCase( Locale.ROOT );
+		int shift = 0;
+		if ( value.endsWith( "K" ) )
+		{
+			shift = 10;
+		}
+		else if ( value.endsWith( "M" ) )
+		{
+			shift = 20;
+		}
+		else if ( value.endsWith( "G" ) )
+		{
+			shift = 30;
+		}
+		if ( shift > 0 )
+		{
+			value = value.substring( 0, value.length() - 1 );
+		}
+		return Long.parseLong( value ) << shift;
+	}
+
+	/**
+	 * Writes one document: <code>XMLDocumentGenerator shape size file</code>.
+	 * @param args the shape name, the size and the output file.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public static void main( String[] args ) throws IOException
+	{
+		if ( args.length != 3 )
+		{
+			System.out.println( "Usage: java test.benchmarks.XMLDocumentGenerator <shape> <size[K|M|G]> <file>" );
+			System.out.println( "Shapes: deep wide long_attributes comments errors minified" );
+			return;
+		}
+		Shape shape = Shape.valueOf( args[0].toUpperCase( Locale.ROOT ) );
+		try ( OutputStream out = new BufferedOutputStream( new FileOutputStream( args[2] ) ) )
+		{
+			long tags = new XMLDocumentGenerator( shape, 1 ).generate( out, parseSize( args[1] ) );
+			System.out.println( "Wrote " + tags + " tags to " + args[2] );
+		}
+	}
+}
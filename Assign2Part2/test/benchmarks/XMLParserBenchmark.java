@@ -0,0 +1,215 @@
+package test.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import implementations.ParallelXMLValidator;
+import implementations.XMLParser;
+import utilities.Diagnostic;
+import utilities.DiagnosticSink;
+
+/**
+ * Class Description:
+ * Measures the throughput of XMLParser on generated documents of every shape,
+ * in each of its input modes, and prints MB/s, tags/s and the bytes allocated
+ * per tag. Each measurement is the median of several timed runs that follow a
+ * few untimed warm-up runs.
+ * <p>
+ * Run with <code>java test.benchmarks.XMLParserBenchmark [--size=16M]
+ * [--warmup=3] [--iterations=5] [shape...]</code>; give the JVM enough heap for
+ * the reader mode on large single-line documents.
+ */
+
+public class XMLParserBenchmark
+{
+	// Attributes
+	private static final String[] MODES = { "reader", "channel", "mmap", "parallel" };
+
+	private final long size;
+	private final int warmup;
+	private final int iterations;
+
+	/**
+	 * Creates a benchmark.
+	 * @param size size of the generated documents in bytes.
+	 * @param warmup number of untimed runs before each measurement.
+	 * @param iterations number of timed runs in each measurement.
+	 */
+	public XMLParserBenchmark( long size, int warmup, int iterations )
+	{
+		this.size = size;
+		this.warmup = warmup;
+		this.iterations = iterations;
+	}
+
+	/**
+	 * Generates a document of the given shape and measures every mode on it.
+	 * @param shape layout of the document.
+	 * @throws IOException if the document cannot be written or read.
+	 */
+	public void run( XMLDocumentGenerator.Shape shape ) throws IOException
+	{
+		File file = File.createTempFile( "benchmark-" + shape.name().toLowerCase( Locale.ROOT ), ".xml" );
+		try
+		{
+			long tags;
+			try ( OutputStream out = new BufferedOutputStream( Files.newOutputStream( file.toPath() ) ) )
+			{
+				tags = new XMLDocumentGenerator( shape, 1 ).generate( out, size );
+			}
+			long bytes = file.length();
+
+			for ( String mode : MODES )
+			{
+				for ( int i = 0; i < warmup; i++ )
+				{
+					parse( file, mode );
+				}
+				long[] times = new long[iterations];
+				long allocated = 0;
+				for ( int i = 0; i < iterations; i++ )
+				{
+					long before = allocatedBytes();
+					long start = System.nanoTime();
+					parse( file, mode );
+					times[i] = System.nanoTime() - start;
+					allocated += allocatedBytes() - before;
+				}
+				Arrays.sort( times );
+				double seconds = times[iterations / 2] / 1e9;
+
+				// Allocation is only measured on this thread, so not for parallel runs
+				String perTag = mode.equals( "parallel" ) || allocated < 0 ? "-"
+						: String.format( Locale.ROOT, "%.2f", (double) allocated / iterations / Math.max( tags, 1 ) );
+				System.out.println( String.format( Locale.ROOT, "%-16s %-9s %10.1f %14.0f %10s",
+						shape.name().toLowerCase( Locale.ROOT ), mode, bytes / seconds / 1e6, tags / seconds,
+						perTag ) );
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	private static void parse( File file, String mode ) throws IOException
+	{
+		CountingSink sink = new CountingSink();
+		switch ( mode )
+		{
+		case "reader":
+			try ( Reader reader = new FileReader( file ) )
+			{
+				new XMLParser( sink ).parse( reader );
+			}
+			break;
+		case "channel":
+			try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) )
+			{
+				new XMLParser( sink ).parse( channel );
+			}
+			break;
+		case "mmap":
+			try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) )
+			{
+				new XMLParser( sink ).parseMapped( channel );
+			}
+			break;
+		default:
+			try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) )
+			{
+				new ParallelXMLValidator( Runtime.getRuntime().availableProcessors() ).validate( channel, sink );
+			}
+			break;
+		}
+	}
+
+	// Bytes allocated so far by this thread, or -1 if the JVM cannot tell
+	private static long allocatedBytes()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if ( threads instanceof com.sun.management.ThreadMXBean )
+		{
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes( Thread.currentThread().getId() );
+		}
+		return -1;
+	}
+
+	/**
+	 * Runs the benchmark.
+	 * @param args options and the shapes to measure; all shapes by default.
+	 * @throws IOException if a document cannot be written or read.
+	 */
+	public static void main( String[] args ) throws IOException
+	{
+		long size = 16L << 20;
+		int warmup = 3;
+		int iterations = 5;
+		List<XMLDocumentGenerator.Shape> shapes = new ArrayList<>();
+		for ( String arg : args )
+		{
+			if ( arg.startsWith( "--size=" ) )
+			{
+				size = XMLDocumentGenerator.parseSize( arg.substring( "--size=".length() ) );
+			}
+			else if ( arg.startsWith( "--warmup=" ) )
+			{
+				warmup = Integer.parseInt( arg.substring( "--warmup=".length() ) );
+			}
+			else if ( arg.startsWith( "--iterations=" ) )
+			{
+				iterations = Math.max( 1, Integer.parseInt( arg.substring( "--iterations=".length() ) ) );
+			}
+			else
+			{
+				shapes.add( XMLDocumentGenerator.Shape.valueOf( arg.toUpperCase( Locale.ROOT ) ) );
+			}
+		}
+		if ( shapes.isEmpty() )
+		{
+			shapes.addAll( Arrays.asList( XMLDocumentGenerator.Shape.values() ) );
+		}
+
+		System.out.println( String.format( Locale.ROOT, "%-16s %-9s %10s %14s %10s", "shape", "mode", "MB/s", "tags/s",
+				"B/tag" ) );
+		XMLParserBenchmark benchmark = new XMLParserBenchmark( size, warmup, iterations );
+		for ( XMLDocumentGenerator.Shape shape : shapes )
+		{
+			benchmark.run( shape );
+		}
+	}
+
+	/**
+	 * Counts diagnostics instead of printing them, so output does not skew the
+	 * timings.
+	 */
+	private static class CountingSink implements DiagnosticSink
+	{
+		private long reported;
+
+		@Override
+		public void report( Diagnostic diagnostic )
+		{
+			reported++;
+		}
+
+		@Override
+		public void finish( boolean wellFormed )
+		{
+			// Nothing to print
+		}
+	}
+}
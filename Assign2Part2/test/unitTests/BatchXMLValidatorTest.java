@@ -0,0 +1,112 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.BatchXMLValidator;
+import implementations.MyArrayList;
+
+/**
+ * Class Description:
+ * Tests for validating many documents at once, including the entries of ZIP
+ * archives.
+ */
+
+public class BatchXMLValidatorTest
+{
+	// Attributes
+	private Path archive;
+	private BatchXMLValidator validator;
+
+	/**
+	 * Creates an archive location and a validator with two threads before each
+	 * test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		archive = File.createTempFile( "bundle", ".zip" ).toPath();
+		validator = new BatchXMLValidator( 2, false );
+	}
+
+	/**
+	 * Deletes the archive after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		Files.deleteIfExists( archive );
+		validator = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.BatchXMLValidator#validate(MyArrayList, PrintStream)}
+	 * with an archive holding good, bad and ignored entries.
+	 * @throws IOException
+	 */
+	@Test
+	public void testValidateArchive() throws IOException
+	{
+		try ( ZipOutputStream zip = new ZipOutputStream( Files.newOutputStream( archive ) ) )
+		{
+			add( zip, "b/bad.xml", "<a>\n</b>" );
+			add( zip, "a/good.xml", "<a><b/></a>" );
+			add( zip, "readme.txt", "<not checked>" );
+			zip.putNextEntry( new ZipEntry( "empty/" ) );
+			zip.closeEntry();
+		}
+
+		String report = validate( archive );
+		String expected = "== " + archive + "!/a/good.xml ==\n"
+				+ "XML document is constructed correctly.\n"
+				+ "== " + archive + "!/b/bad.xml ==\n"
+				+ "Line 2: Mismatched tag </b>, expected </a>\n"
+				+ "Validated 2 files: 1 well-formed, 1 malformed, 0 unreadable.\n";
+		assertEquals( "Failed to report entries.", expected, report );
+	}
+
+	/**
+	 * Test method for {@link implementations.BatchXMLValidator#validate(MyArrayList, PrintStream)}
+	 * with an archive that is not a ZIP file.
+	 * @throws IOException
+	 */
+	@Test
+	public void testValidateDamagedArchive() throws IOException
+	{
+		Files.write( archive, "not a zip".getBytes( StandardCharsets.UTF_8 ) );
+		String report = validate( archive );
+		assertTrue( "Failed to report unreadable archive.",
+				report.endsWith( "Validated 1 files: 0 well-formed, 0 malformed, 1 unreadable.\n" ) );
+	}
+
+	private String validate( Path path ) throws IOException
+	{
+		MyArrayList<Path> files = new MyArrayList<>();
+		files.add( path );
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		validator.validate( files, new PrintStream( output, true, "UTF-8" ) );
+		return new String( output.toByteArray(), StandardCharsets.UTF_8 ).replace( System.lineSeparator(), "\n" );
+	}
+
+	private static void add( ZipOutputStream zip, String name, String content ) throws IOException
+	{
+		zip.putNextEntry( new ZipEntry( name ) );
+		zip.write( content.getBytes( StandardCharsets.UTF_8 ) );
+		zip.closeEntry();
+	}
+}
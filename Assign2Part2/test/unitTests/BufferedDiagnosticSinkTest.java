@@ -0,0 +1,168 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.BufferedDiagnosticSink;
+import utilities.Diagnostic;
+
+/**
+ * Class Description:
+ * Tests for the buffered diagnostics sink, its error cap and its aggregation of
+ * repeated diagnostics.
+ */
+
+public class BufferedDiagnosticSinkTest
+{
+	// Attributes
+	private StringWriter writer;
+	private Diagnostic mismatch;
+	private Diagnostic unexpected;
+
+	/**
+	 * Initializes a writer and two diagnostics before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		writer = new StringWriter();
+		mismatch = new Diagnostic( Diagnostic.Code.MISMATCHED_TAG, 8, 3, 120, "b", "i" );
+		unexpected = new Diagnostic( Diagnostic.Code.UNEXPECTED_CLOSING_TAG, 9, 1, 140, null, "x" );
+	}
+
+	/**
+	 * Cleans up instances used after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		writer = null;
+		mismatch = null;
+		unexpected = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.BufferedDiagnosticSink#report(Diagnostic)}
+	 * writing nothing until the document is finished.
+	 */
+	@Test
+	public void testReportBuffered()
+	{
+		BufferedDiagnosticSink sink = new BufferedDiagnosticSink( writer, BufferedDiagnosticSink.UNLIMITED, false );
+		sink.report( mismatch );
+		assertEquals( "Failed to buffer output.", "", writer.toString() );
+		sink.finish( false );
+		assertEquals( "Failed to write diagnostic.", "Line 8: Mismatched tag </i>, expected </b>",
+				writer.toString().trim() );
+	}
+
+	/**
+	 * Test method for {@link implementations.BufferedDiagnosticSink#report(Diagnostic)}
+	 * with an error cap.
+	 */
+	@Test
+	public void testReportCapped()
+	{
+		BufferedDiagnosticSink sink = new BufferedDiagnosticSink( writer, 1, false );
+		sink.report( mismatch );
+		sink.report( unexpected );
+		sink.report( unexpected );
+		sink.finish( false );
+		String[] lines = writer.toString().split( "\\R" );
+		assertEquals( "Failed to cap output.", 2, lines.length );
+		assertEquals( "Failed to count suppressed errors.", "2 more errors not shown.", lines[1] );
+	}
+
+	/**
+	 * Test method for {@link implementations.BufferedDiagnosticSink#report(Diagnostic)}
+	 * aggregating repeated diagnostics.
+	 */
+	@Test
+	public void testReportAggregated()
+	{
+		BufferedDiagnosticSink sink = new BufferedDiagnosticSink( writer, BufferedDiagnosticSink.UNLIMITED, true );
+		for ( int i = 0; i < 1500; i++ )
+		{
+			sink.report( new Diagnostic( Diagnostic.Code.MISMATCHED_TAG, i + 1, 1, i, "b", "i" ) );
+		}
+		sink.report( unexpected );
+		sink.finish( false );
+		String[] lines = writer.toString().split( "\\R" );
+		assertEquals( "Failed to aggregate repeats.", 3, lines.length );
+		assertEquals( "Failed to write first occurrence.", "Line 1: Mismatched tag </i>, expected </b>", lines[0] );
+		assertEquals( "Failed to summarise repeats.", "Mismatched tag </i>, expected </b> x 1,500", lines[2] );
+	}
+
+	/**
+	 * Test method for {@link implementations.BufferedDiagnosticSink#report(Diagnostic)}
+	 * aggregating more distinct diagnostics than are followed at once.
+	 */
+	@Test
+	public void testReportAggregatedBounded()
+	{
+		BufferedDiagnosticSink sink = new BufferedDiagnosticSink( writer, BufferedDiagnosticSink.UNLIMITED, true );
+		sink.report( mismatch );
+		sink.report( mismatch );
+		for ( int i = 0; i < BufferedDiagnosticSink.MAX_REPEATS; i++ )
+		{
+			sink.report( new Diagnostic( Diagnostic.Code.MISMATCHED_TAG, i + 1, 1, i, "b", "t" + i ) );
+		}
+		sink.report( mismatch );
+		sink.finish( false );
+		String[] lines = writer.toString().split( "\\R" );
+		assertEquals( "Failed to bound repeats.", BufferedDiagnosticSink.MAX_REPEATS + 3, lines.length );
+		assertEquals( "Failed to summarise dropped repeats.", "Mismatched tag </i>, expected </b> x 2",
+				lines[BufferedDiagnosticSink.MAX_REPEATS] );
+		assertEquals( "Failed to report again once dropped.", lines[0], lines[lines.length - 1] );
+	}
+
+	/**
+	 * Test method for {@link implementations.BufferedDiagnosticSink#finish(boolean)}
+	 * for a well-formed document.
+	 */
+	@Test
+	public void testFinishWellFormed()
+	{
+		BufferedDiagnosticSink sink = new BufferedDiagnosticSink( writer, BufferedDiagnosticSink.UNLIMITED, false );
+		sink.finish( true );
+		assertEquals( "Failed to write verdict.", "XML document is constructed correctly.", writer.toString().trim() );
+	}
+
+	/**
+	 * Test method for {@link implementations.BufferedDiagnosticSink#finish(boolean)}
+	 * called again after an error, which writes nothing more.
+	 */
+	@Test
+	public void testFinishTwice()
+	{
+		BufferedDiagnosticSink sink = new BufferedDiagnosticSink( writer, 0, false );
+		sink.report( mismatch );
+		sink.finish( false );
+		String first = writer.toString();
+		sink.finish( false );
+		assertEquals( "Failed to write summary.", "1 more errors not shown.", first.trim() );
+		assertEquals( "Failed to finish once.", first, writer.toString() );
+	}
+
+	/**
+	 * Test method for {@link utilities.Diagnostic#getMessage()} for every code.
+	 */
+	@Test
+	public void testMessageForEveryCode()
+	{
+		for ( Diagnostic.Code code : Diagnostic.Code.values() )
+		{
+			assertFalse( "Failed to describe " + code,
+					new Diagnostic( code, 0, 0, 0, "a", "b" ).getMessage().isEmpty() );
+		}
+		assertEquals( "Failed to describe missing root.", "Missing root tag",
+				new Diagnostic( Diagnostic.Code.MISSING_ROOT, 0, 0, 0, null, null ).getMessage() );
+	}
+}
@@ -0,0 +1,184 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.ContentRules;
+import implementations.XMLParser;
+import utilities.Diagnostic;
+
+/**
+ * Class Description:
+ * Tests that content rules are compiled and that the children of each element
+ * are checked against them while the tags are validated.
+ */
+
+public class ContentRulesTest
+{
+	// Attributes
+	private static final String SAMPLE_RULES = "# Rules for the sample documents\n"
+			+ "XMLDATA = Submission+\n"
+			+ "Submission = Category*\n"
+			+ "Category = Driver*\n"
+			+ "Driver = Language*\n"
+			+ "Language = PackageCreationLocation   # exactly one\n"
+			+ "PackageCreationLocation = EMPTY\n";
+
+	private RecordingSink sink;
+	private XMLParser parser;
+
+	/**
+	 * Creates a parser that records its diagnostics before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		sink = new RecordingSink();
+		parser = new XMLParser( sink );
+	}
+
+	/**
+	 * Clears the parser after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		parser = null;
+		sink = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.ContentRules#compile(String)} with
+	 * the rules of the sample documents.
+	 * @throws IOException
+	 */
+	@Test
+	public void testSamples() throws IOException
+	{
+		ContentRules rules = ContentRules.compile( SAMPLE_RULES );
+		assertEquals( "Failed to count rules.", 6, rules.getRuleCount() );
+		parser.setContentRules( rules );
+		try ( FileChannel channel = FileChannel.open( Paths.get( "res/sample1.xml" ), StandardOpenOption.READ ) )
+		{
+			parser.parse( channel );
+		}
+		assertTrue( "Failed to accept sample.", parser.isWellFormed() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#setContentRules(ContentRules)}
+	 * with a child that is not allowed.
+	 * @throws IOException
+	 */
+	@Test
+	public void testInvalidChild() throws IOException
+	{
+		parse( SAMPLE_RULES, "<XMLDATA><Submission><Category><Driver>"
+				+ "<Language><PackageCreationLocation/></Language><Category/>"
+				+ "</Driver></Category></Submission></XMLDATA>" );
+		assertEquals( "Failed to report one error.", 1, sink.diagnostics.size() );
+		Diagnostic diagnostic = sink.diagnostics.get( 0 );
+		assertEquals( "Failed to report code.", Diagnostic.Code.INVALID_CHILD, diagnostic.getCode() );
+		assertEquals( "Failed to report message.", "Element <Category> not allowed in <Driver>", diagnostic.getMessage() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#setContentRules(ContentRules)}
+	 * with elements missing required children.
+	 * @throws IOException
+	 */
+	@Test
+	public void testIncomplete() throws IOException
+	{
+		parse( SAMPLE_RULES, "<XMLDATA><Submission><Category><Driver>"
+				+ "<Language></Language><Language/>"
+				+ "</Driver></Category></Submission></XMLDATA>" );
+		assertEquals( "Failed to report two errors.", 2, sink.diagnostics.size() );
+		for ( int i = 0; i < 2; i++ )
+		{
+			assertEquals( "Failed to report code.", Diagnostic.Code.INCOMPLETE_CONTENT, sink.diagnostics.get( i ).getCode() );
+			assertEquals( "Failed to report message.", "Content of <Language> is incomplete", sink.diagnostics.get( i ).getMessage() );
+		}
+	}
+
+	/**
+	 * Test method for {@link implementations.ContentRules#compile(String)} with
+	 * sequences, choices, groups and repetitions.
+	 * @throws IOException
+	 */
+	@Test
+	public void testModels() throws IOException
+	{
+		String rules = "r = (a, b?, (c | d)+) | e*\nb = ANY\n";
+		assertTrue( "Failed to accept sequence.", isValid( rules, "<r><a/><b><x/></b><c/><d/><c/></r>" ) );
+		assertTrue( "Failed to accept optional.", isValid( rules, "<r><a/><d/></r>" ) );
+		assertTrue( "Failed to accept empty repetition.", isValid( rules, "<r></r>" ) );
+		assertTrue( "Failed to accept choice.", isValid( rules, "<r><e/><e/></r>" ) );
+		assertFalse( "Failed to require one or more.", isValid( rules, "<r><a/><b/></r>" ) );
+		assertFalse( "Failed to keep order.", isValid( rules, "<r><b/><a/><c/></r>" ) );
+		assertFalse( "Failed to keep choice.", isValid( rules, "<r><e/><a/><c/></r>" ) );
+		assertFalse( "Failed to reject unnamed element.", isValid( rules, "<r><a/><z/><c/></r>" ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#setContentRules(ContentRules)}
+	 * with a malformed document, where each error is reported once.
+	 * @throws IOException
+	 */
+	@Test
+	public void testMismatched() throws IOException
+	{
+		parse( "a = b\n", "<a><b></c></a>" );
+		assertEquals( "Failed to report one error.", 1, sink.diagnostics.size() );
+		assertEquals( "Failed to report code.", Diagnostic.Code.MISMATCHED_TAG, sink.diagnostics.get( 0 ).getCode() );
+	}
+
+	/**
+	 * Test method for {@link implementations.ContentRules#compile(String)} with
+	 * syntax errors.
+	 */
+	@Test
+	public void testSyntaxErrors()
+	{
+		String[] invalid = { "a b", "a = (b", "a = b,", "a = b c", "a = b\na = c", " = b", "a = |" };
+		for ( String rules : invalid )
+		{
+			try
+			{
+				ContentRules.compile( rules );
+				fail( "Failed to reject: " + rules );
+			}
+			catch ( IllegalArgumentException e )
+			{
+				assertTrue( "Failed to give line: " + e.getMessage(), e.getMessage().startsWith( "Line " ) );
+			}
+		}
+	}
+
+	private void parse( String rules, String document ) throws IOException
+	{
+		parser.setContentRules( ContentRules.compile( rules ) );
+		parser.parse( Channels.newChannel( new ByteArrayInputStream( document.getBytes( StandardCharsets.UTF_8 ) ) ) );
+	}
+
+	private boolean isValid( String rules, String document ) throws IOException
+	{
+		sink = new RecordingSink();
+		parser = new XMLParser( sink );
+		parse( rules, document );
+		return parser.isWellFormed();
+	}
+}
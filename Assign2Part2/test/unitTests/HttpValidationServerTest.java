@@ -0,0 +1,233 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.HttpValidationServer;
+
+/**
+ * Class Description:
+ * Tests that the HTTP endpoint validates uploaded documents and answers with
+ * a JSON verdict.
+ */
+
+public class HttpValidationServerTest
+{
+	// Attributes
+	private HttpValidationServer server;
+	private String base;
+
+	/**
+	 * Starts a server on a free loopback port before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		server = new HttpValidationServer( 4 );
+		InetSocketAddress address = server.start( new InetSocketAddress( "127.0.0.1", 0 ) );
+		base = "http://127.0.0.1:" + address.getPort();
+	}
+
+	/**
+	 * Stops the server after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		server.close();
+	}
+
+	/**
+	 * Test method for {@link implementations.HttpValidationServer#start(InetSocketAddress)}
+	 * with a well-formed document.
+	 * @throws IOException
+	 */
+	@Test
+	public void testWellFormed() throws IOException
+	{
+		String answer = post( "/validate", "<a><b/></a>".getBytes( StandardCharsets.UTF_8 ), null, 200 );
+		assertEquals( "Failed to accept document.", "{\"wellFormed\":true,\"errors\":0,\"diagnostics\":[],\"truncated\":false}",
+				answer );
+	}
+
+	/**
+	 * Test method for {@link implementations.HttpValidationServer#start(InetSocketAddress)}
+	 * with a malformed document and a cap on the diagnostics returned.
+	 * @throws IOException
+	 */
+	@Test
+	public void testMalformed() throws IOException
+	{
+		byte[] document = "<a>\n</\"b\"></c>".getBytes( StandardCharsets.UTF_8 );
+		String answer = post( "/validate?max-errors=1", document, null, 200 );
+		assertEquals( "Failed to report diagnostics.", "{\"wellFormed\":false,\"errors\":2,\"diagnostics\":[{\"code\":\"MISMATCHED_TAG\","
+				+ "\"line\":2,\"column\":1,\"offset\":4,\"expected\":\"a\",\"actual\":\"\\\"b\\\"\","
+				+ "\"message\":\"Mismatched tag </\\\"b\\\">, expected </a>\"}],\"truncated\":true}", answer );
+	}
+
+	/**
+	 * Test method for {@link implementations.HttpValidationServer#start(InetSocketAddress)}
+	 * asking for more diagnostics than the server returns.
+	 * @throws IOException
+	 */
+	@Test
+	public void testMaxErrorsCapped() throws IOException
+	{
+		StringBuilder document = new StringBuilder( "<r>" );
+		for ( int i = 0; i <= HttpValidationServer.MAX_ERRORS; i++ )
+		{
+			document.append( "<a k=v/>" );
+		}
+		document.append( "</r>" );
+		String answer = post( "/validate?max-errors=" + Long.MAX_VALUE, document.toString().getBytes( StandardCharsets.UTF_8 ),
+				null, 200 );
+		assertEquals( "Failed to cap diagnostics.", HttpValidationServer.MAX_ERRORS, answer.split( "\"code\"", -1 ).length - 1 );
+		assertTrue( "Failed to mark answer truncated.", answer.endsWith( "\"truncated\":true}" ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.HttpValidationServer#start(InetSocketAddress)}
+	 * with a gzip-compressed upload.
+	 * @throws IOException
+	 */
+	@Test
+	public void testCompressed() throws IOException
+	{
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try ( GZIPOutputStream gzip = new GZIPOutputStream( compressed ) )
+		{
+			gzip.write( "<a>\u00e9</a>".getBytes( StandardCharsets.UTF_8 ) );
+		}
+		String answer = post( "/validate", compressed.toByteArray(), "gzip", 200 );
+		assertTrue( "Failed to inflate upload.", answer.startsWith( "{\"wellFormed\":true" ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.HttpValidationServer#start(InetSocketAddress)}
+	 * with a gzip upload cut short, whose error is found while it is read.
+	 * @throws IOException
+	 */
+	@Test
+	public void testCompressedTruncated() throws IOException
+	{
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try ( GZIPOutputStream gzip = new GZIPOutputStream( compressed ) )
+		{
+			gzip.write( "<a><b/></a>".getBytes( StandardCharsets.UTF_8 ) );
+		}
+		byte[] bytes = compressed.toByteArray();
+		String answer = post( "/validate", Arrays.copyOf( bytes, bytes.length - 10 ), "gzip", 400 );
+		assertTrue( "Failed to report bad upload.", answer.startsWith( "{\"error\":\"Error reading body: " ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.HttpValidationServer#start(InetSocketAddress)}
+	 * asking for the verdict only, which gives no error count.
+	 * @throws IOException
+	 */
+	@Test
+	public void testVerdict() throws IOException
+	{
+		assertEquals( "Failed to give malformed verdict.", "{\"wellFormed\":false}",
+				post( "/validate?verdict=true", "<a></b>".getBytes( StandardCharsets.UTF_8 ), null, 200 ) );
+		assertEquals( "Failed to give well-formed verdict.", "{\"wellFormed\":true}",
+				post( "/validate?verdict", "<a></a>".getBytes( StandardCharsets.UTF_8 ), null, 200 ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.HttpValidationServer#start(InetSocketAddress)}
+	 * with requests that are not uploads.
+	 * @throws IOException
+	 */
+	@Test
+	public void testBadRequests() throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection) new URL( base + "/validate" ).openConnection();
+		assertEquals( "Failed to reject GET.", 405, connection.getResponseCode() );
+		connection.disconnect();
+		post( "/validate?max-errors=x", new byte[0], null, 400 );
+		post( "/validate/more", new byte[0], null, 404 );
+	}
+
+	/**
+	 * Test method for {@link implementations.HttpValidationServer#start(InetSocketAddress)}
+	 * with many uploads at once.
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentUploads() throws Exception
+	{
+		Thread[] clients = new Thread[32];
+		String[] answers = new String[clients.length];
+		for ( int i = 0; i < clients.length; i++ )
+		{
+			final int client = i;
+			clients[i] = new Thread( () -> {
+				try
+				{
+					byte[] document = ("<c></c" + client % 2 + ">").getBytes( StandardCharsets.UTF_8 );
+					answers[client] = post( "/validate", document, null, 200 );
+				}
+				catch ( IOException e )
+				{
+					answers[client] = e.toString();
+				}
+			} );
+			clients[i].start();
+		}
+		for ( int i = 0; i < clients.length; i++ )
+		{
+			clients[i].join();
+			assertTrue( "Failed to answer upload " + i, answers[i].startsWith( "{\"wellFormed\":false,\"errors\":" ) );
+		}
+	}
+
+	private String post( String path, byte[] body, String encoding, int status ) throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection) new URL( base + path ).openConnection();
+		try
+		{
+			connection.setRequestMethod( "POST" );
+			connection.setDoOutput( true );
+			connection.setFixedLengthStreamingMode( body.length );
+			if ( encoding != null )
+			{
+				connection.setRequestProperty( "Content-Encoding", encoding );
+			}
+			try ( OutputStream out = connection.getOutputStream() )
+			{
+				out.write( body );
+			}
+			assertEquals( "Unexpected status for " + path, status, connection.getResponseCode() );
+			InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			ByteArrayOutputStream answer = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for ( int read; (read = in.read( buffer )) > 0; )
+			{
+				answer.write( buffer, 0, read );
+			}
+			in.close();
+			return new String( answer.toByteArray(), StandardCharsets.UTF_8 );
+		}
+		finally
+		{
+			connection.disconnect();
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.XMLParser;
+import implementations.XMLValidator;
+import utilities.Diagnostic;
+
+/**
+ * Class Description:
+ * Tests that namespace-aware validation binds prefixes in the scope of the
+ * element declaring them and reports the prefixes that are not bound.
+ */
+
+public class NamespaceTest
+{
+	// Attributes
+	private RecordingSink sink;
+	private XMLParser parser;
+
+	/**
+	 * Creates a namespace-aware parser that records its diagnostics before each
+	 * test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		sink = new RecordingSink();
+		parser = new XMLParser( sink );
+		parser.setNamespaceAware( true );
+	}
+
+	/**
+	 * Clears the parser after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		parser = null;
+		sink = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#setNamespaceAware(boolean)}
+	 * with declared prefixes, a default namespace and the xml prefix.
+	 * @throws IOException
+	 */
+	@Test
+	public void testBound() throws IOException
+	{
+		parse( "<r xmlns='urn:d' xmlns:a=\"urn:a\"><a:x a:k='1' xml:lang='en'><b:y xmlns:b='urn:b'/></a:x></r>" );
+		assertTrue( "Failed to accept bound prefixes.", parser.isWellFormed() );
+		assertEquals( "Failed to report nothing.", 0, sink.diagnostics.size() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#setNamespaceAware(boolean)}
+	 * with element and attribute prefixes that are not bound.
+	 * @throws IOException
+	 */
+	@Test
+	public void testUnbound() throws IOException
+	{
+		parse( "<r><a:x b:k='1' k='2'></a:x></r>" );
+		assertEquals( "Failed to report two errors.", 2, sink.diagnostics.size() );
+		Diagnostic element = sink.diagnostics.get( 0 );
+		assertEquals( "Failed to report code.", Diagnostic.Code.UNBOUND_PREFIX, element.getCode() );
+		assertEquals( "Failed to report message.", "Namespace prefix of <a:x> is not bound", element.getMessage() );
+		assertEquals( "Failed to report line.", 1, element.getLine() );
+		Diagnostic attribute = sink.diagnostics.get( 1 );
+		assertEquals( "Failed to report code.", Diagnostic.Code.UNBOUND_PREFIX, attribute.getCode() );
+		assertEquals( "Failed to report message.", "Namespace prefix of attribute b:k in <a:x> is not bound",
+				attribute.getMessage() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#setNamespaceAware(boolean)}
+	 * with bindings that end with their element and bindings that shadow others.
+	 * @throws IOException
+	 */
+	@Test
+	public void testScope() throws IOException
+	{
+		parse( "<r xmlns:a='urn:1'><x xmlns:b='urn:2'><b:y/></x><b:z/>"
+				+ "<a:w xmlns:a='urn:3'><v xmlns:a=''><a:u/></v><a:t/></a:w><a:s/></r>" );
+		assertEquals( "Failed to report two errors.", 2, sink.diagnostics.size() );
+		assertEquals( "Failed to end scope.", "b:z", sink.diagnostics.get( 0 ).getActual() );
+		assertEquals( "Failed to undeclare prefix.", "a:u", sink.diagnostics.get( 1 ).getActual() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#setNamespaceAware(boolean)}
+	 * with attributes whose different prefixes are bound to the same namespace.
+	 * @throws IOException
+	 */
+	@Test
+	public void testDuplicateExpandedName() throws IOException
+	{
+		parse( "<r xmlns:a='urn:1' xmlns:b='urn:1' xmlns:c='urn:2'><x a:k='1' b:k='2' c:k='3'/><y a:k='1'/></r>" );
+		assertEquals( "Failed to report one error.", 1, sink.diagnostics.size() );
+		Diagnostic diagnostic = sink.diagnostics.get( 0 );
+		assertEquals( "Failed to report code.", Diagnostic.Code.DUPLICATE_ATTRIBUTE, diagnostic.getCode() );
+		assertEquals( "Failed to report message.", "Duplicate attribute b:k in <x>", diagnostic.getMessage() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#setNamespaceAware(boolean)}
+	 * with many prefixes and attributes in one tag.
+	 * @throws IOException
+	 */
+	@Test
+	public void testManyBindings() throws IOException
+	{
+		StringBuilder document = new StringBuilder( "<r" );
+		for ( int i = 0; i < 100; i++ )
+		{
+			document.append( " xmlns:p" ).append( i ).append( "='urn:" ).append( i % 50 ).append( "'" );
+		}
+		for ( int i = 0; i < 100; i++ )
+		{
+			document.append( " p" ).append( i ).append( ":k='1'" );
+		}
+		document.append( "><p99:x/></r>" );
+		parse( document.toString() );
+		assertEquals( "Failed to report duplicates.", 50, sink.diagnostics.size() );
+		assertEquals( "Failed to report first duplicate.", "p50:k", sink.diagnostics.get( 0 ).getActual() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#setNamespaceAware(boolean)}
+	 * with a prefix made of characters outside ASCII, read as bytes and as
+	 * characters.
+	 * @throws IOException
+	 */
+	@Test
+	public void testNonAsciiPrefix() throws IOException
+	{
+		String document = "<r xmlns:\u00e9t\u00e9='urn:\u00e9'><\u00e9t\u00e9:x \u00e9t\u00e9:k='1'/><\u00e9t:y/></r>";
+		parse( document );
+		assertEquals( "Failed to report one error.", 1, sink.diagnostics.size() );
+		assertEquals( "Failed to decode name.", "\u00e9t:y", sink.diagnostics.get( 0 ).getActual() );
+
+		sink = new RecordingSink();
+		parser = new XMLParser( sink );
+		parser.setNamespaceAware( true );
+		parser.parse( new StringReader( document ) );
+		assertEquals( "Failed to report one error.", 1, sink.diagnostics.size() );
+		assertEquals( "Failed to read name.", "\u00e9t:y", sink.diagnostics.get( 0 ).getActual() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLValidator#readCheckpoint(java.io.DataInput)}
+	 * with a checkpoint taken inside a namespace declaration.
+	 * @throws IOException
+	 */
+	@Test
+	public void testCheckpoint() throws IOException
+	{
+		byte[] first = "<r xmlns:a='urn:1'><x xmlns:b='urn".getBytes( StandardCharsets.UTF_8 );
+		byte[] second = ":2'><b:y/><c:z/></x><b:w/><a:v/></r>".getBytes( StandardCharsets.UTF_8 );
+		XMLValidator before = new XMLValidator( sink );
+		before.setNamespaceAware( true );
+		before.feed( ByteBuffer.wrap( first ) );
+		ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+		before.writeCheckpoint( new DataOutputStream( checkpoint ) );
+
+		XMLValidator after = new XMLValidator( sink );
+		after.readCheckpoint( new DataInputStream( new ByteArrayInputStream( checkpoint.toByteArray() ) ) );
+		after.feed( ByteBuffer.wrap( second ) );
+		after.finish();
+		assertEquals( "Failed to report two errors.", 2, sink.diagnostics.size() );
+		assertEquals( "Failed to report unbound prefix.", "c:z", sink.diagnostics.get( 0 ).getActual() );
+		assertEquals( "Failed to end scope.", "b:w", sink.diagnostics.get( 1 ).getActual() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#setNamespaceAware(boolean)}
+	 * when it is off, where a colon is an ordinary name character.
+	 * @throws IOException
+	 */
+	@Test
+	public void testNotAware() throws IOException
+	{
+		sink = new RecordingSink();
+		parser = new XMLParser( sink );
+		parse( "<a:r b:k='1'><c:x/></a:r>" );
+		assertTrue( "Failed to ignore prefixes.", parser.isWellFormed() );
+	}
+
+	private void parse( String document ) throws IOException
+	{
+		parser.parse( Channels.newChannel( new ByteArrayInputStream( document.getBytes( StandardCharsets.UTF_8 ) ) ) );
+	}
+}
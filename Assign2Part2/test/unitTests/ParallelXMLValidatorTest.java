@@ -0,0 +1,261 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.ParallelXMLValidator;
+import implementations.XMLParser;
+import utilities.Diagnostic;
+import utilities.DiagnosticSink;
+
+/**
+ * Class Description:
+ * Tests that the parallel chunked validator prints exactly what the sequential
+ * XMLParser prints, whatever the chunk boundaries cut through.
+ */
+
+public class ParallelXMLValidatorTest
+{
+	// Attributes
+	private File file;
+
+	/**
+	 * Creates a temporary file for each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		file = File.createTempFile( "parallel", ".xml" );
+	}
+
+	/**
+	 * Deletes the temporary file after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		file.delete();
+		file = null;
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.ParallelXMLValidator#validate(FileChannel, DiagnosticSink)}
+	 * with the sample documents split into tiny ranges.
+	 * @throws IOException
+	 */
+	@Test
+	public void testValidateSamples() throws IOException
+	{
+		for ( String sample : new String[] { "res/sample1.xml", "res/sample2.xml" } )
+		{
+			byte[] bytes = Files.readAllBytes( new File( sample ).toPath() );
+			assertSameOutput( new String( bytes, StandardCharsets.UTF_8 ), 16 );
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.ParallelXMLValidator#validate(FileChannel, DiagnosticSink)}
+	 * with boundaries inside comments, CDATA and quoted attribute values.
+	 * @throws IOException
+	 */
+	@Test
+	public void testValidateBoundaryInsideMarkup() throws IOException
+	{
+		String document = "<r>\n<!-- <a> <b> </c> -->\n<a x=\"<b></c>\">\n<![CDATA[ </a> <z> ]]>\n</a>\n</r>\n";
+		for ( int chunk = 1; chunk < document.length(); chunk++ )
+		{
+			assertSameOutput( document, chunk );
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.ParallelXMLValidator#validate(FileChannel, DiagnosticSink)}
+	 * with attribute errors on both sides of the boundaries, and a value left
+	 * open at the end.
+	 * @throws IOException
+	 */
+	@Test
+	public void testValidateAttributeErrors() throws IOException
+	{
+		String document = "<r a='1' a=\"2\">\n<b k=v/><c k>\n</c><d x='1'y='2'/>\n<e v=\"<e>\"/></r>\n<f g='";
+		for ( int chunk = 1; chunk < document.length(); chunk++ )
+		{
+			assertSameOutput( document, chunk );
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.ParallelXMLValidator#validate(FileChannel, DiagnosticSink)}
+	 * with randomly broken documents.
+	 * @throws IOException
+	 */
+	@Test
+	public void testValidateRandomDocuments() throws IOException
+	{
+		Random random = new Random( 304 );
+		String[] parts = { "<a>", "</a>", "<b k='v'>", "</b>", "<c/>", "</c>", "text\n", "<!-- <a> -->",
+				"<![CDATA[</b>]]>", "\n", "<?pi <a>?>" };
+		for ( int round = 0; round < 200; round++ )
+		{
+			StringBuilder document = new StringBuilder();
+			int length = random.nextInt( 60 );
+			for ( int i = 0; i < length; i++ )
+			{
+				document.append( parts[random.nextInt( parts.length )] );
+			}
+			assertSameOutput( document.toString(), 1 + random.nextInt( 12 ) );
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.ParallelXMLValidator#validate(FileChannel, DiagnosticSink)}
+	 * with a range holding more errors than a range keeps for the merge.
+	 * @throws IOException
+	 */
+	@Test
+	public void testValidateGarbageRange() throws IOException
+	{
+		StringBuilder document = new StringBuilder( "<r>\n" );
+		while ( document.length() < 500000 )
+		{
+			document.append( "<a><b/></a>\n" );
+		}
+		for ( int i = 0; i <= ParallelXMLValidator.MAX_ENTRIES; i++ )
+		{
+			document.append( "<x></y>" );
+		}
+		document.append( "\n<a></a></r>\n" );
+		assertSameOutput( document.toString(), 480000 );
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.ParallelXMLValidator#setStopAfter(long)}
+	 * with errors in several ranges.
+	 * @throws IOException
+	 */
+	@Test
+	public void testStopAfter() throws IOException
+	{
+		String document = "<r>\n<a></b>\n<c k=v/>\n</d><e></e></r>\n</f><g>";
+		for ( long limit = 1; limit <= 6; limit++ )
+		{
+			for ( int chunk = 1; chunk < document.length(); chunk += 3 )
+			{
+				assertSameOutput( document, chunk, limit );
+			}
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.ParallelXMLValidator#setStopAfter(long)}
+	 * checking that no worker is still scanning once the limit has been reached.
+	 * @throws IOException
+	 */
+	@Test
+	public void testStopAfterStopsWorkers() throws IOException
+	{
+		StringBuilder document = new StringBuilder( "<r></x>\n" );
+		while ( document.length() < 4000000 )
+		{
+			document.append( "<a><b/></a>\n" );
+		}
+		document.append( "</r>\n" );
+		assertSameOutput( document.toString(), 100000, 1 );
+		for ( Thread thread : Thread.getAllStackTraces().keySet() )
+		{
+			assertFalse( "Worker still running", thread.getName().equals( "xml-range" ) );
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.ParallelXMLValidator#validate(FileChannel, DiagnosticSink)}
+	 * with a UTF-16 document, which cannot be split on bytes.
+	 * @throws IOException
+	 */
+	@Test
+	public void testValidateUtf16() throws IOException
+	{
+		String document = "\uFEFF<r>\n<a>\u00E9t\u00E9</b>\n</r>\n";
+		Files.write( file.toPath(), document.getBytes( StandardCharsets.UTF_16LE ) );
+		try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) )
+		{
+			RecordingSink expected = new RecordingSink();
+			new XMLParser( expected ).parseFile( channel, false );
+
+			RecordingSink actual = new RecordingSink();
+			new ParallelXMLValidator( 3, 1 ).validate( channel, actual );
+
+			assertEquals( expected.text.toString(), actual.text.toString() );
+			assertTrue( actual.text.toString().contains( "Mismatched tag </b>, expected </a>" ) );
+		}
+	}
+
+	private void assertSameOutput( String document, int chunkSize ) throws IOException
+	{
+		assertSameOutput( document, chunkSize, 0 );
+	}
+
+	private void assertSameOutput( String document, int chunkSize, long stopAfter ) throws IOException
+	{
+		Files.write( file.toPath(), document.getBytes( StandardCharsets.UTF_8 ) );
+		try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) )
+		{
+			RecordingSink expected = new RecordingSink();
+			XMLParser parser = new XMLParser( expected );
+			ParallelXMLValidator validator = new ParallelXMLValidator( 3, chunkSize );
+			if ( stopAfter > 0 )
+			{
+				parser.setStopAfter( stopAfter );
+				validator.setStopAfter( stopAfter );
+			}
+			parser.parseMapped( channel );
+
+			RecordingSink actual = new RecordingSink();
+			validator.validate( channel, actual );
+
+			assertEquals( "Parallel output differs for: " + document, expected.text.toString(), actual.text.toString() );
+		}
+	}
+
+	/**
+	 * Records every diagnostic with its full position.
+	 */
+	private static class RecordingSink implements DiagnosticSink
+	{
+		private final StringBuilder text = new StringBuilder();
+
+		@Override
+		public void report( Diagnostic diagnostic )
+		{
+			text.append( diagnostic.getLine() ).append( ':' ).append( diagnostic.getColumn() ).append( ':' )
+					.append( diagnostic.getOffset() ).append( ' ' ).append( diagnostic ).append( '\n' );
+		}
+
+		@Override
+		public void finish( boolean wellFormed )
+		{
+			text.append( wellFormed ).append( '\n' );
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.ReadAheadReader;
+import implementations.XMLParser;
+
+/**
+ * Class Description:
+ * Tests for reading ahead on an I/O thread through a pool of buffers.
+ */
+
+public class ReadAheadReaderTest
+{
+	// Attributes
+	private byte[] data;
+
+	/**
+	 * Creates random input larger than the buffer pool before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		data = new byte[100000];
+		new Random( 15 ).nextBytes( data );
+	}
+
+	/**
+	 * Cleans up instances used after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		data = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.ReadAheadReader#next()}
+	 * delivering every byte once and in order through a small pool.
+	 * @throws IOException
+	 */
+	@Test
+	public void testNext() throws IOException
+	{
+		byte[] copy = new byte[data.length];
+		int length = 0;
+		try ( ReadAheadReader reader = new ReadAheadReader( Channels.newChannel( new ByteArrayInputStream( data ) ), 3,
+				777 ) )
+		{
+			ByteBuffer buffer;
+			while ( (buffer = reader.next()) != null )
+			{
+				int count = buffer.remaining();
+				buffer.get( copy, length, count );
+				length += count;
+				reader.recycle( buffer );
+			}
+		}
+		assertEquals( "Failed to read every byte.", data.length, length );
+		assertArrayEquals( "Failed to keep bytes in order.", data, copy );
+	}
+
+	/**
+	 * Test method for {@link implementations.ReadAheadReader#next()}
+	 * when the channel fails part way.
+	 * @throws IOException
+	 */
+	@Test( expected = IOException.class )
+	public void testNextFailure() throws IOException
+	{
+		InputStream failing = new InputStream()
+		{
+			private int count = 0;
+
+			@Override
+			public int read() throws IOException
+			{
+				if ( count++ >= 5000 )
+				{
+					throw new IOException( "disk gone" );
+				}
+				return 'x';
+			}
+		};
+		try ( ReadAheadReader reader = new ReadAheadReader( Channels.newChannel( failing ), 2, 1024 ) )
+		{
+			ByteBuffer buffer;
+			while ( (buffer = reader.next()) != null )
+			{
+				reader.recycle( buffer );
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link implementations.ReadAheadReader#next()}
+	 * when the channel throws an unchecked exception part way, which must not
+	 * look like the end of the input.
+	 * @throws IOException
+	 */
+	@Test( expected = IOException.class )
+	public void testNextUncheckedFailure() throws IOException
+	{
+		InputStream failing = new InputStream()
+		{
+			private int count = 0;
+
+			@Override
+			public int read()
+			{
+				if ( count++ >= 5000 )
+				{
+					throw new IllegalStateException( "decoder broke" );
+				}
+				return 'x';
+			}
+		};
+		try ( ReadAheadReader reader = new ReadAheadReader( Channels.newChannel( failing ), 2, 1024 ) )
+		{
+			ByteBuffer buffer;
+			while ( (buffer = reader.next()) != null )
+			{
+				reader.recycle( buffer );
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link implementations.ReadAheadReader#close()}
+	 * waiting for the read in progress, so the channel is no longer read once
+	 * it returns.
+	 * @throws IOException
+	 */
+	@Test
+	public void testCloseWaits() throws IOException
+	{
+		AtomicInteger reads = new AtomicInteger();
+		AtomicBoolean reading = new AtomicBoolean();
+		ReadableByteChannel slow = new ReadableByteChannel()
+		{
+			@Override
+			public int read( ByteBuffer buffer ) throws IOException
+			{
+				reading.set( true );
+				try
+				{
+					Thread.sleep( 20 );
+				}
+				catch ( InterruptedException e )
+				{
+					throw new IOException( e );
+				}
+				buffer.put( (byte) 'x' );
+				reads.incrementAndGet();
+				reading.set( false );
+				return 1;
+			}
+
+			@Override
+			public boolean isOpen()
+			{
+				return true;
+			}
+
+			@Override
+			public void close()
+			{
+				// Not needed
+			}
+		};
+		ReadAheadReader reader = new ReadAheadReader( slow, 2, 4 );
+		reader.recycle( reader.next() );
+		reader.close();
+		assertFalse( "Failed to wait for the read in progress.", reading.get() );
+		int count = reads.get();
+		try
+		{
+			Thread.sleep( 100 );
+		}
+		catch ( InterruptedException e )
+		{
+			fail( "Interrupted." );
+		}
+		assertEquals( "Failed to stop reading.", count, reads.get() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#parsePipelined(ReadableByteChannel)}
+	 * printing what a direct read prints.
+	 * @throws IOException
+	 */
+	@Test
+	public void testParsePipelined() throws IOException
+	{
+		for ( String sample : new String[] { "res/sample1.xml", "res/sample2.xml" } )
+		{
+			byte[] document = Files.readAllBytes( Paths.get( sample ) );
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			new XMLParser( new PrintStream( expected ) ).parse( Channels.newChannel( new ByteArrayInputStream( document ) ) );
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			new XMLParser( new PrintStream( actual ) )
+					.parsePipelined( Channels.newChannel( new ByteArrayInputStream( document ) ) );
+			assertEquals( "Pipelined output differs for " + sample, expected.toString(), actual.toString() );
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package test.unitTests;
+
+import implementations.MyArrayList;
+import utilities.Diagnostic;
+import utilities.DiagnosticSink;
+
+/**
+ * Class Description:
+ * A diagnostic sink for tests that keeps every diagnostic reported, for tests
+ * that check them and for those that only need somewhere to send them.
+ */
+
+public class RecordingSink implements DiagnosticSink
+{
+	// Attributes
+	final MyArrayList<Diagnostic> diagnostics = new MyArrayList<>();
+
+	@Override
+	public void report( Diagnostic diagnostic )
+	{
+		diagnostics.add( diagnostic );
+	}
+
+	@Override
+	public void finish( boolean wellFormed )
+	{
+		// Not needed
+	}
+}
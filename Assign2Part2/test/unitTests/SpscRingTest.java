@@ -0,0 +1,106 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.SpscRing;
+
+/**
+ * Class Description:
+ * Tests for the single-producer single-consumer ring.
+ */
+
+public class SpscRingTest
+{
+	// Attributes
+	private SpscRing<Integer> ring;
+
+	/**
+	 * Creates a ring with room for three elements, rounded up to four.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		ring = new SpscRing<>( 3 );
+	}
+
+	/**
+	 * Cleans up instances used after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		ring = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.SpscRing#offer(Object)} and
+	 * {@link implementations.SpscRing#poll()} on one thread.
+	 */
+	@Test
+	public void testOfferPoll()
+	{
+		assertEquals( "Failed to round capacity.", 4, ring.capacity() );
+		assertNull( "Failed to report empty ring.", ring.poll() );
+		for ( int i = 0; i < 4; i++ )
+		{
+			assertTrue( "Failed to accept element.", ring.offer( i ) );
+		}
+		assertFalse( "Failed to refuse element when full.", ring.offer( 4 ) );
+		assertEquals( "Failed to count elements.", 4, ring.size() );
+		for ( int i = 0; i < 4; i++ )
+		{
+			assertEquals( "Failed to keep order.", Integer.valueOf( i ), ring.poll() );
+		}
+		assertNull( "Failed to empty ring.", ring.poll() );
+	}
+
+	/**
+	 * Test method for {@link implementations.SpscRing#SpscRing(int)}
+	 * with no capacity.
+	 */
+	@Test( expected = IllegalArgumentException.class )
+	public void testZeroCapacity()
+	{
+		new SpscRing<Integer>( 0 );
+	}
+
+	/**
+	 * Test method for {@link implementations.SpscRing#offer(Object)} and
+	 * {@link implementations.SpscRing#poll()} with the producer on another
+	 * thread.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testTwoThreads() throws InterruptedException
+	{
+		final int count = 200000;
+		Thread producer = new Thread( () ->
+		{
+			for ( int i = 0; i < count; i++ )
+			{
+				for ( int attempt = 0; !ring.offer( i ); attempt++ )
+				{
+					SpscRing.idle( attempt );
+				}
+			}
+		} );
+		producer.start();
+		for ( int i = 0; i < count; i++ )
+		{
+			Integer element;
+			for ( int attempt = 0; (element = ring.poll()) == null; attempt++ )
+			{
+				SpscRing.idle( attempt );
+			}
+			assertEquals( "Failed to keep order across threads.", i, element.intValue() );
+		}
+		producer.join();
+		assertNull( "Failed to deliver each element once.", ring.poll() );
+	}
+}
@@ -0,0 +1,185 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.TailXMLValidator;
+import implementations.XMLParser;
+import utilities.Diagnostic;
+import utilities.DiagnosticSink;
+
+/**
+ * Class Description:
+ * Tests that validating a growing file run by run, from checkpoints, reports
+ * what a single run over the whole file reports.
+ */
+
+public class TailXMLValidatorTest
+{
+	// Attributes
+	private Path log;
+	private Path checkpoint;
+
+	/**
+	 * Creates a log file and a checkpoint location before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		log = File.createTempFile( "tail", ".xml" ).toPath();
+		checkpoint = File.createTempFile( "tail", ".checkpoint" ).toPath();
+		Files.delete( checkpoint );
+	}
+
+	/**
+	 * Deletes the temporary files after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		Files.deleteIfExists( log );
+		Files.deleteIfExists( checkpoint );
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.TailXMLValidator#validate(FileChannel, DiagnosticSink)}
+	 * with a log appended to in pieces that cut through tags, comments and
+	 * CDATA sections.
+	 * @throws IOException
+	 */
+	@Test
+	public void testValidateAppends() throws IOException
+	{
+		String document = "<log>\n<e id='1'>a</e>\n<!-- <x> -->\n<e><![CDATA[</e>]]></f>\n</g>\n<e>\u00e9</e>\n</log>\n<late/>";
+		for ( int step = 1; step <= 7; step++ )
+		{
+			Files.deleteIfExists( checkpoint );
+			Files.write( log, new byte[0] );
+			StringBuilder tagErrors = new StringBuilder();
+			String last = "";
+			byte[] bytes = document.getBytes( StandardCharsets.UTF_8 );
+			for ( int end = Math.min( step, bytes.length ); ; end = Math.min( end + step, bytes.length ) )
+			{
+				Files.write( log, slice( bytes, end ), StandardOpenOption.APPEND );
+				RecordingSink sink = new RecordingSink();
+				TailXMLValidator validator = new TailXMLValidator( checkpoint );
+				try ( FileChannel channel = FileChannel.open( log, StandardOpenOption.READ ) )
+				{
+					validator.validate( channel, sink );
+				}
+				assertEquals( "Failed to resume.", end > step, validator.isResumed() );
+				tagErrors.append( sink.tagErrors );
+				last = sink.endErrors.toString();
+				if ( end == bytes.length )
+				{
+					break;
+				}
+			}
+
+			RecordingSink expected = new RecordingSink();
+			try ( FileChannel channel = FileChannel.open( log, StandardOpenOption.READ ) )
+			{
+				new XMLParser( expected ).parse( channel );
+			}
+			assertEquals( "Tag errors differ for step " + step, expected.tagErrors.toString(), tagErrors.toString() );
+			assertEquals( "Final errors differ for step " + step, expected.endErrors.toString(), last );
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.TailXMLValidator#validate(FileChannel, DiagnosticSink)}
+	 * with a log that was replaced by a different file between runs.
+	 * @throws IOException
+	 */
+	@Test
+	public void testValidateReplacedFile() throws IOException
+	{
+		Files.write( log, "<log>\n<a></a>\n".getBytes( StandardCharsets.UTF_8 ) );
+		TailXMLValidator validator = new TailXMLValidator( checkpoint );
+		try ( FileChannel channel = FileChannel.open( log, StandardOpenOption.READ ) )
+		{
+			assertFalse( "Failed to report open root.", validator.validate( channel, new RecordingSink() ) );
+		}
+
+		Files.write( log, "<doc>\n<b></b>\n</doc>\n".getBytes( StandardCharsets.UTF_8 ) );
+		RecordingSink sink = new RecordingSink();
+		try ( FileChannel channel = FileChannel.open( log, StandardOpenOption.READ ) )
+		{
+			assertTrue( "Failed to validate new file.", validator.validate( channel, sink ) );
+		}
+		assertFalse( "Failed to start over.", validator.isResumed() );
+		assertEquals( "Failed to report new file only.", "true\n", sink.tagErrors.toString() + sink.endErrors );
+	}
+
+	// The bytes appended to reach the given length
+	/**
+	 * Test method for
+	 * {@link implementations.TailXMLValidator#validate(FileChannel, DiagnosticSink)}
+	 * with a UTF-16 log, which cannot be scanned byte by byte and is refused
+	 * without saving a checkpoint.
+	 * @throws IOException
+	 */
+	@Test
+	public void testValidateUtf16() throws IOException
+	{
+		Files.write( log, "\ufeff<log><e>a</e>".getBytes( StandardCharsets.UTF_16LE ) );
+		TailXMLValidator validator = new TailXMLValidator( checkpoint );
+		try ( FileChannel channel = FileChannel.open( log, StandardOpenOption.READ ) )
+		{
+			validator.validate( channel, new RecordingSink() );
+			fail( "Failed to refuse a UTF-16 log." );
+		}
+		catch ( IOException e )
+		{
+			assertTrue( "Failed to name the encoding.", e.getMessage().contains( "UTF-16LE" ) );
+		}
+		assertFalse( "Failed to leave no checkpoint.", Files.exists( checkpoint ) );
+	}
+
+	private byte[] slice( byte[] bytes, int end ) throws IOException
+	{
+		int start = (int) Files.size( log );
+		byte[] piece = new byte[end - start];
+		System.arraycopy( bytes, start, piece, 0, piece.length );
+		return piece;
+	}
+
+	/**
+	 * Separates the diagnostics found in the input from those given when the
+	 * input ends.
+	 */
+	private static class RecordingSink implements DiagnosticSink
+	{
+		private final StringBuilder tagErrors = new StringBuilder();
+		private final StringBuilder endErrors = new StringBuilder();
+
+		@Override
+		public void report( Diagnostic diagnostic )
+		{
+			StringBuilder text = diagnostic.getLine() > 0 ? tagErrors : endErrors;
+			text.append( diagnostic.getColumn() ).append( ':' ).append( diagnostic.getOffset() ).append( ' ' )
+					.append( diagnostic ).append( '\n' );
+		}
+
+		@Override
+		public void finish( boolean wellFormed )
+		{
+			endErrors.append( wellFormed ).append( '\n' );
+		}
+	}
+}
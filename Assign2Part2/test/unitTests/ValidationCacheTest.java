@@ -0,0 +1,178 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.ValidationCache;
+
+/**
+ * Class Description:
+ * Tests for the on-disk cache of validation results.
+ */
+
+public class ValidationCacheTest
+{
+	// Attributes
+	private Path document;
+	private Path cacheFile;
+	private ValidationCache cache;
+
+	/**
+	 * Creates a document and an empty cache before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		document = File.createTempFile( "cached", ".xml" ).toPath();
+		cacheFile = File.createTempFile( "cache", ".bin" ).toPath();
+		Files.write( document, "<a></b>".getBytes( StandardCharsets.UTF_8 ) );
+		cache = new ValidationCache( cacheFile, ValidationCache.DEFAULT_MAX_BYTES );
+	}
+
+	/**
+	 * Deletes the temporary files after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		Files.deleteIfExists( document );
+		Files.deleteIfExists( cacheFile );
+		cache = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationCache#lookup(String, ValidationCache.Stamp)}
+	 * with an unchanged file.
+	 * @throws IOException
+	 */
+	@Test
+	public void testLookupUnchanged() throws IOException
+	{
+		assertNull( "Failed to miss empty cache.", cache.lookup( "k", ValidationCache.stamp( document ) ) );
+		cache.store( "k", ValidationCache.stamp( document ), false, "report" );
+		ValidationCache.Entry entry = cache.lookup( "k", ValidationCache.stamp( document ) );
+		assertNotNull( "Failed to hit unchanged file.", entry );
+		assertFalse( "Failed to keep verdict.", entry.isWellFormed() );
+		assertEquals( "Failed to keep report.", "report", entry.getOutput() );
+		assertEquals( "Failed to count hit.", 1, cache.getHits() );
+		assertEquals( "Failed to count miss.", 1, cache.getMisses() );
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationCache#lookup(String, ValidationCache.Stamp)}
+	 * with a file whose content changed but not its size.
+	 * @throws IOException
+	 */
+	@Test
+	public void testLookupChanged() throws IOException
+	{
+		cache.store( "k", ValidationCache.stamp( document ), false, "report" );
+		Files.write( document, "<a></a>".getBytes( StandardCharsets.UTF_8 ) );
+		Files.setLastModifiedTime( document, FileTime.fromMillis( 1000 ) );
+		assertNull( "Failed to miss changed file.", cache.lookup( "k", ValidationCache.stamp( document ) ) );
+		assertEquals( "Failed to drop stale entry.", 0, cache.size() );
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationCache#lookup(String, ValidationCache.Stamp)}
+	 * with a file that was touched but kept its content.
+	 * @throws IOException
+	 */
+	@Test
+	public void testLookupTouched() throws IOException
+	{
+		cache.store( "k", ValidationCache.stamp( document ), false, "report" );
+		Files.setLastModifiedTime( document, FileTime.fromMillis( 1000 ) );
+		assertNotNull( "Failed to recognise same content.", cache.lookup( "k", ValidationCache.stamp( document ) ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationCache#store(String, ValidationCache.Stamp, boolean, String)}
+	 * evicting the least recently used entry once the cache is full.
+	 * @throws IOException
+	 */
+	@Test
+	public void testStoreEvictsLeastRecentlyUsed() throws IOException
+	{
+		cache = new ValidationCache( cacheFile, 300 );
+		cache.store( "first", ValidationCache.stamp( document ), true, "" );
+		cache.store( "second", ValidationCache.stamp( document ), true, "" );
+		cache.lookup( "first", ValidationCache.stamp( document ) );
+		cache.store( "third", ValidationCache.stamp( document ), true, new String( new char[100] ) );
+		assertNotNull( "Failed to keep recently used entry.", cache.lookup( "first", ValidationCache.stamp( document ) ) );
+		assertNull( "Failed to evict least recently used entry.", cache.lookup( "second", ValidationCache.stamp( document ) ) );
+		assertNotNull( "Failed to keep newest entry.", cache.lookup( "third", ValidationCache.stamp( document ) ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationCache#save()} and
+	 * {@link implementations.ValidationCache#load(Path, long)}.
+	 * @throws IOException
+	 */
+	@Test
+	public void testSaveAndLoad() throws IOException
+	{
+		cache.store( "k", ValidationCache.stamp( document ), true, "Line 1: \u00e9\n" );
+		cache.save();
+		ValidationCache loaded = ValidationCache.load( cacheFile, ValidationCache.DEFAULT_MAX_BYTES );
+		ValidationCache.Entry entry = loaded.lookup( "k", ValidationCache.stamp( document ) );
+		assertNotNull( "Failed to load entry.", entry );
+		assertTrue( "Failed to load verdict.", entry.isWellFormed() );
+		assertEquals( "Failed to load report.", "Line 1: \u00e9\n", entry.getOutput() );
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationCache#store(String, ValidationCache.Stamp, boolean, String)}
+	 * with a file that changed after it was stamped, whose result is not reused.
+	 * @throws IOException
+	 */
+	@Test
+	public void testStoreChangedWhileValidated() throws IOException
+	{
+		ValidationCache.Stamp stamp = ValidationCache.stamp( document );
+		stamp.getHash();
+		Files.write( document, "<a></a>".getBytes( StandardCharsets.UTF_8 ) );
+		Files.setLastModifiedTime( document, FileTime.fromMillis( 1000 ) );
+		cache.store( "k", stamp, false, "report" );
+		assertNull( "Failed to miss changed file.", cache.lookup( "k", ValidationCache.stamp( document ) ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationCache#load(Path, long)}
+	 * with a damaged cache file.
+	 * @throws IOException
+	 */
+	@Test
+	public void testLoadDamaged() throws IOException
+	{
+		Files.write( cacheFile, new byte[] { 1, 2, 3 } );
+		assertEquals( "Failed to start empty.", 0, ValidationCache.load( cacheFile, 1000 ).size() );
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationCache#hash(Path)}
+	 * telling apart files that differ only in their last bytes.
+	 * @throws IOException
+	 */
+	@Test
+	public void testHash() throws IOException
+	{
+		long before = ValidationCache.hash( document );
+		Files.write( document, "<a></c>".getBytes( StandardCharsets.UTF_8 ) );
+		assertNotEquals( "Failed to change hash.", before, ValidationCache.hash( document ) );
+		Files.write( document, "<a></b>".getBytes( StandardCharsets.UTF_8 ) );
+		assertEquals( "Failed to repeat hash.", before, ValidationCache.hash( document ) );
+	}
+}
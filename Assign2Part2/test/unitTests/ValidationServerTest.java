@@ -0,0 +1,257 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.ValidationServer;
+
+/**
+ * Class Description:
+ * Tests that the validation server answers requests sent over a socket with
+ * the same messages as the command line, in request order.
+ */
+
+public class ValidationServerTest
+{
+	// Attributes
+	private ValidationServer server;
+	private InetSocketAddress address;
+	private Path file;
+
+	/**
+	 * Starts a server on a free loopback port before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		server = new ValidationServer( 4, false );
+		address = (InetSocketAddress) server.start( ValidationServer.parseAddress( "0" ) );
+		file = File.createTempFile( "served", ".xml" ).toPath();
+	}
+
+	/**
+	 * Stops the server after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		server.close();
+		Files.deleteIfExists( file );
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationServer#start(SocketAddress)}
+	 * with a file request and a data request sent together.
+	 * @throws IOException
+	 */
+	@Test
+	public void testPipelinedRequests() throws IOException
+	{
+		Files.write( file, "<a><b/></a>".getBytes( StandardCharsets.UTF_8 ) );
+		byte[] document = "<a>\n</b>".getBytes( StandardCharsets.UTF_8 );
+		try ( Socket socket = new Socket( address.getAddress(), address.getPort() ) )
+		{
+			OutputStream out = socket.getOutputStream();
+			out.write( ("VALIDATE " + file + "\nDATA " + document.length + "\n").getBytes( StandardCharsets.UTF_8 ) );
+			out.write( document );
+			out.write( "VALIDATE \n".getBytes( StandardCharsets.UTF_8 ) );
+			out.flush();
+			socket.shutdownOutput();
+
+			BufferedReader in = new BufferedReader( new InputStreamReader( socket.getInputStream(), StandardCharsets.UTF_8 ) );
+			assertEquals( "Failed to validate file.", "XML document is constructed correctly.", in.readLine() );
+			assertEquals( "Failed to end file answer.", "END OK", in.readLine() );
+			assertEquals( "Failed to stream diagnostic.", "Line 2: Mismatched tag </b>, expected </a>", in.readLine() );
+			assertEquals( "Failed to end data answer.", "END MALFORMED", in.readLine() );
+			assertTrue( "Failed to report unreadable file.", in.readLine().startsWith( "END ERROR" ) );
+			assertNull( "Failed to hang up after the last answer.", in.readLine() );
+		}
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationServer#start(SocketAddress)}
+	 * with many clients at once.
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentClients() throws Exception
+	{
+		Thread[] clients = new Thread[16];
+		String[] answers = new String[clients.length];
+		for ( int i = 0; i < clients.length; i++ )
+		{
+			final int client = i;
+			clients[i] = new Thread( () -> {
+				try ( Socket socket = new Socket( address.getAddress(), address.getPort() ) )
+				{
+					OutputStream out = socket.getOutputStream();
+					BufferedReader in = new BufferedReader(
+							new InputStreamReader( socket.getInputStream(), StandardCharsets.UTF_8 ) );
+					StringBuilder answer = new StringBuilder();
+					for ( int request = 0; request < 50; request++ )
+					{
+						byte[] document = ("<c" + client + "></c" + request % 2 + ">").getBytes( StandardCharsets.UTF_8 );
+						out.write( ("DATA " + document.length + "\r\n").getBytes( StandardCharsets.UTF_8 ) );
+						out.write( document );
+						out.flush();
+						for ( String line = in.readLine(); line != null; line = in.readLine() )
+						{
+							if ( line.startsWith( "END" ) )
+							{
+								answer.append( line.charAt( 4 ) );
+								break;
+							}
+						}
+					}
+					answers[client] = answer.toString();
+				}
+				catch ( IOException e )
+				{
+					answers[client] = e.toString();
+				}
+			} );
+			clients[i].start();
+		}
+		for ( int i = 0; i < clients.length; i++ )
+		{
+			clients[i].join();
+			StringBuilder expected = new StringBuilder();
+			for ( int request = 0; request < 50; request++ )
+			{
+				expected.append( request % 2 == i ? 'O' : 'M' );
+			}
+			assertEquals( "Failed to answer client " + i, expected.toString(), answers[i] );
+		}
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationServer#start(SocketAddress)}
+	 * with a request the server does not know and a size that is not a number.
+	 * @throws IOException
+	 */
+	@Test
+	public void testBadRequests() throws IOException
+	{
+		try ( Socket socket = new Socket( address.getAddress(), address.getPort() ) )
+		{
+			OutputStream out = socket.getOutputStream();
+			out.write( "HELLO\nDATA 12x\n".getBytes( StandardCharsets.UTF_8 ) );
+			out.flush();
+
+			BufferedReader in = new BufferedReader( new InputStreamReader( socket.getInputStream(), StandardCharsets.UTF_8 ) );
+			assertEquals( "Failed to reject unknown request.", "END ERROR Unknown request: HELLO", in.readLine() );
+			assertEquals( "Failed to reject bad size.", "END ERROR Invalid document size", in.readLine() );
+			assertNull( "Failed to hang up after a bad size.", in.readLine() );
+		}
+	}
+	/**
+	 * Test method for {@link implementations.ValidationServer#start(SocketAddress)}
+	 * with documents far larger than the chunks a body is handed over in,
+	 * followed by another request.
+	 * @throws IOException
+	 */
+	@Test
+	public void testLargeDocuments() throws IOException
+	{
+		String answer = "XML document is constructed correctly.\nEND OK\n";
+		assertEquals( "Failed to validate large document.", answer + answer, exchange( largeDocument( "" ) ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationServer#setVerdictOnly(boolean)}
+	 * with a large document whose validation stops at its first error, leaving
+	 * the rest of its body to be skipped before the next request.
+	 * @throws Exception
+	 */
+	@Test
+	public void testLargeDocumentStoppedEarly() throws Exception
+	{
+		server.close();
+		server = new ValidationServer( 4, false );
+		server.setVerdictOnly( true );
+		address = (InetSocketAddress) server.start( ValidationServer.parseAddress( "0" ) );
+		assertEquals( "Failed to skip the rest of the body.", "END MALFORMED\nXML document is constructed correctly.\n"
+				+ "END OK\n", exchange( largeDocument( "</c>" ) ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.ValidationServer#start(SocketAddress)}
+	 * with a client that hangs up part way through a document.
+	 * @throws IOException
+	 */
+	@Test
+	public void testTruncatedDocument() throws IOException
+	{
+		try ( Socket socket = new Socket( address.getAddress(), address.getPort() ) )
+		{
+			OutputStream out = socket.getOutputStream();
+			out.write( "DATA 100000\n<a>".getBytes( StandardCharsets.UTF_8 ) );
+			out.flush();
+			socket.shutdownOutput();
+
+			BufferedReader in = new BufferedReader( new InputStreamReader( socket.getInputStream(), StandardCharsets.UTF_8 ) );
+			assertEquals( "Failed to report cut document.",
+					"END ERROR Connection closed before the end of the document", in.readLine() );
+			assertNull( "Failed to hang up.", in.readLine() );
+		}
+	}
+
+	// A document of several megabytes, with the given text near its start
+	private static byte[] largeDocument( String start )
+	{
+		StringBuilder document = new StringBuilder( "<a><b>" ).append( start );
+		for ( int i = 0; i < 200000; i++ )
+		{
+			document.append( "<item id='" ).append( i ).append( "'>text</item>" );
+		}
+		return document.append( "</b></a>" ).toString().getBytes( StandardCharsets.UTF_8 );
+	}
+
+	// Sends the document and a small well-formed one, and returns every answer
+	private String exchange( byte[] document ) throws IOException
+	{
+		try ( Socket socket = new Socket( address.getAddress(), address.getPort() ) )
+		{
+			Thread writer = new Thread( () -> {
+				try
+				{
+					OutputStream out = socket.getOutputStream();
+					out.write( ("DATA " + document.length + "\n").getBytes( StandardCharsets.UTF_8 ) );
+					out.write( document );
+					out.write( "DATA 7\n<a></a>".getBytes( StandardCharsets.UTF_8 ) );
+					out.flush();
+					socket.shutdownOutput();
+				}
+				catch ( IOException e )
+				{
+					// The reader sees the connection end early
+				}
+			} );
+			writer.start();
+			StringBuilder answers = new StringBuilder();
+			BufferedReader in = new BufferedReader( new InputStreamReader( socket.getInputStream(), StandardCharsets.UTF_8 ) );
+			for ( String line = in.readLine(); line != null; line = in.readLine() )
+			{
+				answers.append( line ).append( '\n' );
+			}
+			return answers.toString();
+		}
+	}
+}
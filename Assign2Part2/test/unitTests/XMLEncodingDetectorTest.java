@@ -0,0 +1,144 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.XMLEncodingDetector;
+import implementations.XMLParser;
+import utilities.Diagnostic;
+import utilities.DiagnosticSink;
+
+/**
+ * Class Description:
+ * Tests for detecting a document's encoding and reading it accordingly.
+ */
+
+public class XMLEncodingDetectorTest
+{
+	// Attributes
+	private File file;
+
+	/**
+	 * Creates a temporary file for each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		file = File.createTempFile( "encoding", ".xml" );
+	}
+
+	/**
+	 * Deletes the temporary file after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		file.delete();
+		file = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLEncodingDetector#detect(byte[], int)}
+	 * with byte order marks.
+	 */
+	@Test
+	public void testDetectByteOrderMarks()
+	{
+		assertEquals( "Failed UTF-8 BOM.", StandardCharsets.UTF_8, detect( 0xEF, 0xBB, 0xBF, '<' ) );
+		assertEquals( "Failed UTF-16BE BOM.", StandardCharsets.UTF_16BE, detect( 0xFE, 0xFF, 0, '<' ) );
+		assertEquals( "Failed UTF-16LE BOM.", StandardCharsets.UTF_16LE, detect( 0xFF, 0xFE, '<', 0 ) );
+		assertEquals( "Failed UTF-16LE without BOM.", StandardCharsets.UTF_16LE, detect( '<', 0, '?', 0 ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLEncodingDetector#detect(byte[], int)}
+	 * with encoding declarations.
+	 */
+	@Test
+	public void testDetectDeclaration()
+	{
+		assertEquals( "Failed declared encoding.", StandardCharsets.ISO_8859_1,
+				detect( "<?xml version=\"1.0\" encoding = 'ISO-8859-1'?><a/>" ) );
+		assertEquals( "Failed missing declaration.", StandardCharsets.UTF_8, detect( "<a encoding='latin1'/>" ) );
+		assertEquals( "Failed unknown encoding.", StandardCharsets.UTF_8,
+				detect( "<?xml version=\"1.0\" encoding=\"no-such-charset\"?>" ) );
+		assertEquals( "Failed empty document.", StandardCharsets.UTF_8, detect( "" ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#parseFile(FileChannel, boolean)}
+	 * with a mismatched UTF-16 document.
+	 * @throws IOException
+	 */
+	@Test
+	public void testParseFileUtf16() throws IOException
+	{
+		assertEquals( "Failed to read UTF-16.", "Line 2: Mismatched tag </b>, expected </\u00e9>",
+				parse( "<r>\n<\u00e9></b></r>", StandardCharsets.UTF_16 ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#parseFile(FileChannel, boolean)}
+	 * with a declared single-byte encoding whose names are not ASCII.
+	 * @throws IOException
+	 */
+	@Test
+	public void testParseFileLatin1() throws IOException
+	{
+		assertEquals( "Failed to read Latin-1.", "XML document is constructed correctly.",
+				parse( "<?xml version='1.0' encoding='ISO-8859-1'?>\n<\u00e9></\u00e9>", StandardCharsets.ISO_8859_1 ) );
+	}
+
+	private String parse( String document, Charset charset ) throws IOException
+	{
+		Files.write( file.toPath(), document.getBytes( charset ) );
+		final StringBuilder output = new StringBuilder();
+		try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) )
+		{
+			new XMLParser( new DiagnosticSink()
+			{
+				@Override
+				public void report( Diagnostic diagnostic )
+				{
+					output.append( diagnostic );
+				}
+
+				@Override
+				public void finish( boolean wellFormed )
+				{
+					output.append( wellFormed ? "XML document is constructed correctly." : "" );
+				}
+			} ).parseFile( channel, false );
+		}
+		return output.toString();
+	}
+
+	private static Charset detect( int... bytes )
+	{
+		byte[] head = new byte[bytes.length];
+		for ( int i = 0; i < bytes.length; i++ )
+		{
+			head[i] = (byte) bytes[i];
+		}
+		return XMLEncodingDetector.detect( head, head.length );
+	}
+
+	private static Charset detect( String head )
+	{
+		byte[] bytes = head.getBytes( StandardCharsets.US_ASCII );
+		return XMLEncodingDetector.detect( bytes, bytes.length );
+	}
+}
@@ -0,0 +1,191 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.XMLIndex;
+import implementations.XMLParser;
+
+/**
+ * Class Description:
+ * Tests that the structural index records every element's byte range and
+ * finds elements by name and path after a save and load.
+ */
+
+public class XMLIndexTest
+{
+	// Attributes
+	private static final String DOCUMENT = "<?xml version=\"1.0\"?>\n<XMLDATA>\n"
+			+ "<Submission id='1'><Category>\u00e9<Driver/></Category><!-- <Category> --></Submission>\n"
+			+ "<Submission><Category><Driver a=\">\">x</Driver></Category><Category/></Submission>\n"
+			+ "<Other><Category/></Other>\n</XMLDATA>\n";
+
+	private Path document;
+	private Path sidecar;
+
+	/**
+	 * Writes the document before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		document = File.createTempFile( "indexed", ".xml" ).toPath();
+		Files.write( document, DOCUMENT.getBytes( StandardCharsets.UTF_8 ) );
+		sidecar = XMLIndex.sidecarOf( document );
+	}
+
+	/**
+	 * Deletes the document and its sidecar after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		Files.deleteIfExists( document );
+		Files.deleteIfExists( sidecar );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLIndex#select(String)} after a
+	 * save and load.
+	 * @throws IOException
+	 */
+	@Test
+	public void testSelect() throws IOException
+	{
+		assertEquals( "Failed to save index.", 10, index( false ) );
+		try ( XMLIndex index = XMLIndex.load( sidecar ) )
+		{
+			assertEquals( "Failed to count elements.", 10, index.size() );
+
+			int[] categories = index.select( "/XMLDATA/Submission/Category" );
+			assertEquals( "Failed to select path.", 3, categories.length );
+			assertEquals( "Failed to read first match.", "<Category>\u00e9<Driver/></Category>",
+					text( index, categories[0] ) );
+			assertEquals( "Failed to read self-closing match.", "<Category/>", text( index, categories[2] ) );
+			assertEquals( "Failed to record depth.", 2, index.getDepth( categories[1] ) );
+
+			assertEquals( "Failed to select root.", 1, index.select( "/XMLDATA" ).length );
+			assertEquals( "Failed to reject unknown name.", 0, index.select( "/XMLDATA/Missing" ).length );
+			assertEquals( "Failed to reject wrong root.", 0, index.select( "/Submission" ).length );
+		}
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLIndex#find(String, int)}.
+	 * @throws IOException
+	 */
+	@Test
+	public void testFind() throws IOException
+	{
+		index( true );
+		try ( XMLIndex index = XMLIndex.load( sidecar ) )
+		{
+			int driver = index.find( "Driver", 1 );
+			assertEquals( "Failed to find second Driver.", "<Driver a=\">\">x</Driver>", text( index, driver ) );
+			assertEquals( "Failed to name element.", "Driver", index.getName( driver ) );
+			assertEquals( "Failed to stop at the last match.", -1, index.find( "Driver", 2 ) );
+			assertTrue( "Failed to match document.", index.isCurrent( document ) );
+
+			Files.write( document, "<a/>".getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.APPEND );
+			assertFalse( "Failed to notice change.", index.isCurrent( document ) );
+		}
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLIndex#select(String)} with more
+	 * elements than fit in a block, so that the ends of elements that outlast
+	 * their block are patched in and records are read in blocks.
+	 * @throws IOException
+	 */
+	@Test
+	public void testSelectLarge() throws IOException
+	{
+		StringBuilder text = new StringBuilder( "<r><big>" );
+		for ( int i = 0; i < 10000; i++ )
+		{
+			text.append( "<e><k>" ).append( i ).append( "</k></e>" );
+		}
+		text.append( "</big><small><k>last</k></small></r>" );
+		Files.write( document, text.toString().getBytes( StandardCharsets.UTF_8 ) );
+		assertEquals( "Failed to save index.", 20004, index( false ) );
+		assertTrue( "Failed to encode records compactly.", Files.size( sidecar ) < 20004 * 8 );
+		try ( XMLIndex index = XMLIndex.load( sidecar ) )
+		{
+			assertEquals( "Failed to patch end of early element.", text.length() - "<small><k>last</k></small></r>".length(),
+					index.getEnd( 1 ) );
+			assertEquals( "Failed to find late element.", "<k>9999</k>", text( index, index.find( "k", 9999 ) ) );
+			int[] found = index.select( "/r/small/k" );
+			assertEquals( "Failed to select past large subtree.", 1, found.length );
+			assertEquals( "Failed to read match.", "<k>last</k>", text( index, found[0] ) );
+		}
+		assertEquals( "Failed to leave only the sidecar.", 1, siblings() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#saveIndex(Path)} with
+	 * documents that cannot be indexed, which leave no files behind.
+	 * @throws IOException
+	 */
+	@Test
+	public void testNoIndex() throws IOException
+	{
+		XMLParser parser = new XMLParser( new RecordingSink() );
+		parser.setIndexing( sidecar );
+		parser.parse( new StringReader( DOCUMENT ) );
+		assertEquals( "Failed to refuse char offsets.", -1, parser.saveIndex( document ) );
+
+		Files.write( document, "<a></b>".getBytes( StandardCharsets.UTF_8 ) );
+		assertEquals( "Failed to refuse malformed document.", -1, index( false ) );
+		assertFalse( "Failed to save nothing.", Files.exists( sidecar ) );
+		assertEquals( "Failed to delete records.", 0, siblings() );
+	}
+
+	private int index( boolean mapped ) throws IOException
+	{
+		XMLParser parser = new XMLParser( new RecordingSink() );
+		parser.setIndexing( sidecar );
+		try ( FileChannel channel = FileChannel.open( document, StandardOpenOption.READ ) )
+		{
+			parser.parseFile( channel, mapped );
+		}
+		return parser.saveIndex( document );
+	}
+
+	// The number of files named after the sidecar, temporary ones included
+	private long siblings() throws IOException
+	{
+		long count = 0;
+		try ( DirectoryStream<Path> files = Files.newDirectoryStream( sidecar.toAbsolutePath().getParent(),
+				sidecar.getFileName() + "*" ) )
+		{
+			for ( Path file : files )
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private String text( XMLIndex index, int element ) throws IOException
+	{
+		try ( FileChannel channel = FileChannel.open( document, StandardOpenOption.READ ) )
+		{
+			return new String( index.read( channel, element ), StandardCharsets.UTF_8 );
+		}
+	}
+}
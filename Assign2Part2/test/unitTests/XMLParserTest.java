@@ -0,0 +1,186 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.BatchXMLValidator;
+import implementations.MyArrayList;
+import implementations.XMLParser;
+import utilities.Diagnostic;
+import utilities.DiagnosticSink;
+
+/**
+ * Class Description:
+ * Tests for the XMLParser front end reading compressed documents, alone and
+ * inside archives.
+ */
+
+public class XMLParserTest
+{
+	// Attributes
+	private StringBuilder output;
+	private DiagnosticSink sink;
+
+	/**
+	 * Creates a sink that records the parser's diagnostics before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		output = new StringBuilder();
+		sink = new DiagnosticSink()
+		{
+			@Override
+			public void report( Diagnostic diagnostic )
+			{
+				output.append( diagnostic ).append( '\n' );
+			}
+
+			@Override
+			public void finish( boolean wellFormed )
+			{
+				output.append( wellFormed ).append( '\n' );
+			}
+		};
+	}
+
+	/**
+	 * Cleans up instances used after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		output = null;
+		sink = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#parseCompressed(InputStream)}
+	 * reporting what an uncompressed read of the samples reports.
+	 * @throws IOException
+	 */
+	@Test
+	public void testParseCompressedSamples() throws IOException
+	{
+		for ( String sample : new String[] { "res/sample1.xml", "res/sample2.xml" } )
+		{
+			byte[] document = Files.readAllBytes( Paths.get( sample ) );
+			new XMLParser( sink ).parse( Channels.newChannel( new ByteArrayInputStream( document ) ) );
+			String expected = output.toString();
+			output.setLength( 0 );
+			new XMLParser( sink ).parseCompressed( new ByteArrayInputStream( gzip( document ) ) );
+			assertEquals( "Compressed output differs for " + sample, expected, output.toString() );
+			output.setLength( 0 );
+		}
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#parseCompressed(InputStream)}
+	 * with a compressed UTF-16 document.
+	 * @throws IOException
+	 */
+	@Test
+	public void testParseCompressedUtf16() throws IOException
+	{
+		new XMLParser( sink ).parseCompressed(
+				new ByteArrayInputStream( gzip( "<r>\n<\u00e9></b></r>".getBytes( StandardCharsets.UTF_16 ) ) ) );
+		assertEquals( "Failed to decode UTF-16.", "Line 2: Mismatched tag </b>, expected </\u00e9>\nfalse\n",
+				output.toString() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#parseCompressed(InputStream)}
+	 * with data that is not gzip.
+	 * @throws IOException
+	 */
+	@Test( expected = IOException.class )
+	public void testParseCompressedNotGzip() throws IOException
+	{
+		new XMLParser( sink ).parseCompressed( new ByteArrayInputStream( "<a/>".getBytes( StandardCharsets.UTF_8 ) ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.BatchXMLValidator#validate(MyArrayList, PrintStream)}
+	 * with an archive holding a compressed entry, a compressed entry cut short
+	 * and an entry that is not gzip at all.
+	 * @throws IOException
+	 */
+	@Test
+	public void testValidateCompressedEntries() throws IOException
+	{
+		Path archive = File.createTempFile( "bundle", ".zip" ).toPath();
+		try
+		{
+			byte[] bad = gzip( "<a>\n</b></a>".getBytes( StandardCharsets.UTF_8 ) );
+			try ( ZipOutputStream zip = new ZipOutputStream( Files.newOutputStream( archive ) ) )
+			{
+				zip.putNextEntry( new ZipEntry( "a.xml.gz" ) );
+				zip.write( bad );
+				zip.putNextEntry( new ZipEntry( "b.xml.gz" ) );
+				zip.write( Arrays.copyOf( bad, bad.length - 12 ) );
+				zip.putNextEntry( new ZipEntry( "c.xml.gz" ) );
+				zip.write( "<a/>".getBytes( StandardCharsets.UTF_8 ) );
+				zip.closeEntry();
+			}
+
+			MyArrayList<Path> files = new MyArrayList<>();
+			files.add( archive );
+			ByteArrayOutputStream report = new ByteArrayOutputStream();
+			new BatchXMLValidator( 2, false ).validate( files, new PrintStream( report, true, "UTF-8" ) );
+			String text = new String( report.toByteArray(), StandardCharsets.UTF_8 ).replace( System.lineSeparator(),
+					"\n" );
+			assertTrue( "Failed to inflate entry.",
+					text.contains( "!/a.xml.gz ==\nLine 2: Mismatched tag </b>, expected </a>\n" ) );
+			assertTrue( "Failed to report truncated entry.", text.contains( "!/b.xml.gz ==\nError reading file: " ) );
+			assertTrue( "Failed to report entry that is not gzip.",
+					text.contains( "!/c.xml.gz ==\nError reading file: Not in GZIP format\n" ) );
+			assertTrue( "Failed to count entries.",
+					text.endsWith( "Validated 3 files: 0 well-formed, 1 malformed, 2 unreadable.\n" ) );
+		}
+		finally
+		{
+			Files.delete( archive );
+		}
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLParser#isCompressed(String)}.
+	 */
+	@Test
+	public void testIsCompressed()
+	{
+		assertTrue( "Failed to recognise .gz.", XMLParser.isCompressed( "logs/a.xml.GZ" ) );
+		assertFalse( "Failed to reject .xml.", XMLParser.isCompressed( "a.xml" ) );
+	}
+
+	private static byte[] gzip( byte[] data ) throws IOException
+	{
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try ( GZIPOutputStream out = new GZIPOutputStream( compressed ) )
+		{
+			out.write( data );
+		}
+		return compressed.toByteArray();
+	}
+}
@@ -0,0 +1,117 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.XMLParser;
+
+/**
+ * Class Description:
+ * Tests that elements at a path are copied out of a document in the pass that
+ * validates it.
+ */
+
+public class XMLPathExtractorTest
+{
+	// Attributes
+	private Path document;
+	private XMLParser parser;
+
+	/**
+	 * Creates the document location and a parser before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		document = File.createTempFile( "query", ".xml" ).toPath();
+		parser = new XMLParser( new RecordingSink() );
+	}
+
+	/**
+	 * Deletes the document after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		Files.deleteIfExists( document );
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.XMLParser#extract(FileChannel, String, java.nio.channels.WritableByteChannel)}
+	 * with matches among look-alike elements off the path.
+	 * @throws IOException
+	 */
+	@Test
+	public void testExtract() throws IOException
+	{
+		String xml = "<XMLDATA><Submission><Category><Driver a='>'>1</Driver></Category>"
+				+ "<Other><Category><Driver>no</Driver></Category></Other>"
+				+ "<!-- <Category><Driver>no</Driver></Category> -->"
+				+ "<Category><Driver/><Driver><Driver>2</Driver></Driver></Category></Submission>"
+				+ "<Driver>no</Driver></XMLDATA>";
+		assertEquals( "Failed to copy matches.", "<Driver a='>'>1</Driver>\n<Driver/>\n<Driver><Driver>2</Driver></Driver>\n",
+				extract( xml, "/XMLDATA/Submission/Category/Driver", 3 ) );
+		assertTrue( "Failed to validate.", parser.isWellFormed() );
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.XMLParser#extract(FileChannel, String, java.nio.channels.WritableByteChannel)}
+	 * with elements that cross the tokenizer's buffers.
+	 * @throws IOException
+	 */
+	@Test
+	public void testExtractLarge() throws IOException
+	{
+		StringBuilder xml = new StringBuilder( "<r>" );
+		StringBuilder expected = new StringBuilder();
+		for ( int i = 0; i < 5000; i++ )
+		{
+			String item = "<item n=\"" + i + "\"><v>" + i + "</v></item>";
+			xml.append( "<skip>" ).append( item ).append( "</skip>" ).append( item );
+			expected.append( item ).append( '\n' );
+		}
+		xml.append( "</r>" );
+		assertEquals( "Failed to copy matches.", expected.toString(), extract( xml.toString(), "/r/item", 5000 ) );
+	}
+
+	/**
+	 * Test method for
+	 * {@link implementations.XMLParser#extract(FileChannel, String, java.nio.channels.WritableByteChannel)}
+	 * with a malformed document.
+	 * @throws IOException
+	 */
+	@Test
+	public void testExtractMalformed() throws IOException
+	{
+		assertEquals( "Failed to keep copying.", "<b>1</b>\n<b>2</b>\n", extract( "<a><b>1</b><c></d><b>2</b></a>", "/a/b", 2 ) );
+		assertFalse( "Failed to report error.", parser.isWellFormed() );
+	}
+
+	private String extract( String xml, String path, long count ) throws IOException
+	{
+		Files.write( document, xml.getBytes( StandardCharsets.UTF_8 ) );
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try ( FileChannel channel = FileChannel.open( document, StandardOpenOption.READ ) )
+		{
+			assertEquals( "Failed to count matches.", count, parser.extract( channel, path, Channels.newChannel( out ) ) );
+		}
+		return new String( out.toByteArray(), StandardCharsets.UTF_8 );
+	}
+}
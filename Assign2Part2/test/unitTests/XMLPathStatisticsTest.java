@@ -0,0 +1,133 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.XMLParser;
+import implementations.XMLPathStatistics;
+
+/**
+ * Class Description:
+ * Tests that element path statistics count elements, sizes, fan-out and depths
+ * in the validating pass.
+ */
+
+public class XMLPathStatisticsTest
+{
+	// Attributes
+	private static final String DOCUMENT = "<XMLDATA>"
+			+ "<Submission><Category><Driver><Language/></Driver><Driver/></Category></Submission>"
+			+ "<Submission><Category/></Submission>"
+			+ "</XMLDATA>";
+
+	private XMLParser parser;
+
+	/**
+	 * Creates a parser gathering statistics before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		parser = new XMLParser( new RecordingSink() );
+		parser.setStatistics( true );
+	}
+
+	/**
+	 * Clears the parser after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		parser = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLPathStatistics#getCount(String)}
+	 * and the other per-path figures.
+	 * @throws IOException
+	 */
+	@Test
+	public void testPaths() throws IOException
+	{
+		XMLPathStatistics statistics = parse( DOCUMENT );
+		assertEquals( "Failed to count elements.", 8, statistics.getElementCount() );
+		assertEquals( "Failed to count paths.", 5, statistics.getPathCount() );
+		assertEquals( "Failed to count Submissions.", 2, statistics.getCount( "/XMLDATA/Submission" ) );
+		assertEquals( "Failed to count Drivers.", 2, statistics.getCount( "/XMLDATA/Submission/Category/Driver" ) );
+		assertEquals( "Failed to ignore unknown path.", 0, statistics.getCount( "/XMLDATA/Driver" ) );
+		assertEquals( "Failed to average fan-out.", 1.0, statistics.getAverageFanOut( "/XMLDATA/Submission/Category" ), 1e-9 );
+		assertEquals( "Failed to measure root.", DOCUMENT.length(), statistics.getTotalSize( "/XMLDATA" ) );
+		assertEquals( "Failed to measure self-closing tags.", "<Driver/>".length() + "<Driver><Language/></Driver>".length(),
+				statistics.getTotalSize( "/XMLDATA/Submission/Category/Driver" ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLPathStatistics#getDepthCount(int)}.
+	 * @throws IOException
+	 */
+	@Test
+	public void testDepths() throws IOException
+	{
+		XMLPathStatistics statistics = parse( DOCUMENT );
+		assertEquals( "Failed to find max depth.", 4, statistics.getMaxDepth() );
+		long[] expected = { 1, 2, 2, 2, 1 };
+		for ( int depth = 0; depth < expected.length; depth++ )
+		{
+			assertEquals( "Failed to count depth " + depth, expected[depth], statistics.getDepthCount( depth ) );
+		}
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLPathStatistics#print(PrintStream)}
+	 * on a document deeper than the initial stack and wider than the initial
+	 * trie.
+	 * @throws IOException
+	 */
+	@Test
+	public void testGrowth() throws IOException
+	{
+		StringBuilder document = new StringBuilder( "<r>" );
+		for ( int i = 0; i < 500; i++ )
+		{
+			document.append( "<e" ).append( i % 200 ).append( "/>" );
+		}
+		for ( int i = 0; i < 100; i++ )
+		{
+			document.append( "<d>" );
+		}
+		for ( int i = 0; i < 100; i++ )
+		{
+			document.append( "</d>" );
+		}
+		document.append( "</r>" );
+
+		XMLPathStatistics statistics = parse( document.toString() );
+		assertEquals( "Failed to count paths.", 301, statistics.getPathCount() );
+		assertEquals( "Failed to count repeated path.", 3, statistics.getCount( "/r/e7" ) );
+		assertEquals( "Failed to find max depth.", 100, statistics.getMaxDepth() );
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		statistics.print( new PrintStream( out, true, "UTF-8" ) );
+		String report = new String( out.toByteArray(), StandardCharsets.UTF_8 );
+		assertTrue( "Failed to print totals.", report.startsWith( "Elements: 601, distinct paths: 301, max depth: 100" ) );
+		assertTrue( "Failed to print path.", report.contains( "  /r/e199" ) );
+	}
+
+	private XMLPathStatistics parse( String document ) throws IOException
+	{
+		parser.parse( Channels.newChannel( new ByteArrayInputStream( document.getBytes( StandardCharsets.UTF_8 ) ) ) );
+		return parser.getStatistics();
+	}
+}
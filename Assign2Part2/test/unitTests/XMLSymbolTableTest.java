@@ -0,0 +1,82 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.XMLSymbolTable;
+
+/**
+ * Class Description:
+ * Tests for the tag-name symbol table used to give tags integer IDs.
+ */
+
+public class XMLSymbolTableTest
+{
+	// Attributes
+	private XMLSymbolTable symbols;
+
+	/**
+	 * Initializes an empty symbol table before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		symbols = new XMLSymbolTable();
+	}
+
+	/**
+	 * Cleans up instances used after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		symbols = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLSymbolTable#intern(char[], int, int)}
+	 * returning the same ID for the same name in different buffers.
+	 */
+	@Test
+	public void testInternSameName()
+	{
+		int first = symbols.intern( "xxLanguagexx".toCharArray(), 2, 8 );
+		int second = symbols.intern( "Language".toCharArray(), 0, 8 );
+		assertEquals( "Failed to reuse ID.", first, second );
+		assertEquals( "Failed to return name.", "Language", symbols.nameOf( first ) );
+		assertEquals( "Failed to return correct size", 1, symbols.size() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLSymbolTable#intern(java.lang.String)}
+	 * assigning dense IDs to many names across resizes.
+	 */
+	@Test
+	public void testInternManyNames()
+	{
+		for ( int i = 0; i < 1000; i++ )
+		{
+			assertEquals( "Failed to assign dense ID.", i, symbols.intern( "tag" + i ) );
+		}
+		for ( int i = 0; i < 1000; i++ )
+		{
+			assertEquals( "Failed to find ID after resize.", i, symbols.intern( "tag" + i ) );
+			assertEquals( "Failed to return name.", "tag" + i, symbols.nameOf( i ) );
+		}
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLSymbolTable#nameOf(int)}
+	 * with an unknown ID.
+	 */
+	@Test( expected = IndexOutOfBoundsException.class )
+	public void testNameOfInvalid()
+	{
+		symbols.nameOf( 0 );
+	}
+}
@@ -0,0 +1,325 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.XMLTokenizer;
+import utilities.XMLTagHandler;
+
+/**
+ * Class Description:
+ * Tests for the streaming state-machine tokenizer used by the XMLParser.
+ */
+
+public class XMLTokenizerTest
+{
+	// Attributes
+	private StringBuilder events;
+	private XMLTokenizer tokenizer;
+
+	/**
+	 * Creates a tokenizer that records every tag event as text before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		events = new StringBuilder();
+		tokenizer = new XMLTokenizer( new XMLTagHandler()
+		{
+			@Override
+			public void startTag( char[] name, int length, boolean selfClosing )
+			{
+				events.append( '<' ).append( name, 0, length ).append( selfClosing ? "/>" : ">" );
+			}
+
+			@Override
+			public void endTag( char[] name, int length )
+			{
+				events.append( "</" ).append( name, 0, length ).append( '>' );
+			}
+		}, 4 );
+	}
+
+	/**
+	 * Cleans up instances used after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		events = null;
+		tokenizer = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLTokenizer#tokenize(java.io.Reader)}
+	 * with start, end and empty-element tags.
+	 * @throws IOException
+	 */
+	@Test
+	public void testTokenizeTags() throws IOException
+	{
+		tokenizer.tokenize( new StringReader( "<a x=\"1\"><b/><c /></a>" ) );
+		assertEquals( "Failed to report tags.", "<a><b/><c/></a>", events.toString() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLTokenizer#tokenize(java.io.Reader)}
+	 * with a tag that spans several lines and buffer refills.
+	 * @throws IOException
+	 */
+	@Test
+	public void testTokenizeTagAcrossLines() throws IOException
+	{
+		tokenizer.tokenize( new StringReader( "<root>\n<LongName\n  attr='v>'\n>\n</LongName>\n</root>" ) );
+		assertEquals( "Failed to join split tag.", "<root><LongName></LongName></root>", events.toString() );
+		assertEquals( "Failed to report tag line.", 6, tokenizer.getTagLine() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLTokenizer#tokenize(java.io.Reader)}
+	 * skipping comments, processing instructions, CDATA and declarations.
+	 * @throws IOException
+	 */
+	@Test
+	public void testTokenizeSkipsNonElementMarkup() throws IOException
+	{
+		tokenizer.tokenize( new StringReader( "<?xml version=\"1.0\"?><!DOCTYPE r [<!ENTITY e \"<x>\">]>"
+				+ "<r><!-- <no> -- --><![CDATA[<no>]]]></r>" ) );
+		assertEquals( "Failed to skip markup.", "<r></r>", events.toString() );
+		assertFalse( "Failed to return to text.", tokenizer.isInMarkup() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLTokenizer#isInMarkup()}
+	 * when input ends inside a tag.
+	 * @throws IOException
+	 */
+	@Test
+	public void testIsInMarkupUnterminated() throws IOException
+	{
+		tokenizer.tokenize( new StringReader( "<r><unfinished attr=\"" ) );
+		assertEquals( "Failed to report complete tags.", "<r>", events.toString() );
+		assertTrue( "Failed to report unterminated markup.", tokenizer.isInMarkup() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLTokenizer#feed(java.nio.ByteBuffer)}
+	 * with UTF-8 tag names split across buffers.
+	 */
+	@Test
+	public void testFeedUtf8Bytes()
+	{
+		byte[] bytes = "<r\u00e9sum\u00e9 a='\u00fc'>\u4e2d</r\u00e9sum\u00e9>".getBytes( StandardCharsets.UTF_8 );
+		tokenizer.feed( ByteBuffer.wrap( bytes, 0, 3 ) );
+		tokenizer.feed( ByteBuffer.wrap( bytes, 3, bytes.length - 3 ) );
+		assertEquals( "Failed to decode names.", "<r\u00e9sum\u00e9></r\u00e9sum\u00e9>", events.toString() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLTokenizer#feed(char[], int, int)}
+	 * counting "\r\n" split across two blocks as one line end, and a lone
+	 * '\r' as a line end.
+	 */
+	@Test
+	public void testFeedCarriageReturns()
+	{
+		tokenizer.feed( "<a>\r".toCharArray(), 0, 4 );
+		tokenizer.feed( "\n<b>\r  <c>".toCharArray(), 0, 9 );
+		assertEquals( "Failed to count line ends.", 3, tokenizer.getTagLine() );
+		assertEquals( "Failed to restart columns.", 3, tokenizer.getTagColumn() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLTokenizer#feed(java.nio.ByteBuffer)}
+	 * counting carriage returns the same way as characters do.
+	 */
+	@Test
+	public void testFeedBytesCarriageReturns()
+	{
+		byte[] bytes = "<a>\r\n\r\n<b>\r<c x='\r'>".getBytes( StandardCharsets.UTF_8 );
+		for ( int i = 0; i < bytes.length; i++ )
+		{
+			tokenizer.feed( ByteBuffer.wrap( bytes, i, 1 ) );
+		}
+		assertEquals( "Failed to count line ends.", 4, tokenizer.getTagLine() );
+		assertEquals( "Failed to count line ends inside tags.", 5, tokenizer.getLine() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLTokenizer#feed(char[], int, int)}
+	 * with tag names longer than {@link implementations.XMLTokenizer#MAX_NAME_LENGTH}.
+	 */
+	@Test
+	public void testFeedLongNames()
+	{
+		StringBuilder prefix = new StringBuilder();
+		for ( int i = 0; i < XMLTokenizer.MAX_NAME_LENGTH; i++ )
+		{
+			prefix.append( 'n' );
+		}
+		String document = "<" + prefix + "one></" + prefix + "one></" + prefix + "two>";
+		tokenizer.feed( document.toCharArray(), 0, document.length() );
+
+		String[] names = events.toString().split( ">" );
+		assertEquals( "Failed to report tags.", 3, names.length );
+		assertEquals( "Failed to match equal names.", names[0].substring( 1 ), names[1].substring( 2 ) );
+		assertNotEquals( "Failed to tell names apart.", names[1], names[2] );
+		assertTrue( "Failed to bound name.", names[2].length() < XMLTokenizer.MAX_NAME_LENGTH + 32 );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLTokenizer#readState(DataInput)}
+	 * with a state saved after an attribute error in a tag whose name was cut
+	 * at {@link implementations.XMLTokenizer#MAX_NAME_LENGTH}, which leaves the
+	 * name marked.
+	 * @throws IOException
+	 */
+	@Test
+	public void testReadStateLongName() throws IOException
+	{
+		StringBuilder head = new StringBuilder( "<" );
+		for ( int i = 0; i <= XMLTokenizer.MAX_NAME_LENGTH; i++ )
+		{
+			head.append( 'n' );
+		}
+		head.append( " k=v " );
+		tokenizer.feed( head.toString().toCharArray(), 0, head.length() );
+		ByteArrayOutputStream saved = new ByteArrayOutputStream();
+		tokenizer.writeState( new DataOutputStream( saved ) );
+		tokenizer.feed( "/>".toCharArray(), 0, 2 );
+		String expected = events.toString();
+
+		events.setLength( 0 );
+		tokenizer.readState( new DataInputStream( new ByteArrayInputStream( saved.toByteArray() ) ) );
+		tokenizer.feed( "/>".toCharArray(), 0, 2 );
+		assertEquals( "Failed to restore the marked name.", expected, events.toString() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLTokenizer#tokenize(java.io.Reader)}
+	 * with a document of many megabytes on a single line.
+	 * @throws IOException
+	 */
+	@Test
+	public void testTokenizeSingleLine() throws IOException
+	{
+		final int records = 1 << 20;
+		final String record = "<b k='v'>x</b>";
+		tokenizer = new XMLTokenizer( new XMLTagHandler()
+		{
+			@Override
+			public void startTag( char[] name, int length, boolean selfClosing )
+			{
+			}
+
+			@Override
+			public void endTag( char[] name, int length )
+			{
+			}
+		} );
+		tokenizer.tokenize( new java.io.Reader()
+		{
+			private long position = 0;
+
+			@Override
+			public int read( char[] chars, int offset, int length )
+			{
+				long total = (long) records * record.length() + 4;
+				if ( position == total )
+				{
+					return -1;
+				}
+				int count = (int) Math.min( length, total - position );
+				for ( int i = 0; i < count; i++, position++ )
+				{
+					chars[offset + i] = position >= total - 4 ? "</a>".charAt( (int) (position - total + 4) )
+							: record.charAt( (int) (position % record.length()) );
+				}
+				return count;
+			}
+
+			@Override
+			public void close()
+			{
+			}
+		} );
+		assertEquals( "Failed to stay on one line.", 1, tokenizer.getTagLine() );
+		assertEquals( "Failed to count columns.", (long) records * record.length() + 1, tokenizer.getTagColumn() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLTokenizer#feed(java.nio.ByteBuffer)}
+	 * finding delimiters eight bytes at a time in buffers of either byte order,
+	 * compared with scanning the same documents as chars.
+	 */
+	@Test
+	public void testFeedBytesMatchesChars()
+	{
+		Random random = new Random( 14 );
+		String[] parts = { "<a>", "</a>", "<b k=\"v>\">", "</b>", "<c k='x\ny'/>", "text ", "\n", "\r\n", "\r",
+				"<!-- - -- <a> -->", "<![CDATA[ ] ]] </b> ]]>", "<?pi ? <a> ?>", "\u00e9\u00e8", "          " };
+		for ( int round = 0; round < 300; round++ )
+		{
+			StringBuilder document = new StringBuilder();
+			int length = random.nextInt( 40 );
+			for ( int i = 0; i < length; i++ )
+			{
+				document.append( parts[random.nextInt( parts.length )] );
+			}
+			String text = document.toString();
+
+			String expected = scan( text, null );
+			assertEquals( "Bytes differ for: " + text, expected, scan( text, ByteOrder.BIG_ENDIAN ) );
+			assertEquals( "Bytes differ for: " + text, expected, scan( text, ByteOrder.LITTLE_ENDIAN ) );
+		}
+	}
+
+	// Events with their lines, from chars when order is null and from bytes otherwise
+	private static String scan( String document, ByteOrder order )
+	{
+		final StringBuilder trace = new StringBuilder();
+		final XMLTokenizer[] scanner = new XMLTokenizer[1];
+		scanner[0] = new XMLTokenizer( new XMLTagHandler()
+		{
+			@Override
+			public void startTag( char[] name, int length, boolean selfClosing )
+			{
+				trace.append( scanner[0].getTagLine() ).append( '<' ).append( name, 0, length ).append( '>' );
+			}
+
+			@Override
+			public void endTag( char[] name, int length )
+			{
+				trace.append( scanner[0].getTagLine() ).append( "</" ).append( name, 0, length ).append( '>' );
+			}
+		} );
+		if ( order == null )
+		{
+			scanner[0].feed( document.toCharArray(), 0, document.length() );
+		}
+		else
+		{
+			ByteBuffer bytes = ByteBuffer.wrap( document.getBytes( StandardCharsets.UTF_8 ) ).order( order );
+			scanner[0].feed( bytes );
+		}
+		return trace.append( ' ' ).append( scanner[0].getLine() ).append( ' ' ).append( scanner[0].isInMarkup() )
+				.toString();
+	}
+}
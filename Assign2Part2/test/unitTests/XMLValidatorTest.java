@@ -0,0 +1,223 @@
+package test.unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import implementations.XMLValidator;
+import utilities.Diagnostic;
+import utilities.DiagnosticSink;
+
+/**
+ * Class Description:
+ * Tests for the push-style XMLValidator fed one piece of a document at a time.
+ */
+
+public class XMLValidatorTest
+{
+	// Attributes
+	private ByteArrayOutputStream output;
+	private XMLValidator validator;
+
+	/**
+	 * Initializes a validator that prints into a buffer before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		output = new ByteArrayOutputStream();
+		validator = new XMLValidator( new PrintStream( output ) );
+	}
+
+	/**
+	 * Cleans up instances used after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		output = null;
+		validator = null;
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLValidator#feed(java.nio.ByteBuffer)}
+	 * with a well-formed document split at every byte.
+	 */
+	@Test
+	public void testFeedBytesOneAtATime()
+	{
+		byte[] bytes = "<?xml version=\"1.0\"?>\n<a><b x='>'>text</b><c/></a>\n".getBytes( StandardCharsets.UTF_8 );
+		for ( int i = 0; i < bytes.length; i++ )
+		{
+			assertTrue( "Failed to accept prefix.", validator.feed( ByteBuffer.wrap( bytes, i, 1 ) ) );
+		}
+		assertTrue( "Failed to accept document.", validator.finish() );
+		assertEquals( "Failed to print verdict.", "XML document is constructed correctly.", output.toString().trim() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLValidator#feed(char[], int, int)}
+	 * rejecting a document as soon as the bad piece arrives.
+	 */
+	@Test
+	public void testFeedCharsRejectsEarly()
+	{
+		assertTrue( "Failed to accept first piece.", validator.feed( "<a><b>".toCharArray(), 0, 6 ) );
+		assertFalse( "Failed to reject bad piece.", validator.feed( "</a>".toCharArray(), 0, 4 ) );
+		assertEquals( "Failed to count error.", 1, validator.getErrorCount() );
+		assertFalse( "Failed to reject document.", validator.finish() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLValidator#finish()}
+	 * called twice.
+	 */
+	@Test( expected = IllegalStateException.class )
+	public void testFinishTwice()
+	{
+		validator.feed( "<a/>".toCharArray(), 0, 4 );
+		validator.finish();
+		validator.finish();
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLValidator#setStopAfter(long)}
+	 * ignoring the input after the error budget is spent.
+	 */
+	@Test
+	public void testStopAfter()
+	{
+		validator.setStopAfter( 2 );
+		String document = "<a>\n</b>\n</c>\n</d>\n</e>\n";
+		assertFalse( "Failed to reject document.", validator.feed( document.toCharArray(), 0, document.length() ) );
+		assertFalse( "Failed to reject document.", validator.finish() );
+		assertEquals( "Failed to stop counting.", 2, validator.getErrorCount() );
+		assertEquals( "Failed to stop reporting.",
+				"Line 2: Mismatched tag </b>, expected </a>\nLine 3: Unexpected closing tag </c>",
+				output.toString().trim().replace( "\r", "" ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLValidator#setStopAfter(long)}
+	 * with a limit that is not positive.
+	 */
+	@Test( expected = IllegalArgumentException.class )
+	public void testStopAfterZero()
+	{
+		validator.setStopAfter( 0 );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLValidator#setVerdictOnly(boolean)}
+	 * rejecting a document without printing any diagnostic.
+	 */
+	@Test
+	public void testVerdictOnly()
+	{
+		validator.setVerdictOnly( true );
+		assertFalse( "Failed to reject document.", validator.feed( "<a></b><c>".toCharArray(), 0, 10 ) );
+		assertFalse( "Failed to reject document.", validator.finish() );
+		assertEquals( "Failed to stop at first error.", 1, validator.getErrorCount() );
+		assertEquals( "Failed to suppress diagnostics.", "", output.toString() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLValidator#setVerdictOnly(boolean)}
+	 * rejecting documents at an attribute error and at an unbound prefix.
+	 */
+	@Test
+	public void testVerdictOnlyNamedErrors()
+	{
+		String[] documents = { "<a k='1' k='2'></a>", "<a k></a>", "<p:a></p:a>", "<a xmlns:p='u' p:k='1' p:k='2'/>" };
+		for ( String document : documents )
+		{
+			validator = new XMLValidator( new PrintStream( output ) );
+			validator.setVerdictOnly( true );
+			validator.setNamespaceAware( true );
+			byte[] bytes = document.getBytes( StandardCharsets.UTF_8 );
+			assertFalse( "Failed to reject: " + document, validator.feed( ByteBuffer.wrap( bytes ) ) );
+			assertFalse( "Failed to reject: " + document, validator.finish() );
+			assertEquals( "Failed to stop at first error.", 1, validator.getErrorCount() );
+		}
+		assertEquals( "Failed to suppress diagnostics.", "", output.toString() );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLValidator#feed(java.nio.ByteBuffer)}
+	 * with each kind of attribute error, fed one byte at a time.
+	 */
+	@Test
+	public void testAttributeErrors()
+	{
+		String document = "<a id='1' id=\"2\">\n<b k=v/>\n<c k></c>\n<d x='1'y='2'/>\n<e v=\"<e/></a>\n";
+		byte[] bytes = document.getBytes( StandardCharsets.UTF_8 );
+		for ( int i = 0; i < bytes.length; i++ )
+		{
+			validator.feed( ByteBuffer.wrap( bytes, i, 1 ) );
+		}
+		assertFalse( "Failed to reject document.", validator.finish() );
+		assertEquals( "Failed to report attributes.",
+				"Line 1: Duplicate attribute id in <a>\n"
+				+ "Line 2: Value of attribute k in <b> is not quoted\n"
+				+ "Line 3: Attribute k in <c> has no value\n"
+				+ "Line 4: Malformed attributes in <d>\n"
+				+ "Line 5: Value of attribute v in <e> is not terminated\n"
+				+ "Unclosed tag: <a>",
+				output.toString().trim().replace( "\r", "" ) );
+	}
+
+	/**
+	 * Test method for {@link implementations.XMLValidator#feed(char[], int, int)}
+	 * with many attributes per tag, the same names in every tag, and names that
+	 * are not ASCII.
+	 */
+	@Test
+	public void testManyAttributes()
+	{
+		StringBuilder document = new StringBuilder( "<r>" );
+		for ( int tag = 0; tag < 3; tag++ )
+		{
+			document.append( "<t" );
+			for ( int i = 0; i < 100; i++ )
+			{
+				document.append( " a" ).append( i ).append( "='" ).append( i ).append( "'" );
+			}
+			document.append( " \u00e9='1' e='2'/>" );
+		}
+		document.append( "<t a1='1' b='2' a1='3'/></r>" );
+		validator.feed( document.toString().toCharArray(), 0, document.length() );
+		assertFalse( "Failed to reject document.", validator.finish() );
+		assertEquals( "Failed to find only the duplicate.", 1, validator.getErrorCount() );
+		assertEquals( "Failed to report duplicate.", "Line 1: Duplicate attribute a1 in <t>",
+				output.toString().trim().replace( "\r", "" ) );
+
+		final StringBuilder names = new StringBuilder();
+		validator = new XMLValidator( new DiagnosticSink()
+		{
+			@Override
+			public void report( Diagnostic diagnostic )
+			{
+				names.append( diagnostic.getActual() );
+			}
+
+			@Override
+			public void finish( boolean wellFormed )
+			{
+				// Not needed
+			}
+		} );
+		byte[] bytes = "<r \u00e9='1' \u00e9='2'></r>".getBytes( StandardCharsets.UTF_8 );
+		validator.feed( ByteBuffer.wrap( bytes ) );
+		assertFalse( "Failed to reject document.", validator.finish() );
+		assertEquals( "Failed to decode name.", "\u00e9", names.toString() );
+	}
+}